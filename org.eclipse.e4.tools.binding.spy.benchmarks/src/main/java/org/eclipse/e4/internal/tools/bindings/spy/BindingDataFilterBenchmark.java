@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of BindingDataFilter.matchText and select for all the rows of a
+ * model, as done when the pattern changes with "Show Only Filtered".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingDataFilterBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	@Param({ "re", "refactor 4", "ctrl+shift" })
+	String pattern;
+
+	private BindingRowModel model;
+	private BindingDataFilter filter;
+	private SyntheticBindings.StubViewer viewer;
+
+	@Setup
+	public void setup() {
+		model = SyntheticBindings.createModel(size);
+		filter = new BindingDataFilter();
+		filter.setModelRegistry(new BindingModelRegistry());
+		viewer = new SyntheticBindings.StubViewer(model);
+	}
+
+	/** Lower the column text then search, as the label providers used to */
+	@Benchmark
+	public void matchTextOnLabel(Blackhole bh) {
+		filter.setPattern(pattern);
+		for (BindingRow row : model.getActiveRows()) {
+			bh.consume(filter.matchText(row.getText(Column.COMMAND_DESCRIPTION)));
+		}
+	}
+
+	/** Search in the lower case text already stored in the row */
+	@Benchmark
+	public void matchTextOnRow(Blackhole bh) {
+		filter.setPattern(pattern);
+		for (BindingRow row : model.getActiveRows()) {
+			bh.consume(filter.matchText(row, Column.COMMAND_DESCRIPTION));
+		}
+	}
+
+	/** A pattern change followed by the selection of every row */
+	@Benchmark
+	public void selectAllRows(Blackhole bh) {
+		filter.setPattern(pattern);
+		for (BindingRow row : model.getActiveRows()) {
+			bh.consume(filter.select(viewer, BindingDataProvider.ACTIVE_BINDINGS, row));
+		}
+	}
+
+	/** The search index query alone */
+	@Benchmark
+	public Object searchIndex() {
+		return model.getSearchIndex().find(pattern);
+	}
+
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.swt.widgets.Display;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of BindingDataProvider.getStyledText for each column, for all the rows
+ * of a model (a full repaint of the column). The provider needs a Display :
+ * it is created in the benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingDataProviderBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	@Param({ "TRIGGER_SEQUENCE", "COMMAND_DESCRIPTION", "COMMAND_HANDLER", "STATE", "CATEGORY",
+			"BINDING_CONTEXT_ID" })
+	Column column;
+
+	@Param({ "", "refactor" })
+	String pattern;
+
+	private Display display;
+	private BindingRowModel model;
+	private BindingDataProvider provider;
+
+	@Setup
+	public void setup() {
+		display = new Display();
+		model = SyntheticBindings.createModel(size);
+
+		BindingDataFilter filter = new BindingDataFilter();
+		filter.setModelRegistry(new BindingModelRegistry());
+		filter.setPattern(pattern);
+
+		IEclipseContext ctx = EclipseContextFactory.create("bench provider");
+		ctx.set(BindingDataFilter.class, filter);
+		provider = ContextInjectionFactory.make(BindingDataProvider.class, ctx);
+		provider.setColumn(column);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.dispose();
+	}
+
+	@Benchmark
+	public void getStyledText(Blackhole bh) {
+		for (BindingRow row : model.getActiveRows()) {
+			bh.consume(provider.getStyledText(row));
+		}
+	}
+
+	@Benchmark
+	public void getText(Blackhole bh) {
+		for (BindingRow row : model.getActiveRows()) {
+			bh.consume(provider.getText(row));
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.keys.KeyBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Difference between the bindings of two contexts : the second one drops one
+ * binding out of twenty, binds another command on one sequence out of twenty,
+ * and adds as many bindings of its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingDiffBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private BindingRowModel left;
+	private BindingRowModel right;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size, "org.eclipse.ui.contexts.window");
+		List<Binding> others = SyntheticBindings.createBindings(size, "org.eclipse.ui.contexts.dialog");
+		List<Binding> changed = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Binding binding = bindings.get(i);
+			if (i % 20 == 1)
+				continue;
+			if (i % 20 == 2) {
+				// Same sequence, another command
+				changed.add(new KeyBinding(((KeyBinding) binding).getKeySequence(),
+						others.get(i).getParameterizedCommand(), binding.getSchemeId(), binding.getContextId(),
+						null, null, null, binding.getType()));
+			} else {
+				changed.add(binding);
+			}
+		}
+		for (int i = 0; i < size / 20; i++) {
+			changed.add(others.get(others.size() - 1 - i));
+		}
+		left = BindingRowModel.build(SyntheticBindings.createContext("left", bindings));
+		right = BindingRowModel.build(SyntheticBindings.createContext("right", changed));
+	}
+
+	@Benchmark
+	public BindingDiff diff() {
+		return BindingDiff.compute(left, right);
+	}
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jface.viewers.LabelProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of sorting the rows of a node with BindingEntryComparator, as done on
+ * each click on a column header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingEntryComparatorBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	private BindingRowModel model;
+	private List<BindingRow> rows;
+	private int[] positions;
+	private BindingDataPart part;
+	private BindingDataPart.BindingEntryComparator warmComparator;
+	private SyntheticBindings.StubViewer viewer;
+
+	@Setup
+	public void setup() {
+		model = SyntheticBindings.createModel(size);
+		rows = model.getActiveRows();
+		positions = new int[rows.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = i;
+		}
+		part = new BindingDataPart();
+		warmComparator = part.new BindingEntryComparator(0, new LabelProvider());
+		warmComparator.sort(model, rows, positions.clone());
+		viewer = new SyntheticBindings.StubViewer(model);
+	}
+
+	/** First sort on a column : the collation keys are built */
+	@Benchmark
+	public int[] sortColdKeys() {
+		BindingDataPart.BindingEntryComparator comparator = part.new BindingEntryComparator(0, new LabelProvider());
+		int[] sorted = positions.clone();
+		comparator.sort(model, rows, sorted);
+		return sorted;
+	}
+
+	/** Sort again with the keys already computed (filter changed) */
+	@Benchmark
+	public int[] sortWarmKeys() {
+		int[] sorted = positions.clone();
+		warmComparator.sort(model, rows, sorted);
+		return sorted;
+	}
+
+	/** Sort through the ViewerComparator compare method, as a viewer does */
+	@Benchmark
+	public BindingRow[] sortWithCompare() {
+		BindingRow[] sorted = rows.toArray(new BindingRow[0]);
+		Arrays.sort(sorted, new Comparator<BindingRow>() {
+			@Override
+			public int compare(BindingRow r1, BindingRow r2) {
+				return warmComparator.compare(viewer, r1, r2);
+			}
+		});
+		return sorted;
+	}
+
+	/** A second click on the same header */
+	@Benchmark
+	public int[] reverse() {
+		int[] sorted = positions.clone();
+		BindingDataPart.reverse(sorted);
+		return sorted;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The history of a context whose plugin contributing some bindings is loaded
+ * and unloaded again and again : the cost of recording one frame, and of
+ * rebuilding the state at a past position with a full ring buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingHistoryBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	@Param({ "200" })
+	int contributed;
+
+	private IEclipseContext context;
+	private Map<IEclipseContext, BindingModelDelta> loaded;
+	private Map<IEclipseContext, BindingModelDelta> unloaded;
+	private BindingHistory history;
+	private long time;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size + contributed,
+				"org.eclipse.ui.contexts.window");
+		context = SyntheticBindings.createContext("bench", bindings.subList(0, size));
+		BindingModelRegistry modelRegistry = new BindingModelRegistry();
+		BindingRowModel model = modelRegistry.getModel(context);
+
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(bindings, Collections.<Binding> emptyList()));
+		BindingModelDelta load = model.update(Collections.<String> emptySet());
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(bindings.subList(0, size), Collections.<Binding> emptyList()));
+		BindingModelDelta unload = load.getNewModel().update(Collections.<String> emptySet());
+		loaded = Collections.singletonMap(context, load);
+		unloaded = Collections.singletonMap(context, unload);
+
+		// A full ring buffer
+		history = new BindingHistory();
+		history.start(modelRegistry);
+		for (int i = 0; i < BindingHistory.MAX_FRAMES; i++) {
+			record();
+		}
+	}
+
+	/** One frame : the plugin is loaded or unloaded, the oldest frame is dropped */
+	@Benchmark
+	public boolean record() {
+		time++;
+		return history.record(time, ((time & 1) != 0) ? loaded : unloaded);
+	}
+
+	/** Scrub to the oldest state kept : all the frames are undone */
+	@Benchmark
+	public BindingHistory.Snapshot snapshotOldest() {
+		return history.getSnapshot(context, history.getOldestPosition());
+	}
+
+	/** Scrub to a recent state */
+	@Benchmark
+	public BindingHistory.Snapshot snapshotRecent() {
+		return history.getSnapshot(context, history.getNewestPosition() - 1);
+	}
+
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.swt.widgets.Display;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What an opened spy keeps for its labels : a provider per column and the
+ * rendered cells of the rows, the BindingLabelService being shared. Run with
+ * -prof gc : gc.alloc.rate.norm is the memory kept by one spy, as everything
+ * allocated by openSpy is returned. The providers need a Display : it is
+ * created in the benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingLabelFootprintBenchmark {
+
+	@Param({ "9", "36" })
+	int columns;
+
+	@Param({ "0", "1000", "10000" })
+	int size;
+
+	private Display display;
+	private BindingLabelService labelService;
+	private List<BindingRow> rows;
+
+	@Setup
+	public void setup() {
+		display = new Display();
+		rows = SyntheticBindings.createModel(size).getActiveRows();
+
+		BindingDataFilter filter = new BindingDataFilter();
+		filter.setModelRegistry(new BindingModelRegistry());
+
+		IEclipseContext ctx = EclipseContextFactory.create("bench footprint");
+		ctx.set(BindingDataFilter.class, filter);
+		labelService = ContextInjectionFactory.make(BindingLabelService.class, ctx);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.dispose();
+	}
+
+	@Benchmark
+	public Object[] openSpy() {
+		Column[] values = Column.values();
+		BindingDataProvider[] providers = new BindingDataProvider[columns];
+		for (int i = 0; i < columns; i++) {
+			providers[i] = new BindingDataProvider(labelService, values[i % values.length]);
+		}
+		// The cells kept by the renderer, one array for all the columns of a row
+		Map<BindingRow, BindingRowRenderer.Cell[]> rendered = new IdentityHashMap<>();
+		for (BindingRow row : rows) {
+			rendered.put(row, BindingRowRenderer.render(row));
+		}
+		return new Object[] { providers, rendered };
+	}
+
+}
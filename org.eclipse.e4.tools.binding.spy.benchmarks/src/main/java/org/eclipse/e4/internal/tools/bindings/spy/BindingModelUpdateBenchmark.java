@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of taking into account a plugin contributing some bindings : the
+ * incremental update of the model, against a full rebuild of its rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingModelUpdateBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	@Param({ "200" })
+	int contributed;
+
+	private IEclipseContext context;
+	private BindingRowModel model;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size + contributed,
+				"org.eclipse.ui.contexts.window");
+		context = SyntheticBindings.createContext("bench", bindings.subList(0, size));
+		model = BindingRowModel.build(context);
+
+		// The plugin is loaded : the context now answers all the bindings
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(bindings, Collections.<Binding> emptyList()));
+	}
+
+	/** Only the contributed rows are created, the others are reused */
+	@Benchmark
+	public BindingModelDelta update() {
+		return model.update(Collections.<String> emptySet());
+	}
+
+	/** All the rows are created again, as the refresh button does */
+	@Benchmark
+	public BindingRowModel rebuild() {
+		return BindingRowModel.build(context);
+	}
+
+}
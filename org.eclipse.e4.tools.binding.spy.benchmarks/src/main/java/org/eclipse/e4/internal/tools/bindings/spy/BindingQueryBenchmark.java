@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compilation of a query of the search text and its evaluation on all the
+ * rows of a model, the search index being already built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingQueryBenchmark {
+
+	@Param({ "20000" })
+	int size;
+
+	@Param({ "refactor", "key:ctrl+shift cmd:refactor -state:disabled", "rename|format|debug", "/ctrl\\+[a-c]$/" })
+	String text;
+
+	private BindingRowModel model;
+
+	@Setup
+	public void setup() {
+		model = SyntheticBindings.createModel(size);
+		model.getSearchIndex();
+	}
+
+	@Benchmark
+	public BindingQuery compile() {
+		return BindingQuery.compile(text);
+	}
+
+	/** What a keystroke costs for one context : compile once, then find */
+	@Benchmark
+	public BitSet compileAndFind() {
+		return BindingQuery.compile(text).find(model);
+	}
+
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.jface.viewers.StyledString;
+import org.eclipse.jface.viewers.StyledString.Styler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The two halves of the render stage for all the rows of a model : building
+ * the cells in the job, and copying them into StyledStrings in the UI thread
+ * (what is left to do while painting).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingRowRendererBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private List<BindingRow> rows;
+	private BindingRowRenderer.Cell[][] cells;
+	private Styler[] stylers;
+
+	@Setup
+	public void setup() {
+		rows = SyntheticBindings.createModel(size).getActiveRows();
+		cells = new BindingRowRenderer.Cell[rows.size()][];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = BindingRowRenderer.render(rows.get(i));
+		}
+		stylers = new Styler[BindingRowRenderer.Style.values().length];
+		for (int i = 0; i < stylers.length; i++) {
+			stylers[i] = StyledString.createColorRegistryStyler("BENCH_COLOR" + i, null);
+		}
+	}
+
+	/** The job : all the columns of all the rows */
+	@Benchmark
+	public void render(Blackhole bh) {
+		for (BindingRow row : rows) {
+			bh.consume(BindingRowRenderer.render(row));
+		}
+	}
+
+	/** The UI thread : copy the rendered cells of the styled columns */
+	@Benchmark
+	public void copy(Blackhole bh) {
+		for (BindingRowRenderer.Cell[] rowCells : cells) {
+			for (Column column : BindingRow.SEARCHED_COLUMNS) {
+				BindingRowRenderer.Cell cell = rowCells[column.ordinal()];
+				if (cell == null)
+					continue;
+				StyledString styledString = new StyledString(cell.getText());
+				for (int i = 0; i < cell.getRangeCount(); i++) {
+					styledString.setStyle(cell.getStart(i), cell.getLength(i), stylers[cell.getStyle(i).ordinal()]);
+				}
+				bh.consume(styledString);
+			}
+		}
+	}
+
+}
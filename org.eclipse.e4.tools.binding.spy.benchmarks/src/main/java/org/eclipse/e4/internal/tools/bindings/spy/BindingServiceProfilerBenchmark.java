@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the measuring proxy of the BindingServiceProfiler on a binding
+ * service call : the same call on the original service and on the proxy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingServiceProfilerBenchmark {
+
+	private EBindingService service;
+	private EBindingService proxy;
+	private BindingServiceProfiler profiler;
+	private TriggerSequence sequence;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(1000, "org.eclipse.ui.contexts.window");
+		IEclipseContext context = SyntheticBindings.createContext("bench", bindings);
+		service = context.get(EBindingService.class);
+		sequence = bindings.get(500).getTriggerSequence();
+		profiler = new BindingServiceProfiler();
+		profiler.start(context);
+		proxy = context.get(EBindingService.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		profiler.stop();
+	}
+
+	@Benchmark
+	public Binding direct() {
+		return service.getPerfectMatch(sequence);
+	}
+
+	@Benchmark
+	public Binding profiled() {
+		return proxy.getPerfectMatch(sequence);
+	}
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A snapshot of about 100 MB (100 contexts of 20000 bindings) : the cost of
+ * opening it and displaying the first screen of a context, compared with
+ * decoding all the rows of one context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingSnapshotBenchmark {
+
+	private static final Column[] DISPLAYED_COLUMNS = BindingRow.SEARCHED_COLUMNS;
+
+	/** The rows visible in the binding viewer */
+	private static final int SCREEN_ROWS = 40;
+
+	@Param({ "100" })
+	int contexts;
+
+	@Param({ "20000" })
+	int size;
+
+	private File file;
+	private BindingSnapshot snapshot;
+
+	@Setup
+	public void setup() throws IOException {
+		BindingRowModel model = SyntheticBindings.createModel(size);
+		file = File.createTempFile("bindings", ".bspy");
+		try (BindingSnapshotWriter writer = new BindingSnapshotWriter(file)) {
+			for (int i = 0; i < contexts; i++) {
+				writer.addContext(model, (i == 0) ? 0 : 1);
+			}
+		}
+		snapshot = BindingSnapshot.open(file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	/** Open the file : only the header is read */
+	@Benchmark
+	public BindingSnapshot open() throws IOException {
+		return BindingSnapshot.open(file);
+	}
+
+	/** Open the file, select a context and display the first rows */
+	@Benchmark
+	public void openAndShowScreen(Blackhole bh) throws IOException {
+		BindingSnapshot opened = BindingSnapshot.open(file);
+		showRows(opened.getContext(contexts / 2), SCREEN_ROWS, bh);
+	}
+
+	/** Decode all the rows of one context, as a full parse would do for each context */
+	@Benchmark
+	public void decodeContext(Blackhole bh) {
+		BindingSnapshot.Context context = snapshot.getContext(contexts / 2);
+		showRows(context, context.getActiveCount() + context.getConflictCount(), bh);
+	}
+
+	private static void showRows(BindingSnapshot.Context context, int count, Blackhole bh) {
+		for (int i = 0; i < count; i++) {
+			BindingSnapshot.Row row = context.getRow(i);
+			for (Column column : DISPLAYED_COLUMNS) {
+				bh.consume(row.getText(column));
+			}
+		}
+	}
+
+}
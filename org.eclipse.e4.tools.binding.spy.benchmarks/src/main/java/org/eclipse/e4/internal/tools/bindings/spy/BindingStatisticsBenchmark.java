@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The statistics of a context : counted in one pass over all its bindings, or
+ * updated with the delta of a plugin contributing some bindings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingStatisticsBenchmark {
+
+	@Param({ "10000", "100000" })
+	int size;
+
+	@Param({ "200" })
+	int contributed;
+
+	private BindingRowModel model;
+	private BindingModelDelta load;
+	private BindingModelDelta unload;
+	private BindingStatistics statistics;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size + contributed,
+				"org.eclipse.ui.contexts.window");
+		IEclipseContext context = SyntheticBindings.createContext("bench", bindings.subList(0, size));
+		model = BindingRowModel.build(context);
+
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(bindings, Collections.<Binding> emptyList()));
+		load = model.update(Collections.<String> emptySet());
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(bindings.subList(0, size), Collections.<Binding> emptyList()));
+		unload = load.getNewModel().update(Collections.<String> emptySet());
+	}
+
+	/** The deltas apply to the first model only */
+	@Setup(Level.Invocation)
+	public void count() {
+		statistics = BindingStatistics.compute(model);
+	}
+
+	@Benchmark
+	public BindingStatistics compute() {
+		return BindingStatistics.compute(model);
+	}
+
+	/** The plugin is loaded then unloaded, only its rows are counted */
+	@Benchmark
+	public boolean applyDeltas() {
+		return statistics.apply(load) && statistics.apply(unload);
+	}
+
+}
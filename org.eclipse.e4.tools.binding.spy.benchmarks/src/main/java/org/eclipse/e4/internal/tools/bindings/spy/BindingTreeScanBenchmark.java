@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The search of a pattern in a tree of 341 contexts (one root, 20 children of
+ * 16 children each) : the flat search of all the models one after the other
+ * (as the search job did before the scan),
+ * and the fork/join scan with the counts of each subtree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingTreeScanBenchmark {
+
+	@Param({ "1000" })
+	int size;
+
+	@Param({ "re", "ctrl+shift" })
+	String pattern;
+
+	private List<BindingRowModel> models;
+	private List<BindingTreeScan.Node> roots;
+
+	@Setup
+	public void setup() {
+		models = new ArrayList<>();
+		BindingTreeScan.Node root = createNode();
+		for (int i = 0; i < 20; i++) {
+			BindingTreeScan.Node child = createNode();
+			root.addChild(child);
+			for (int j = 0; j < 16; j++) {
+				child.addChild(createNode());
+			}
+		}
+		roots = Collections.singletonList(root);
+	}
+
+	private BindingTreeScan.Node createNode() {
+		BindingRowModel model = SyntheticBindings.createModel(size);
+		models.add(model);
+		return new BindingTreeScan.Node(model);
+	}
+
+	@Benchmark
+	public BindingDataFilter.SearchResult searchSequential() {
+		BindingDataFilter.SearchResult result = new BindingDataFilter.SearchResult(pattern);
+		for (BindingRowModel model : models) {
+			BitSet rows = result.getQuery().find(model);
+			int count = rows.cardinality();
+			result.add(model, rows, new BindingTreeScan.Counts(count, count, (count > 0) ? 1 : 0));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public BindingDataFilter.SearchResult scanForkJoin() {
+		return BindingTreeScan.scan(pattern, roots, new NullProgressMonitor());
+	}
+
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of answering "what fires for this sequence in this context" with the
+ * trie of all the contexts, against a scan of the rows of the context, and
+ * cost of building the trie and of analyzing a whole context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingTrieBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	@Param({ "20" })
+	int contexts;
+
+	private List<BindingRowModel> models;
+	private BindingRowModel model;
+	private BindingTrie trie;
+	private TriggerSequence[] queries;
+	private int next;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size, "org.eclipse.ui.contexts.window");
+		models = new ArrayList<>(contexts);
+		for (int i = 0; i < contexts; i++) {
+			models.add(BindingRowModel.build(SyntheticBindings.createContext("bench" + i, bindings)));
+		}
+		model = models.get(contexts / 2);
+		trie = BindingTrie.build(models);
+
+		queries = new TriggerSequence[64];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = bindings.get((i * 7919) % size).getTriggerSequence();
+		}
+	}
+
+	/** One walk of the sequence length */
+	@Benchmark
+	public BindingTrie.Entry firedWithTrie() {
+		TriggerSequence query = queries[next++ & 63];
+		return trie.getFired(model.getContext(), query);
+	}
+
+	/** What had to be done by hand : scan the rows for the sequence and for a longer one */
+	@Benchmark
+	public BindingRow firedWithScan() {
+		TriggerSequence query = queries[next++ & 63];
+		BindingRow fired = null;
+		for (BindingRow row : model.getActiveRows()) {
+			TriggerSequence sequence = row.getBinding().getTriggerSequence();
+			if (sequence.equals(query)) {
+				fired = row;
+			} else if (sequence.startsWith(query, false)) {
+				return null; // The dispatcher waits for the next key
+			}
+		}
+		return fired;
+	}
+
+	@Benchmark
+	public BindingTrie build() {
+		return BindingTrie.build(models);
+	}
+
+	/** All the issues of one context, with all the others as siblings */
+	@Benchmark
+	public List<BindingIssue> analyze() {
+		List<IEclipseContext> siblings = new ArrayList<>(contexts);
+		for (BindingRowModel m : models) {
+			if (m != model)
+				siblings.add(m.getContext());
+		}
+		return BindingAnalysis.analyze(trie, model, Collections.unmodifiableList(siblings), null);
+	}
+
+}
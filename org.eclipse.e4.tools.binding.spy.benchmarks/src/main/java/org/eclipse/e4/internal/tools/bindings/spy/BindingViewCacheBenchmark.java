@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jface.viewers.LabelProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Going back and forth between two sorted contexts : the view of the context
+ * displayed is sorted again (its collation keys are already computed), or it
+ * is found in the BindingViewCache. The column widths measured by pack are
+ * not part of the first case, as they need a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingViewCacheBenchmark {
+
+	@Param({ "1000", "10000" })
+	int size;
+
+	private BindingRowModel[] models;
+	private BindingDataPart.BindingEntryComparator comparator;
+	private BindingViewCache cache;
+	private int switches;
+
+	@Setup
+	public void setup() {
+		models = new BindingRowModel[] { SyntheticBindings.createModel(size), SyntheticBindings.createModel(size) };
+		comparator = new BindingDataPart().new BindingEntryComparator(0, new LabelProvider());
+		cache = new BindingViewCache();
+		for (BindingRowModel model : models) {
+			Map<Object, int[]> views = Collections.singletonMap((Object) BindingDataProvider.ACTIVE_BINDINGS,
+					sort(model));
+			cache.put(model.getContext(), model, 0, views, new int[9]);
+		}
+	}
+
+	private int[] sort(BindingRowModel model) {
+		List<BindingRow> rows = model.getActiveRows();
+		int[] positions = new int[rows.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = i;
+		}
+		comparator.sort(model, rows, positions);
+		return positions;
+	}
+
+	/** The view is computed again on each selection */
+	@Benchmark
+	public int[] switchAndSort() {
+		return sort(models[switches++ & 1]);
+	}
+
+	/** The view is reused from the cache */
+	@Benchmark
+	public BindingViewCache.Entry switchCached() {
+		BindingRowModel model = models[switches++ & 1];
+		return cache.get(model.getContext(), model, 0);
+	}
+
+}
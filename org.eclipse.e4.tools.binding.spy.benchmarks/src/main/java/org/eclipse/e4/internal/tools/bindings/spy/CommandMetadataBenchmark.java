@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.common.NotDefinedException;
+import org.eclipse.jface.bindings.Binding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The metadata of the commands of all the bindings (one command out of ten
+ * is undefined) : read from the commands, catching the NotDefinedException as
+ * the rows used to, or from the CommandMetadataCache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandMetadataBenchmark {
+
+	@Param({ "10000" })
+	int size;
+
+	private Command[] commands;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size, "org.eclipse.ui.contexts.window");
+		commands = new Command[bindings.size()];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = bindings.get(i).getParameterizedCommand().getCommand();
+		}
+	}
+
+	@Benchmark
+	public void readWithExceptions(Blackhole bh) {
+		for (Command cmd : commands) {
+			try {
+				bh.consume(cmd.getName());
+				bh.consume(cmd.getDescription());
+			} catch (NotDefinedException e) {
+				bh.consume(e.getMessage());
+			}
+			try {
+				bh.consume(cmd.getCategory().getName());
+			} catch (NotDefinedException e) {
+				bh.consume(e.getMessage());
+			}
+		}
+	}
+
+	@Benchmark
+	public void readFromCache(Blackhole bh) {
+		for (Command cmd : commands) {
+			bh.consume(CommandMetadataCache.get(cmd));
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of BindingDataFilter.containsText over a context tree, as asked by
+ * the context tree when it paints all its nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainsTextBenchmark {
+
+	/** Total number of bindings, spread on all the contexts */
+	@Param({ "1000", "10000", "100000" })
+	int size;
+
+	@Param({ "50" })
+	int contextCount;
+
+	@Param({ "refactor 4", "nomatch" })
+	String pattern;
+
+	private final List<IEclipseContext> contexts = new ArrayList<>();
+	private BindingModelRegistry registry;
+	private BindingDataFilter filter;
+
+	@Setup
+	public void setup() {
+		List<Binding> bindings = SyntheticBindings.createBindings(size, "org.eclipse.ui.contexts.window");
+		int perContext = Math.max(1, size / contextCount);
+
+		// A root with children, each child with a grand child
+		IEclipseContext root = SyntheticBindings.createContext("bench root", bindings.subList(0, perContext));
+		contexts.add(root);
+		for (int i = 1; contexts.size() < contextCount; i++) {
+			int from = Math.min(bindings.size(), i * perContext);
+			List<Binding> slice = bindings.subList(from, Math.min(bindings.size(), from + perContext));
+			IEclipseContext parent = ((i % 2) == 0) ? contexts.get(contexts.size() - 1) : root;
+			IEclipseContext child = parent.createChild("bench child " + i);
+			child.set(EBindingService.class, SyntheticBindings.createBindingService(slice, new ArrayList<Binding>()));
+			contexts.add(child);
+		}
+
+		registry = new BindingModelRegistry();
+		filter = new BindingDataFilter();
+		filter.setModelRegistry(registry);
+	}
+
+	/** A pattern change with all the models built : first paint of the tree */
+	@Benchmark
+	public void firstPaint(Blackhole bh) {
+		filter.setPattern(pattern);
+		for (IEclipseContext ctx : contexts) {
+			bh.consume(filter.containsText(ctx, null));
+		}
+	}
+
+	/** The next paints of the tree with the same pattern */
+	@Benchmark
+	public void repaint(Blackhole bh) {
+		for (IEclipseContext ctx : contexts) {
+			bh.consume(filter.containsText(ctx, null));
+		}
+	}
+
+	/** A pattern change after all the bindings changed : models are rebuilt */
+	@Benchmark
+	public void firstPaintAfterBindingChange(Blackhole bh) {
+		registry.invalidateAll();
+		filter.setPattern(pattern);
+		for (IEclipseContext ctx : contexts) {
+			bh.consume(filter.containsText(ctx, null));
+		}
+	}
+
+}
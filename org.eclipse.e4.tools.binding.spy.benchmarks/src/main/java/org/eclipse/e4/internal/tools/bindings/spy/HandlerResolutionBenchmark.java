@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.e4.core.commands.internal.HandlerServiceImpl;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handler lookup of a command in the leaf of a chain of contexts, the
+ * handler being set in the root as for a workbench wide handler : the lookup
+ * in the context, and the lookup in the HandlerResolutionCache of the leaf.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("restriction")
+public class HandlerResolutionBenchmark {
+
+	static final String COMMAND_ID = "bench.handler";
+
+	@Param({ "2", "20" })
+	int depth;
+
+	private IEclipseContext leaf;
+	private HandlerResolutionCache cache;
+
+	@Setup
+	public void setup() {
+		// Not disposed : disposing a child context posts an event, there is no event admin here
+		IEclipseContext root = EclipseContextFactory.create("root");
+		root.set(HandlerServiceImpl.H_ID + COMMAND_ID, new Object());
+		leaf = root;
+		for (int i = 0; i < depth; i++) {
+			leaf = leaf.createChild("child" + i);
+		}
+		cache = HandlerResolutionCache.get(leaf);
+		cache.resolve(COMMAND_ID);
+	}
+
+	@Benchmark
+	public Object contextLookup() {
+		return leaf.get(HandlerServiceImpl.H_ID + COMMAND_ID);
+	}
+
+	@Benchmark
+	public Object cachedLookup() {
+		return cache.getHandler(COMMAND_ID);
+	}
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.commands.EHandlerService;
+import org.eclipse.e4.core.commands.internal.HandlerServiceImpl;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the key dispatch profiler on a local context with a stub
+ * handler : the handler execution alone, the same execution profiled, and
+ * the recording of the phases alone (run with -prof gc to check that it
+ * does not allocate).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("restriction")
+public class KeyDispatchProfilerBenchmark {
+
+	static final String COMMAND_ID = "bench.dispatch";
+
+	/** A handler doing nothing, found in the context like a contributed one */
+	public static final class StubHandler {
+		int count;
+
+		@Execute
+		public void execute() {
+			count++;
+		}
+	}
+
+	private IEclipseContext context;
+	private EHandlerService handlerService;
+	private ParameterizedCommand command;
+	private KeyDispatchProfiler profiler;
+
+	@Setup
+	public void setup() {
+		context = EclipseContextFactory.create("dispatch");
+		CommandManager manager = new CommandManager();
+		context.set(CommandManager.class, manager);
+		Category category = manager.getCategory("bench.category");
+		category.define("Benchmark", null);
+		Command cmd = manager.getCommand(COMMAND_ID);
+		cmd.define("Dispatch", null, category);
+		cmd.setHandler(HandlerServiceImpl.getHandler(COMMAND_ID));
+		command = new ParameterizedCommand(cmd, null);
+
+		handlerService = ContextInjectionFactory.make(HandlerServiceImpl.class, context);
+		context.set(EHandlerService.class, handlerService);
+		handlerService.activateHandler(COMMAND_ID, new StubHandler());
+
+		profiler = ContextInjectionFactory.make(KeyDispatchProfiler.class, context);
+		profiler.start(null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		profiler.stop();
+		context.dispose();
+	}
+
+	@Benchmark
+	public Object execute() {
+		return handlerService.executeHandler(command);
+	}
+
+	/** The execution driven as a dispatch : the phases are recorded */
+	@Benchmark
+	public Object profiledExecute() {
+		profiler.dispatchStarted();
+		Object result = handlerService.executeHandler(command);
+		profiler.dispatchFinished();
+		return result;
+	}
+
+	/** Only the recording of a dispatch */
+	@Benchmark
+	public KeyDispatchTimings record() {
+		profiler.dispatchStarted();
+		profiler.executionStarted(COMMAND_ID);
+		profiler.executionFinished(COMMAND_ID);
+		profiler.dispatchFinished();
+		return profiler.getTimings(COMMAND_ID);
+	}
+
+}
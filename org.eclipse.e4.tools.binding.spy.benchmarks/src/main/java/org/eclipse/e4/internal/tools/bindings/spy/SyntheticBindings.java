@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.keys.KeyBinding;
+import org.eclipse.jface.bindings.keys.KeySequence;
+import org.eclipse.jface.bindings.keys.KeyStroke;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Build synthetic commands, bindings and contexts for the benchmarks, without
+ * any workbench.
+ */
+final class SyntheticBindings {
+
+	static final String SCHEME_ID = "org.eclipse.ui.defaultAcceleratorConfiguration";
+
+	private static final String[] WORDS = { "refactor", "rename", "open", "search", "debug", "format", "toggle",
+			"navigate", "compare", "build" };
+
+	private static final int[] MODIFIERS = { SWT.CTRL, SWT.CTRL | SWT.SHIFT, SWT.ALT, SWT.ALT | SWT.SHIFT,
+			SWT.CTRL | SWT.ALT };
+
+	private SyntheticBindings() {
+	}
+
+	/**
+	 * Create bindings on distinct commands. One command out of ten is left
+	 * undefined, as contributed-but-undefined commands are common.
+	 */
+	static List<Binding> createBindings(int count, String contextId) {
+		CommandManager manager = new CommandManager();
+		Category category = manager.getCategory("bench.category");
+		category.define("Benchmark", "Benchmark commands");
+
+		List<Binding> bindings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String word = WORDS[i % WORDS.length];
+			Command cmd = manager.getCommand("bench.command." + word + "." + i);
+			if (i % 10 != 0)
+				cmd.define(word + " " + i, "Synthetic command to " + word + " number " + i, category);
+
+			KeyStroke first = KeyStroke.getInstance(MODIFIERS[i % MODIFIERS.length], 'A' + (i % 26));
+			KeyStroke second = KeyStroke.getInstance(0, 'A' + ((i / 26) % 26));
+			KeySequence sequence = (i % 3 == 0) ? KeySequence.getInstance(first)
+					: KeySequence.getInstance(new KeyStroke[] { first, second });
+
+			bindings.add(new KeyBinding(sequence, new ParameterizedCommand(cmd, null), SCHEME_ID, contextId, null,
+					null, null, (i % 7 == 0) ? Binding.USER : Binding.SYSTEM));
+		}
+		return bindings;
+	}
+
+	/** @return a binding service answering only the active bindings and the conflicts */
+	static EBindingService createBindingService(final Collection<Binding> active, final Collection<Binding> conflicts) {
+		return (EBindingService) Proxy.newProxyInstance(SyntheticBindings.class.getClassLoader(),
+				new Class<?>[] { EBindingService.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+						case "getActiveBindings":
+							return active;
+						case "getAllConflicts":
+							return conflicts;
+						case "hashCode":
+							return Integer.valueOf(System.identityHashCode(proxy));
+						case "equals":
+							return Boolean.valueOf(proxy == args[0]);
+						case "toString":
+							return "Synthetic binding service";
+						default:
+							return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+						}
+					}
+				});
+	}
+
+	/** @return a new context holding a synthetic binding service with these bindings */
+	static IEclipseContext createContext(String name, List<Binding> bindings) {
+		IEclipseContext ctx = EclipseContextFactory.create(name);
+		ctx.set(EBindingService.class, createBindingService(bindings, Collections.<Binding> emptyList()));
+		return ctx;
+	}
+
+	/** @return the model of a new context with count bindings */
+	static BindingRowModel createModel(int count) {
+		List<Binding> bindings = createBindings(count, "org.eclipse.ui.contexts.window");
+		return BindingRowModel.build(createContext("bench", bindings));
+	}
+
+	/** A viewer without control, only used as the input holder for the filter */
+	static final class StubViewer extends Viewer {
+		private Object input;
+
+		StubViewer(Object input) {
+			this.input = input;
+		}
+
+		@Override
+		public Control getControl() {
+			return null;
+		}
+
+		@Override
+		public Object getInput() {
+			return input;
+		}
+
+		@Override
+		public ISelection getSelection() {
+			return StructuredSelection.EMPTY;
+		}
+
+		@Override
+		public void refresh() {
+		}
+
+		@Override
+		public void setInput(Object input) {
+			this.input = input;
+		}
+
+		@Override
+		public void setSelection(ISelection selection, boolean reveal) {
+		}
+	}
+
+}
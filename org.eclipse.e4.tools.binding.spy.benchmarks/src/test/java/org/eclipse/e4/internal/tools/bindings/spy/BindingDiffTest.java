@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.keys.KeyBinding;
+import org.eclipse.jface.bindings.keys.KeySequence;
+import org.junit.Test;
+
+/**
+ * Compare the active bindings of two synthetic contexts with BindingDiff.
+ */
+public class BindingDiffTest {
+
+	private static final String LEFT_CONTEXT_ID = "ctx.left";
+	private static final String RIGHT_CONTEXT_ID = "ctx.right";
+
+	private final List<Binding> bindings = SyntheticBindings.createBindings(10, LEFT_CONTEXT_ID);
+
+	private static BindingRowModel createModel(String name, List<Binding> active, List<Binding> conflicts) {
+		IEclipseContext ctx = EclipseContextFactory.create(name);
+		ctx.set(EBindingService.class, SyntheticBindings.createBindingService(active, conflicts));
+		return BindingRowModel.build(ctx);
+	}
+
+	private static BindingRowModel createModel(String name, Binding... active) {
+		return createModel(name, Arrays.asList(active), Collections.<Binding> emptyList());
+	}
+
+	/** @return a binding of the sequence of one binding on the command of another one */
+	private static Binding rebind(Binding sequence, Binding command, String contextId) {
+		return new KeyBinding((KeySequence) sequence.getTriggerSequence(), command.getParameterizedCommand(),
+				SyntheticBindings.SCHEME_ID, contextId, null, null, null, Binding.SYSTEM);
+	}
+
+	private static List<String> describe(BindingDiff diff) {
+		List<String> result = new ArrayList<>();
+		for (BindingDiff.Change change : diff.getChanges()) {
+			result.add(change.getKind() + " " + change.getText(Column.COMMAND_DESCRIPTION));
+		}
+		return result;
+	}
+
+	private String command(int index) {
+		return bindings.get(index).getParameterizedCommand().getId();
+	}
+
+	@Test
+	public void testSameBindings() {
+		BindingRowModel left = createModel("left", bindings.get(0), bindings.get(1));
+		BindingRowModel right = createModel("right", bindings.get(1), bindings.get(0));
+		assertTrue(BindingDiff.compute(left, right).getChanges().isEmpty());
+		assertTrue(BindingDiff.compute(left, left).getChanges().isEmpty());
+	}
+
+	@Test
+	public void testChanges() {
+		BindingRowModel left = createModel("left", bindings.get(0), bindings.get(1), bindings.get(2),
+				bindings.get(3));
+		BindingRowModel right = createModel("right", bindings.get(0),
+				rebind(bindings.get(1), bindings.get(5), RIGHT_CONTEXT_ID), bindings.get(4));
+		BindingDiff diff = BindingDiff.compute(left, right);
+		assertSame(left, diff.getLeft());
+		assertSame(right, diff.getRight());
+
+		// Sorted by kind, then by sequence
+		List<String> removed = Arrays.asList("REMOVED " + command(2), "REMOVED " + command(3));
+		if (bindings.get(3).getTriggerSequence().toString()
+				.compareTo(bindings.get(2).getTriggerSequence().toString()) < 0)
+			Collections.reverse(removed);
+		List<String> expected = new ArrayList<>();
+		expected.add("ADDED " + command(4));
+		expected.addAll(removed);
+		expected.add("OVERRIDDEN " + command(1) + " -> " + command(5));
+		assertEquals(expected, describe(diff));
+
+		BindingDiff.Change added = diff.getChanges().get(0);
+		assertNull(added.getLeft());
+		assertEquals(bindings.get(4), added.getRight().getBinding());
+		BindingDiff.Change overridden = diff.getChanges().get(3);
+		assertEquals(bindings.get(1).getTriggerSequence().toString(), overridden.getSequenceText());
+		assertEquals(LEFT_CONTEXT_ID + " -> " + RIGHT_CONTEXT_ID, overridden.getText(Column.BINDING_CONTEXT_ID));
+		assertEquals("Overridden", overridden.getText(Column.STATE));
+	}
+
+	@Test
+	public void testSequenceBoundTwice() {
+		// The sequence keeps a command in common : the other pair is removed, not overridden
+		Binding other = rebind(bindings.get(1), bindings.get(5), LEFT_CONTEXT_ID);
+		BindingRowModel left = createModel("left", bindings.get(1), other);
+		BindingRowModel right = createModel("right", other);
+		assertEquals(Arrays.asList("REMOVED " + command(1)), describe(BindingDiff.compute(left, right)));
+		assertEquals(Arrays.asList("ADDED " + command(1)), describe(BindingDiff.compute(right, left)));
+	}
+
+	@Test
+	public void testSequenceOverriddenTwice() {
+		// No command in common : the pairs are overridden one to one, the extra one is removed
+		Binding second = rebind(bindings.get(1), bindings.get(5), LEFT_CONTEXT_ID);
+		BindingRowModel left = createModel("left", bindings.get(1), second);
+		BindingRowModel right = createModel("right", rebind(bindings.get(1), bindings.get(6), RIGHT_CONTEXT_ID));
+		assertEquals(Arrays.asList("REMOVED " + command(5), "OVERRIDDEN " + command(1) + " -> " + command(6)),
+				describe(BindingDiff.compute(left, right)));
+	}
+
+	@Test
+	public void testConflictsAreIgnored() {
+		BindingRowModel left = createModel("left", Arrays.asList(bindings.get(0)),
+				Arrays.asList(bindings.get(1)));
+		BindingRowModel right = createModel("right", Arrays.asList(bindings.get(0)),
+				Arrays.asList(bindings.get(2)));
+		assertTrue(BindingDiff.compute(left, right).getChanges().isEmpty());
+	}
+
+}
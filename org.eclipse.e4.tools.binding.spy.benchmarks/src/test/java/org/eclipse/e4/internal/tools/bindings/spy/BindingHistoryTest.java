@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Record the changes of a synthetic context in a BindingHistory and rebuild
+ * its past states, including after the oldest frames (and the ids only they
+ * referred to) have been dropped.
+ */
+public class BindingHistoryTest {
+
+	private final List<Binding> bindings = SyntheticBindings.createBindings(10, "org.eclipse.ui.contexts.window");
+
+	/** The active bindings answered by the binding service of the context */
+	private final List<Binding> active = new ArrayList<>();
+
+	private IEclipseContext context;
+	private BindingRowModel model;
+	private BindingHistory history;
+	private long time;
+
+	@Before
+	public void setUp() {
+		context = EclipseContextFactory.create("history");
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(active, Collections.<Binding> emptyList()));
+		history = new BindingHistory();
+		time = 1000;
+	}
+
+	/** Build the first model of the context with these bindings */
+	private void init(int... indexes) {
+		for (int i : indexes) {
+			active.add(bindings.get(i));
+		}
+		model = BindingRowModel.build(context);
+	}
+
+	/** Add and remove a binding (-1 for none) and record the update of the model */
+	private boolean change(int added, int removed) {
+		if (added >= 0)
+			active.add(bindings.get(added));
+		if (removed >= 0)
+			active.remove(bindings.get(removed));
+		BindingModelDelta delta = model.update(null);
+		model = delta.getNewModel();
+		return history.record(++time, Collections.singletonMap(context, delta));
+	}
+
+	private String command(int index) {
+		return bindings.get(index).getParameterizedCommand().getId();
+	}
+
+	/** @return the status of each command in the snapshot */
+	private static Map<String, BindingHistory.Status> getStatuses(BindingHistory.Snapshot snapshot) {
+		Map<String, BindingHistory.Status> statuses = new HashMap<>();
+		for (BindingHistory.Item item : snapshot.getItems()) {
+			statuses.put(item.getEntry().getText(Column.COMMAND_DESCRIPTION), item.getStatus());
+		}
+		return statuses;
+	}
+
+	private void assertStatuses(BindingHistory.Snapshot snapshot, int[] kept, int[] removed, int[] added) {
+		Map<String, BindingHistory.Status> expected = new HashMap<>();
+		for (int i : kept) {
+			expected.put(command(i), BindingHistory.Status.KEPT);
+		}
+		for (int i : removed) {
+			expected.put(command(i), BindingHistory.Status.REMOVED);
+		}
+		for (int i : added) {
+			expected.put(command(i), BindingHistory.Status.ADDED);
+		}
+		assertEquals(expected, getStatuses(snapshot));
+		assertEquals(removed.length + added.length, snapshot.getChangedCount());
+	}
+
+	@Test
+	public void testSnapshotUndoesNewerFrames() {
+		init(0, 1, 2);
+		assertTrue(change(3, -1));
+		assertTrue(change(-1, 1));
+		assertTrue(change(4, 3));
+		assertEquals(0, history.getOldestPosition());
+		assertEquals(3, history.getNewestPosition());
+
+		// Added then removed since the oldest state : not in the items
+		assertStatuses(history.getSnapshot(context, 0), new int[] { 0, 2 }, new int[] { 1 }, new int[] { 4 });
+		assertStatuses(history.getSnapshot(context, 1), new int[] { 0, 2 }, new int[] { 1, 3 }, new int[] { 4 });
+		assertStatuses(history.getSnapshot(context, 2), new int[] { 0, 2 }, new int[] { 3 }, new int[] { 4 });
+		assertStatuses(history.getSnapshot(context, 3), new int[] { 0, 2, 4 }, new int[0], new int[0]);
+
+		// The items are sorted by sequence
+		List<BindingHistory.Item> items = history.getSnapshot(context, 0).getItems();
+		for (int i = 1; i < items.size(); i++) {
+			assertTrue(items.get(i - 1).getEntry().getText(Column.TRIGGER_SEQUENCE)
+					.compareTo(items.get(i).getEntry().getText(Column.TRIGGER_SEQUENCE)) <= 0);
+		}
+	}
+
+	@Test
+	public void testPositionsAreClamped() {
+		init(0);
+		change(1, -1);
+		change(2, -1);
+		assertEquals(0, history.getSnapshot(context, -5).getPosition());
+		assertEquals(2, history.getSnapshot(context, 99).getPosition());
+		assertEquals(time - 1, history.getTime(1));
+		assertEquals(time, history.getTime(2));
+		assertNull(history.getSnapshot(EclipseContextFactory.create("other"), 0));
+	}
+
+	@Test
+	public void testUnchangedModelIsNotRecorded() {
+		init(0, 1);
+		assertFalse(change(-1, -1));
+		assertEquals(0, history.getFrameCount());
+		assertEquals(2, history.getEntryCount());
+	}
+
+	@Test
+	public void testDroppedIdsAreReused() {
+		init(0);
+		change(1, -1);
+		change(-1, 1);
+		assertEquals(2, history.getEntryCount());
+
+		// Toggle another binding until the frames of the first one are dropped
+		for (int i = 0; i < BindingHistory.MAX_FRAMES; i++) {
+			if (i % 2 == 0)
+				change(2, -1);
+			else
+				change(-1, 2);
+		}
+		assertEquals(BindingHistory.MAX_FRAMES, history.getFrameCount());
+		assertEquals(2, history.getEntryCount());
+
+		// The new binding takes the free id : the older frames must not see it
+		change(3, -1);
+		assertEquals(3, history.getEntryCount());
+		long oldest = history.getOldestPosition();
+		assertEquals(3, oldest);
+		BindingHistory.Snapshot snapshot = history.getSnapshot(context, oldest);
+		assertStatuses(snapshot, new int[] { 0 }, new int[] { 2 }, new int[] { 3 });
+		// The time of the oldest state is the time of the last dropped frame
+		assertEquals(time - BindingHistory.MAX_FRAMES, snapshot.getTime());
+	}
+
+	@Test
+	public void testClear() {
+		init(0, 1);
+		change(2, 0);
+		history.clear();
+		assertEquals(0, history.getFrameCount());
+		assertEquals(0, history.getEntryCount());
+		assertEquals(0, history.getNewestPosition());
+		assertNull(history.getSnapshot(context, 0));
+	}
+
+	@Test
+	public void testSortedIdOperations() {
+		int[] a = { 1, 3, 5, 7 };
+		int[] b = { 2, 3, 7, 8 };
+		assertArrayEquals(new int[] { 1, 5 }, BindingHistory.difference(a, b));
+		assertArrayEquals(new int[] { 3, 7 }, BindingHistory.intersection(a, b));
+		assertArrayEquals(new int[] { 1, 2, 3, 5, 7, 8 }, BindingHistory.union(a, b));
+		assertArrayEquals(a, BindingHistory.union(a, new int[0]));
+	}
+
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Update the models of a synthetic context whose bindings change, and check
+ * the rows kept, added and removed by each BindingModelDelta.
+ */
+public class BindingModelDeltaTest {
+
+	private final List<Binding> bindings = SyntheticBindings.createBindings(10, "org.eclipse.ui.contexts.window");
+
+	/* The bindings answered by the binding service of the context */
+	private final List<Binding> active = new ArrayList<>();
+	private final List<Binding> conflicts = new ArrayList<>();
+
+	private IEclipseContext context;
+
+	@Before
+	public void setUp() {
+		context = EclipseContextFactory.create("delta");
+		context.set(EBindingService.class, SyntheticBindings.createBindingService(active, conflicts));
+	}
+
+	private void setBindings(List<Binding> list, int... indexes) {
+		list.clear();
+		for (int i : indexes) {
+			list.add(bindings.get(i));
+		}
+	}
+
+	private String command(int index) {
+		return bindings.get(index).getParameterizedCommand().getId();
+	}
+
+	private static void assertRows(BindingRowModel model, Binding... expected) {
+		assertEquals(expected.length, model.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], model.getRow(i).getBinding());
+			assertEquals(i, model.getRow(i).getIndex());
+		}
+	}
+
+	@Test
+	public void testKeptAddedAndRemovedRows() {
+		setBindings(active, 0, 1, 2);
+		BindingRowModel model = BindingRowModel.build(context);
+		setBindings(active, 0, 2, 3);
+		BindingModelDelta delta = model.update(null);
+
+		assertSame(model, delta.getOldModel());
+		BindingRowModel newModel = delta.getNewModel();
+		assertRows(newModel, bindings.get(0), bindings.get(2), bindings.get(3));
+		assertEquals(1, delta.getAddedCount());
+		assertEquals(1, delta.getRemovedCount());
+		assertFalse(delta.isEmpty());
+
+		assertEquals(0, delta.getOldIndex(0));
+		assertEquals(2, delta.getOldIndex(1));
+		assertEquals(-1, delta.getOldIndex(2));
+		assertEquals(0, delta.getNewIndex(0));
+		assertEquals(-1, delta.getNewIndex(1));
+		assertEquals(1, delta.getNewIndex(2));
+
+		// A row at the same index is reused, a moved one is copied with its new index
+		assertSame(model.getRow(0), newModel.getRow(0));
+		assertNotSame(model.getRow(2), newModel.getRow(1));
+		assertEquals(model.getRow(2).getText(BindingDataProvider.Column.COMMAND_DESCRIPTION),
+				newModel.getRow(1).getText(BindingDataProvider.Column.COMMAND_DESCRIPTION));
+	}
+
+	@Test
+	public void testUnchangedBindings() {
+		setBindings(active, 0, 1);
+		setBindings(conflicts, 2);
+		BindingRowModel model = BindingRowModel.build(context);
+		assertTrue(model.update(null).isEmpty());
+
+		// The rows of a changed command are resolved again, but their content has not changed
+		String commandId = bindings.get(1).getParameterizedCommand().getId();
+		BindingModelDelta delta = model.update(Collections.singleton(commandId));
+		assertTrue(delta.isEmpty());
+		assertSame(model.getRow(1), delta.getNewModel().getRow(1));
+	}
+
+	@Test
+	public void testReorderedRowsAreNotEmpty() {
+		setBindings(active, 0, 1);
+		BindingRowModel model = BindingRowModel.build(context);
+		setBindings(active, 1, 0);
+		BindingModelDelta delta = model.update(null);
+		assertEquals(0, delta.getAddedCount());
+		assertEquals(0, delta.getRemovedCount());
+		assertFalse(delta.isEmpty());
+		assertEquals(1, delta.getOldIndex(0));
+		assertEquals(0, delta.getOldIndex(1));
+	}
+
+	@Test
+	public void testConflictRowsFollowTheActiveOnes() {
+		setBindings(active, 0, 1);
+		setBindings(conflicts, 2);
+		BindingRowModel model = BindingRowModel.build(context);
+
+		// The conflict moves to the active rows : removed and added
+		setBindings(active, 0, 1, 2);
+		setBindings(conflicts, 3);
+		BindingModelDelta delta = model.update(null);
+		BindingRowModel newModel = delta.getNewModel();
+		assertRows(newModel, bindings.get(0), bindings.get(1), bindings.get(2), bindings.get(3));
+		assertEquals(3, newModel.getActiveRows().size());
+		assertEquals(2, delta.getAddedCount());
+		assertEquals(1, delta.getRemovedCount());
+		assertEquals(-1, delta.getNewIndex(2));
+	}
+
+	@Test
+	public void testRegistryUpdate() {
+		final List<IEclipseContext> invalidated = new ArrayList<>();
+		BindingModelRegistry registry = new BindingModelRegistry();
+		registry.addModelListener(new BindingModelRegistry.IModelListener() {
+			@Override
+			public void modelInvalidated(IEclipseContext ctx) {
+				invalidated.add(ctx);
+			}
+		});
+
+		// Not built yet : nothing to update
+		assertNull(registry.update(context, null));
+
+		setBindings(active, 0, 1);
+		BindingRowModel model = registry.getModel(context);
+		assertSame(model, registry.getModel(context));
+		assertTrue(registry.update(context, null).isEmpty());
+		assertTrue(invalidated.isEmpty());
+
+		setBindings(active, 1);
+		BindingModelDelta delta = registry.update(context, null);
+		assertSame(delta.getNewModel(), registry.getCachedModel(context));
+		assertEquals(Collections.singletonList(context), invalidated);
+	}
+
+	@Test
+	public void testModelsOfTheChangedCommands() {
+		setBindings(active, 0, 1);
+		IEclipseContext other = EclipseContextFactory.create("other");
+		other.set(EBindingService.class, SyntheticBindings.createBindingService(
+				Collections.singletonList(bindings.get(2)), Collections.<Binding> emptyList()));
+		BindingModelRegistry registry = new BindingModelRegistry();
+		BindingRowModel model = registry.getModel(context);
+		registry.getModel(other);
+
+		assertTrue(model.containsAnyCommand(Collections.singleton(command(1))));
+		assertFalse(model.containsAnyCommand(Collections.singleton(command(2))));
+		assertEquals(Collections.singletonList(context),
+				registry.getCachedContexts(Collections.singleton(command(1))));
+		assertEquals(Collections.singletonList(other), registry.getCachedContexts(Collections.singleton(command(2))));
+		assertTrue(registry.getCachedContexts(Collections.singleton(command(3))).isEmpty());
+	}
+
+	@Test
+	public void testStaleModelIsUpdatedOnNextUse() {
+		final List<BindingModelDelta> updates = new ArrayList<>();
+		BindingModelRegistry registry = new BindingModelRegistry();
+		registry.addModelUpdateListener(new BindingModelRegistry.IModelUpdateListener() {
+			@Override
+			public void modelUpdated(IEclipseContext ctx, BindingModelDelta delta) {
+				updates.add(delta);
+			}
+		});
+		setBindings(active, 0, 1);
+		IEclipseContext displayed = EclipseContextFactory.create("displayed");
+		displayed.set(EBindingService.class, SyntheticBindings.createBindingService(active, conflicts));
+		BindingRowModel model = registry.getModel(context);
+		BindingRowModel displayedModel = registry.getModel(displayed);
+
+		// Only the displayed model is kept current, the other one is not updated yet
+		setBindings(active, 1, 2);
+		registry.markStale(Collections.<String> emptySet(), Collections.singletonList(displayed));
+		assertSame(model, registry.getCachedModel(context));
+		assertSame(displayedModel, registry.getCachedModel(displayed));
+		assertTrue(updates.isEmpty());
+		// Only a current model is got without calling the context bindings
+		assertNull(registry.getCurrentModel(context));
+		assertSame(displayedModel, registry.getCurrentModel(displayed));
+
+		BindingRowModel updated = registry.getModel(context);
+		assertRows(updated, bindings.get(1), bindings.get(2));
+		assertEquals(1, updates.size());
+		assertSame(model, updates.get(0).getOldModel());
+		assertEquals(1, updates.get(0).getOldIndex(0));
+		// Updated once
+		assertSame(updated, registry.getModel(context));
+		assertSame(updated, registry.getCurrentModel(context));
+		assertEquals(1, updates.size());
+
+		// An update of a stale model applies the missed changes too
+		setBindings(active, 2);
+		registry.markStale(null, Collections.<IEclipseContext> emptyList());
+		BindingModelDelta delta = registry.update(context, Collections.<String> emptySet());
+		assertRows(delta.getNewModel(), bindings.get(2));
+		assertSame(delta.getNewModel(), registry.getModel(context));
+		assertEquals(1, updates.size());
+	}
+
+	@Test
+	public void testNewBindingServiceRebuildsTheModel() {
+		setBindings(active, 0);
+		BindingModelRegistry registry = new BindingModelRegistry();
+		BindingRowModel model = registry.getModel(context);
+		assertTrue(model.isCurrent());
+
+		context.set(EBindingService.class,
+				SyntheticBindings.createBindingService(Collections.singletonList(bindings.get(1)),
+						Collections.<Binding> emptyList()));
+		assertFalse(model.isCurrent());
+		assertRows(registry.getModel(context), bindings.get(1));
+	}
+
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Parse search texts with BindingQuery and check the rows they match. The
+ * synthetic row i has the command bench.command.WORD.i named "WORD i", with
+ * WORD cycling over 10 words (refactor, rename, open...).
+ */
+public class BindingQueryTest {
+
+	private static BindingRowModel model;
+
+	@BeforeClass
+	public static void createModel() {
+		model = SyntheticBindings.createModel(30);
+	}
+
+	/** @return the indexes of the rows matching the text, checking that the index finds the same ones */
+	private static List<Integer> match(String text) {
+		BindingQuery query = BindingQuery.compile(text);
+		List<Integer> result = new ArrayList<>();
+		BitSet expected = new BitSet();
+		for (int i = 0; i < model.size(); i++) {
+			if (query.matches(model.getRow(i))) {
+				result.add(i);
+				expected.set(i);
+			}
+		}
+		assertEquals(text, expected, query.find(model));
+		assertEquals(text, !result.isEmpty(), query.anyMatch(model));
+		return result;
+	}
+
+	@Test
+	public void testEmptyText() {
+		assertNull(BindingQuery.compile(null));
+		assertNull(BindingQuery.compile(""));
+		assertNull(BindingQuery.compile("  \t "));
+	}
+
+	@Test
+	public void testWord() {
+		assertEquals(Arrays.asList(1, 11, 21), match("rename"));
+		assertEquals(Arrays.asList(1, 11, 21), match("RENAME"));
+		assertEquals(Arrays.asList(1, 11, 21), match("cmd:rename"));
+		assertTrue(match("bench.unknown").isEmpty());
+	}
+
+	@Test
+	public void testAllTermsMustMatch() {
+		// "21" contains "1"
+		assertEquals(Arrays.asList(1, 11, 21), match("rename 1"));
+		assertEquals(Arrays.asList(21), match("rename 21"));
+	}
+
+	@Test
+	public void testNegation() {
+		List<Integer> rename = match("rename");
+		List<Integer> notRename = match("-rename");
+		assertEquals(model.size() - rename.size(), notRename.size());
+		for (Integer i : rename) {
+			assertFalse(notRename.contains(i));
+		}
+		assertEquals(Arrays.asList(1, 21), match("rename -cmd:rename.11"));
+
+		List<Integer> enabled = match("state:enabled");
+		assertEquals(model.size(), enabled.size() + match("-state:enabled").size());
+	}
+
+	@Test
+	public void testLoneDashIsNotANegation() {
+		// A dash followed by a space or ending the text is searched as a text
+		List<Integer> dash = new ArrayList<>();
+		for (int i = 0; i < model.size(); i++) {
+			if (model.getRow(i).getSearchText().contains("-"))
+				dash.add(i);
+		}
+		assertEquals(dash, match("-"));
+		assertEquals(dash, match("- "));
+	}
+
+	@Test
+	public void testQuotes() {
+		// "rename 21" does not contain "rename 1"
+		assertEquals(Arrays.asList(1, 11), match("\"rename 1\""));
+		assertEquals(Arrays.asList(1, 11), match("cmd:\"rename 1\""));
+		assertEquals(Arrays.asList(21), match("-\"rename 1\" rename"));
+		// An unclosed quote is part of the text
+		assertTrue(match("\"rename").isEmpty());
+	}
+
+	@Test
+	public void testFieldWithEmptyValue() {
+		// A field being typed is ignored : all the rows match
+		assertEquals(model.size(), match("cmd:").size());
+		assertEquals(model.size(), match("-cmd:").size());
+		assertEquals(match("rename"), match("cmd: rename"));
+		assertEquals(match("rename"), match("rename key:"));
+		assertEquals("rename key:", BindingQuery.compile("rename key:").getSequenceText());
+	}
+
+	@Test
+	public void testUnknownField() {
+		// Not a column : the prefix is part of the searched text
+		assertTrue(match("foo:rename").isEmpty());
+		assertEquals(Arrays.asList(1, 11, 21), match("foo:rename|rename"));
+	}
+
+	@Test
+	public void testSequenceText() {
+		assertEquals("Ctrl+A", BindingQuery.compile("cmd:rename key:Ctrl+A key:b").getSequenceText());
+		// A negated sequence is not the one asked
+		assertEquals("-key:ctrl+a open", BindingQuery.compile("-key:Ctrl+A open").getSequenceText());
+	}
+
+	@Test
+	public void testKeywords() {
+		assertEquals(Arrays.asList(1, 2, 11, 12, 21, 22), match("rename|open"));
+		assertEquals(Arrays.asList(1, 11, 21), match("rename|"));
+		assertEquals(Arrays.asList(2, 12, 22), match("rename|open -rename"));
+	}
+
+	@Test
+	public void testRegex() {
+		assertEquals(Arrays.asList(1), match("cmd:/^bench\\.command\\.rename\\.1 /"));
+		assertEquals(Arrays.asList(11, 21), match("/rename \\d{2}/"));
+		// A slash inside the expression does not close it
+		assertTrue(match("/rename/1/").isEmpty());
+		// Not a valid expression : searched as a text
+		assertTrue(match("/[/").isEmpty());
+	}
+
+	@Test
+	public void testHighlights() {
+		BindingQuery query = BindingQuery.compile("cmd:rename -state:foo");
+		BindingRow row = model.getRow(1);
+		assertTrue(query.highlights(row, Column.COMMAND_DESCRIPTION));
+		assertFalse(query.highlights(row, Column.TRIGGER_SEQUENCE));
+		assertFalse(query.highlights(row, Column.STATE));
+		assertFalse(query.highlights("rename"));
+		assertTrue(BindingQuery.compile("rename").highlights("rename"));
+	}
+
+}
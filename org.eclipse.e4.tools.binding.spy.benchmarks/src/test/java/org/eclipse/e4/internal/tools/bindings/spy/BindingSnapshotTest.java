@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Write models with BindingSnapshotWriter and read them back with
+ * BindingSnapshot : the contexts, their parents and the texts of the rows must
+ * be the ones of the models.
+ */
+public class BindingSnapshotTest {
+
+	/** The columns stored in a snapshot, the key dispatch is not measured offline */
+	private static final Column[] STORED_COLUMNS = { Column.TRIGGER_SEQUENCE, Column.COMMAND_DESCRIPTION,
+			Column.STATE, Column.CATEGORY, Column.COMMAND_HANDLER, Column.BINDING_CONTEXT_ID, Column.TYPE };
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("bindings", ".bspy");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	private static BindingRowModel createModel(String name, int count, int conflictCount) {
+		List<Binding> bindings = SyntheticBindings.createBindings(count + conflictCount, "ctx." + name);
+		List<Binding> active = bindings.subList(0, count);
+		List<Binding> conflicts = bindings.subList(count, bindings.size());
+		IEclipseContext ctx = EclipseContextFactory.create(name);
+		ctx.set(EBindingService.class, SyntheticBindings.createBindingService(active, conflicts));
+		return BindingRowModel.build(ctx);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		// root1 > (child1 > grandChild, child2), root2
+		List<BindingRowModel> models = Arrays.asList(createModel("root1", 30, 4), createModel("child1", 10, 0),
+				createModel("grandChild", 0, 2), createModel("child2", 5, 1), createModel("root2", 0, 0));
+		List<Integer> depths = Arrays.asList(0, 1, 2, 1, 0);
+		BindingSnapshotWriter.write(models, depths, file);
+
+		BindingSnapshot snapshot = BindingSnapshot.open(file);
+		assertEquals(models.size(), snapshot.getContextCount());
+		assertEquals(30 + 4 + 10 + 2 + 5 + 1, snapshot.getRowCount());
+
+		List<String> parents = Arrays.asList(null, "root1", "child1", "root1", null);
+		for (int i = 0; i < models.size(); i++) {
+			BindingRowModel model = models.get(i);
+			BindingSnapshot.Context context = snapshot.getContext(i);
+			assertEquals(String.valueOf(model.getContext()), context.getName());
+			assertEquals(depths.get(i).intValue(), context.getDepth());
+			assertEquals(parents.get(i), (context.getParent() == null) ? null : context.getParent().getName());
+			assertEquals(model.getActiveRows().size(), context.getActiveCount());
+			assertEquals(model.getConflictRows().size(), context.getConflictCount());
+			for (int r = 0; r < model.size(); r++) {
+				assertRow(model, model.getRow(r), context.getRow(r));
+			}
+		}
+
+		List<BindingSnapshot.Context> roots = snapshot.getRootContexts();
+		assertEquals(Arrays.asList(snapshot.getContext(0), snapshot.getContext(4)), roots);
+		assertEquals(Arrays.asList(snapshot.getContext(1), snapshot.getContext(3)), roots.get(0).getChildren());
+		assertTrue(snapshot.getContext(1).hasChildren());
+		assertFalse(snapshot.getContext(2).hasChildren());
+		assertFalse(snapshot.getContext(4).hasChildren());
+	}
+
+	private static void assertRow(BindingRowModel model, BindingRow expected, BindingSnapshot.Row row) {
+		assertEquals(expected.getIndex(), row.getIndex());
+		assertEquals(expected.getIndex() >= model.getActiveRows().size(), row.isConflict());
+		for (Column column : STORED_COLUMNS) {
+			assertEquals(column.name(), expected.getText(column), row.getText(column));
+			assertEquals(column.name(), expected.isError(column), row.isError(column));
+		}
+		assertEquals(expected.getCommandId(), row.getCommandId());
+		assertEquals(expected.getBinding().getSchemeId(), row.getSchemeId());
+		// The synthetic bindings have no platform nor locale : null is not the "null" string
+		assertNull(row.getPlatform());
+		assertNull(row.getLocale());
+	}
+
+	@Test
+	public void testUndefinedCommandIsAnError() throws IOException {
+		// One synthetic command out of ten is not defined, the first one
+		BindingSnapshotWriter.write(Collections.singletonList(createModel("root", 3, 0)),
+				Collections.singletonList(0), file);
+		BindingSnapshot.Context context = BindingSnapshot.open(file).getContext(0);
+		assertTrue(context.getRow(0).isError(Column.COMMAND_DESCRIPTION));
+		assertFalse(context.getRow(1).isError(Column.COMMAND_DESCRIPTION));
+	}
+
+	@Test
+	public void testEmptySnapshot() throws IOException {
+		BindingSnapshotWriter.write(new ArrayList<BindingRowModel>(), new ArrayList<Integer>(), file);
+		BindingSnapshot snapshot = BindingSnapshot.open(file);
+		assertEquals(0, snapshot.getContextCount());
+		assertEquals(0, snapshot.getRowCount());
+		assertTrue(snapshot.getRootContexts().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChildWithoutParent() throws IOException {
+		try (BindingSnapshotWriter writer = new BindingSnapshotWriter(file)) {
+			writer.addContext(createModel("root", 1, 0), 0);
+			writer.addContext(createModel("grandChild", 1, 0), 2);
+		}
+	}
+
+	@Test
+	public void testFailedWriteDeletesTheFile() throws IOException {
+		try {
+			BindingSnapshotWriter.write(Arrays.asList(createModel("root", 1, 0), createModel("grandChild", 1, 0)),
+					Arrays.asList(0, 2), file);
+			fail("A context without parent was written");
+		} catch (IllegalArgumentException e) {
+			// The header was written by the close : no partial snapshot is left
+		}
+		assertFalse(file.exists());
+	}
+
+	private void writeValidSnapshot() throws IOException {
+		BindingSnapshotWriter.write(Arrays.asList(createModel("root", 10, 2), createModel("child", 3, 0)),
+				Arrays.asList(0, 1), file);
+	}
+
+	private void writeInt(long position, int value) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			raf.writeInt(value);
+		}
+	}
+
+	private void writeLong(long position, long value) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			raf.writeLong(value);
+		}
+	}
+
+	private long readLong(long position) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			return raf.readLong();
+		}
+	}
+
+	private void assertRejected() {
+		try {
+			BindingSnapshot.open(file);
+			fail("A corrupted snapshot has been opened");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testBadMagic() throws IOException {
+		writeValidSnapshot();
+		writeInt(0, 0x12345678);
+		assertRejected();
+	}
+
+	@Test
+	public void testBadVersion() throws IOException {
+		writeValidSnapshot();
+		writeInt(4, BindingSnapshot.VERSION + 1);
+		assertRejected();
+	}
+
+	@Test
+	public void testTruncatedHeader() throws IOException {
+		writeValidSnapshot();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(BindingSnapshot.HEADER_SIZE - 1);
+		}
+		assertRejected();
+	}
+
+	@Test
+	public void testTruncatedStrings() throws IOException {
+		writeValidSnapshot();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+		assertRejected();
+	}
+
+	@Test
+	public void testNegativeCount() throws IOException {
+		writeValidSnapshot();
+		writeInt(8, -1);
+		assertRejected();
+	}
+
+	@Test
+	public void testRowCountBeyondContextTable() throws IOException {
+		writeValidSnapshot();
+		writeInt(12, 10 + 2 + 3 + 1);
+		assertRejected();
+	}
+
+	@Test
+	public void testStringTableBeyondFile() throws IOException {
+		writeValidSnapshot();
+		writeLong(32, file.length());
+		assertRejected();
+	}
+
+	@Test
+	public void testDecreasingStringOffset() throws IOException {
+		writeValidSnapshot();
+		// The end of the second string before the end of the first one
+		writeInt(readLong(32) + 8, 0);
+		assertRejected();
+	}
+
+	@Test
+	public void testContextRowsBeyondRowCount() throws IOException {
+		writeValidSnapshot();
+		// The child context, of 3 rows, starts at the last row
+		long child = readLong(24) + BindingSnapshot.CONTEXT_SIZE;
+		writeInt(child + BindingSnapshot.CONTEXT_FIRST_ROW * 4, 10 + 2 + 3 - 1);
+		assertRejected();
+	}
+
+	@Test
+	public void testContextNameBeyondStrings() throws IOException {
+		writeValidSnapshot();
+		writeInt(readLong(24) + BindingSnapshot.CONTEXT_NAME * 4, Integer.MAX_VALUE);
+		assertRejected();
+	}
+
+	@Test
+	public void testCorruptedRow() throws IOException {
+		writeValidSnapshot();
+		// The command id of the second row out of the string table
+		writeInt(BindingSnapshot.HEADER_SIZE + BindingSnapshot.ROW_SIZE + BindingSnapshot.ROW_COMMAND_ID * 4,
+				Integer.MAX_VALUE);
+
+		BindingSnapshot snapshot = BindingSnapshot.open(file);
+		BindingSnapshot.Context root = snapshot.getContext(0);
+		assertFalse(root.getRow(0).isCorrupted());
+		assertFalse(root.getRow(0).isError(Column.TRIGGER_SEQUENCE));
+
+		BindingSnapshot.Row row = root.getRow(1);
+		assertTrue(row.isCorrupted());
+		for (Column column : STORED_COLUMNS) {
+			assertEquals(BindingSnapshot.CORRUPTED_TEXT, row.getText(column));
+			assertTrue(row.isError(column));
+		}
+		assertNull(row.getCommandId());
+	}
+
+}
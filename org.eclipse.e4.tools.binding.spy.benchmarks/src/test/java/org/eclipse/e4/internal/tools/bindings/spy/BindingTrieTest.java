@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.eclipse.jface.bindings.keys.KeyBinding;
+import org.eclipse.jface.bindings.keys.KeySequence;
+import org.eclipse.jface.bindings.keys.ParseException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Build a BindingTrie on two sibling contexts and check the bindings fired,
+ * the prefixes, and the conflicts and shadowed bindings found by
+ * BindingAnalysis.
+ */
+public class BindingTrieTest {
+
+	/** The commands of the bindings, c(i) is the command of the synthetic binding i */
+	private final List<Binding> commands = SyntheticBindings.createBindings(10, "org.eclipse.ui.contexts.window");
+
+	private BindingRowModel modelA;
+	private BindingRowModel modelB;
+	private BindingTrie trie;
+
+	private Binding bind(String sequence, int command) throws ParseException {
+		return new KeyBinding(KeySequence.getInstance(sequence), commands.get(command).getParameterizedCommand(),
+				SyntheticBindings.SCHEME_ID, "org.eclipse.ui.contexts.window", null, null, null, Binding.SYSTEM);
+	}
+
+	private static BindingRowModel createModel(String name, List<Binding> active, List<Binding> conflicts) {
+		IEclipseContext ctx = EclipseContextFactory.create(name);
+		ctx.set(EBindingService.class, SyntheticBindings.createBindingService(active, conflicts));
+		return BindingRowModel.build(ctx);
+	}
+
+	private static TriggerSequence sequence(String text) throws ParseException {
+		return KeySequence.getInstance(text);
+	}
+
+	private String command(BindingTrie.Entry entry) {
+		return (entry == null) ? null : entry.getRow().getCommandId();
+	}
+
+	private String command(int index) {
+		return commands.get(index).getParameterizedCommand().getId();
+	}
+
+	@Before
+	public void setUp() throws ParseException {
+		// A : two commands on CTRL+A, CTRL+X shadowed by CTRL+X CTRL+S, CTRL+C only as a conflict
+		modelA = createModel("A",
+				Arrays.asList(bind("CTRL+A", 1), bind("CTRL+A", 2), bind("CTRL+B", 3), bind("CTRL+X", 4),
+						bind("CTRL+X CTRL+S", 5)),
+				Arrays.asList(bind("CTRL+C", 6)));
+		// B, sibling of A : another command on CTRL+B
+		modelB = createModel("B", Arrays.asList(bind("CTRL+B", 7), bind("CTRL+C", 6)),
+				Collections.<Binding> emptyList());
+		trie = BindingTrie.build(Arrays.asList(modelA, modelB));
+	}
+
+	@Test
+	public void testBindings() throws ParseException {
+		assertEquals(8, trie.getBindingCount());
+		IEclipseContext a = modelA.getContext();
+		assertEquals(2, trie.getBindings(a, sequence("CTRL+A")).size());
+		assertEquals(2, trie.getBindings(sequence("CTRL+B")).size());
+		assertEquals(1, trie.getBindings(a, sequence("CTRL+B")).size());
+		assertTrue(trie.getBindings(a, sequence("CTRL+Z")).isEmpty());
+		// A prefix without binding of its own
+		assertTrue(trie.getBindings(sequence("CTRL+X CTRL+S CTRL+T")).isEmpty());
+
+		List<BindingTrie.Entry> conflicts = trie.getBindings(a, sequence("CTRL+C"));
+		assertEquals(1, conflicts.size());
+		assertFalse(conflicts.get(0).isActive());
+	}
+
+	@Test
+	public void testFired() throws ParseException {
+		IEclipseContext a = modelA.getContext();
+		IEclipseContext b = modelB.getContext();
+		assertEquals(command(3), command(trie.getFired(a, sequence("CTRL+B"))));
+		assertEquals(command(7), command(trie.getFired(b, sequence("CTRL+B"))));
+		assertEquals(command(5), command(trie.getFired(a, sequence("CTRL+X CTRL+S"))));
+
+		// Two active bindings, a prefix, a conflict only, nothing bound
+		assertNull(trie.getFired(a, sequence("CTRL+A")));
+		assertNull(trie.getFired(a, sequence("CTRL+X")));
+		assertNull(trie.getFired(a, sequence("CTRL+C")));
+		assertNull(trie.getFired(a, sequence("CTRL+Z")));
+	}
+
+	@Test
+	public void testPrefix() throws ParseException {
+		IEclipseContext a = modelA.getContext();
+		assertTrue(trie.isPrefix(a, sequence("CTRL+X")));
+		assertFalse(trie.isPrefix(modelB.getContext(), sequence("CTRL+X")));
+		assertFalse(trie.isPrefix(a, sequence("CTRL+X CTRL+S")));
+		assertEquals(command(5), command(trie.getLongerBinding(a, sequence("CTRL+X"))));
+		assertNull(trie.getLongerBinding(a, sequence("CTRL+B")));
+		assertNull(trie.getLongerBinding(modelB.getContext(), sequence("CTRL+X")));
+	}
+
+	@Test
+	public void testAnalyze() throws ParseException {
+		List<BindingIssue> issues = BindingAnalysis.analyze(trie, modelA,
+				Collections.singletonList(modelB.getContext()), null);
+		List<String> kinds = new ArrayList<>();
+		for (BindingIssue issue : issues) {
+			kinds.add(issue.getKind() + " " + issue.getRow().getCommandId());
+		}
+		// Each binding of CTRL+A conflicts with the other one, the sibling has
+		// the same command on CTRL+C, but CTRL+C is not active in A
+		assertEquals(Arrays.asList("CONFLICT " + command(1), "CONFLICT " + command(2),
+				"SIBLING_CONFLICT " + command(3), "SHADOWED " + command(4)), kinds);
+		assertEquals(command(5), command(issues.get(3).getOther()));
+		assertEquals(command(7), command(issues.get(2).getOther()));
+	}
+
+	@Test
+	public void testQuery() throws ParseException {
+		IEclipseContext a = modelA.getContext();
+		assertEquals(BindingIssue.Kind.FIRES, BindingAnalysis.query(trie, a, sequence("CTRL+B")).getKind());
+		assertEquals(BindingIssue.Kind.PREFIX, BindingAnalysis.query(trie, a, sequence("CTRL+X")).getKind());
+		assertEquals(BindingIssue.Kind.CONFLICT, BindingAnalysis.query(trie, a, sequence("CTRL+A")).getKind());
+		assertEquals(BindingIssue.Kind.UNBOUND, BindingAnalysis.query(trie, a, sequence("CTRL+Z")).getKind());
+
+		// The answer to the query comes first
+		List<BindingIssue> issues = BindingAnalysis.analyze(trie, modelA, Collections.<IEclipseContext> emptyList(),
+				sequence("CTRL+X"));
+		assertEquals(BindingIssue.Kind.PREFIX, issues.get(0).getKind());
+	}
+
+	@Test
+	public void testParseSequence() {
+		assertNotNull(BindingAnalysis.parseSequence(" ctrl+shift+r "));
+		assertEquals(2, BindingAnalysis.parseSequence("M1+X M1+S").getTriggers().length);
+		assertNull(BindingAnalysis.parseSequence(null));
+		assertNull(BindingAnalysis.parseSequence(" "));
+		assertNull(BindingAnalysis.parseSequence("ctrl+"));
+		assertNull(BindingAnalysis.parseSequence("not a key"));
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Change a tree of local contexts and check the children known by the
+ * ContextTreeRegistry and the deltas it notifies.
+ */
+public class ContextTreeRegistryTest {
+
+	private final ContextTreeRegistry registry = new ContextTreeRegistry();
+
+	/** The notified deltas : "+parent/child" or "-parent/child" */
+	private final List<String> deltas = new ArrayList<>();
+
+	private final ContextTreeRegistry.IContextTreeListener listener = new ContextTreeRegistry.IContextTreeListener() {
+		@Override
+		public void contextAdded(IEclipseContext parent, IEclipseContext context) {
+			deltas.add("+" + parent + "/" + context);
+		}
+
+		@Override
+		public void contextRemoved(IEclipseContext parent, IEclipseContext context) {
+			deltas.add("-" + parent + "/" + context);
+		}
+	};
+
+	private IEclipseContext root;
+
+	@Before
+	public void setUp() {
+		root = EclipseContextFactory.create("root");
+		registry.addContextTreeListener(listener);
+	}
+
+	@After
+	public void tearDown() {
+		registry.removeContextTreeListener(listener);
+		root.dispose();
+	}
+
+	@Test
+	public void testChildrenAreScannedOnce() {
+		IEclipseContext a = root.createChild("a");
+		IEclipseContext b = root.createChild("b");
+		assertEquals(new HashSet<>(Arrays.asList(a, b)), new HashSet<>(registry.getChildren(root)));
+		assertTrue(registry.hasChildren(root));
+		assertFalse(registry.hasChildren(a));
+		assertSame(root, registry.getParent(a));
+		assertNull(registry.getParent(root));
+
+		// Not seen until a rescan
+		IEclipseContext c = root.createChild("c");
+		assertEquals(2, registry.getChildren(root).size());
+		assertTrue(deltas.isEmpty());
+
+		registry.rescan();
+		assertEquals(Collections.singletonList("+root/c"), deltas);
+		assertEquals(3, registry.getChildren(root).size());
+		assertSame(root, registry.getParent(c));
+	}
+
+	@Test
+	public void testRescanOnlyVisitedContexts() {
+		IEclipseContext a = root.createChild("a");
+		registry.getChildren(root);
+		// The children are weakly referenced by their parent, keep them
+		IEclipseContext a1 = a.createChild("a1");
+
+		// The children of a have never been asked : no delta for them
+		registry.rescan();
+		assertTrue(deltas.isEmpty());
+
+		assertEquals(Collections.singletonList(a1), registry.getChildren(a));
+		IEclipseContext a2 = a.createChild("a2");
+		registry.rescan();
+		assertEquals(Collections.singletonList("+a/a2"), deltas);
+		assertSame(a, registry.getParent(a2));
+	}
+
+	@Test
+	public void testDisposedContextIsRemoved() {
+		IEclipseContext a = root.createChild("a");
+		IEclipseContext b = root.createChild("b");
+		registry.getChildren(root);
+
+		a.dispose();
+		assertEquals(Collections.singletonList("-root/a"), deltas);
+		assertEquals(Collections.singletonList(b), registry.getChildren(root));
+		assertNull(registry.getParent(a));
+
+		// Already removed : a rescan does not notify it again
+		registry.rescan();
+		assertEquals(1, deltas.size());
+	}
+
+	@Test
+	public void testNoDeltaWithoutChange() {
+		IEclipseContext a = root.createChild("a");
+		registry.getChildren(root);
+		registry.rescan();
+		registry.rescan();
+		assertTrue(deltas.isEmpty());
+		assertEquals(Collections.singletonList(a), registry.getChildren(root));
+	}
+
+}
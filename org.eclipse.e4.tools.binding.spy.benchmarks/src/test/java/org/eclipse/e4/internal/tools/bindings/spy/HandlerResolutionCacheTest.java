@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.e4.core.commands.internal.HandlerServiceImpl;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Resolve handlers set at several levels of a local context tree with the
+ * HandlerResolutionCache, and change them after they are cached.
+ */
+@SuppressWarnings("restriction")
+public class HandlerResolutionCacheTest {
+
+	private static final String COMMAND = "test.command";
+	private static final String OTHER_COMMAND = "test.other";
+
+	/* root > window > part, the part context is the one resolved */
+	private IEclipseContext root;
+	private IEclipseContext window;
+	private IEclipseContext part;
+
+	private final Object rootHandler = new Object();
+	private final Object windowHandler = new Object();
+
+	@Before
+	public void setUp() {
+		root = EclipseContextFactory.create("root");
+		window = root.createChild("window");
+		part = window.createChild("part");
+		root.set(HandlerServiceImpl.H_ID + COMMAND, rootHandler);
+	}
+
+	@Test
+	public void testHops() {
+		HandlerResolutionCache cache = HandlerResolutionCache.get(part);
+		assertSame(cache, HandlerResolutionCache.get(part));
+
+		HandlerResolutionCache.Resolution resolution = cache.resolve(COMMAND);
+		assertSame(rootHandler, resolution.getHandler());
+		assertEquals(2, resolution.getHops());
+		assertEquals(1, cache.size());
+
+		HandlerResolutionCache.Resolution none = cache.resolve(OTHER_COMMAND);
+		assertNull(none.getHandler());
+		assertEquals(-1, none.getHops());
+
+		// The handler of the root context is found without hop
+		assertEquals(0, HandlerResolutionCache.get(root).resolve(COMMAND).getHops());
+	}
+
+	@Test
+	public void testResolvedOnce() {
+		HandlerResolutionCache cache = HandlerResolutionCache.get(part);
+		cache.resolve(Arrays.asList(COMMAND, OTHER_COMMAND));
+		assertEquals(2, cache.size());
+		HandlerResolutionCache.Resolution resolution = cache.resolve(COMMAND);
+		assertSame(resolution, cache.resolve(COMMAND));
+		assertEquals(1, cache.getSlowest(1).size());
+		assertEquals(2, cache.getSlowest(5).size());
+	}
+
+	@Test
+	public void testChangedHandlerInvalidatesTheResolution() {
+		HandlerResolutionCache cache = HandlerResolutionCache.get(part);
+		cache.resolve(Arrays.asList(COMMAND, OTHER_COMMAND));
+		HandlerResolutionCache.Resolution other = cache.resolve(OTHER_COMMAND);
+
+		// A handler set closer to the part hides the root one
+		window.set(HandlerServiceImpl.H_ID + COMMAND, windowHandler);
+		assertSame(windowHandler, cache.getHandler(COMMAND));
+		assertEquals(1, cache.resolve(COMMAND).getHops());
+		// The other command has not changed : its resolution is kept
+		assertSame(other, cache.resolve(OTHER_COMMAND));
+
+		window.remove(HandlerServiceImpl.H_ID + COMMAND);
+		assertSame(rootHandler, cache.getHandler(COMMAND));
+		assertEquals(2, cache.resolve(COMMAND).getHops());
+
+		part.set(HandlerServiceImpl.H_ID + OTHER_COMMAND, windowHandler);
+		assertEquals(0, cache.resolve(OTHER_COMMAND).getHops());
+	}
+
+	@Test
+	public void testHandlerChangeListener() {
+		final List<String> changes = new ArrayList<>();
+		HandlerResolutionCache.IHandlerChangeListener listener = new HandlerResolutionCache.IHandlerChangeListener() {
+			@Override
+			public void handlerChanged(IEclipseContext context, String commandId) {
+				changes.add(context + " " + commandId);
+			}
+		};
+		HandlerResolutionCache.addHandlerChangeListener(listener);
+		try {
+			HandlerResolutionCache.get(part).resolve(Arrays.asList(COMMAND, OTHER_COMMAND));
+			// The first resolution is not a change
+			assertTrue(changes.isEmpty());
+
+			window.set(HandlerServiceImpl.H_ID + COMMAND, windowHandler);
+			assertEquals(Collections.singletonList("part " + COMMAND), changes);
+			// The same handler again : no change
+			window.set(HandlerServiceImpl.H_ID + COMMAND, windowHandler);
+			assertEquals(1, changes.size());
+		} finally {
+			HandlerResolutionCache.removeHandlerChangeListener(listener);
+		}
+		window.remove(HandlerServiceImpl.H_ID + COMMAND);
+		assertEquals(1, changes.size());
+	}
+
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.commands.EHandlerService;
+import org.eclipse.e4.core.commands.internal.HandlerServiceImpl;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drive dispatches of stub handlers in a local context through the
+ * KeyDispatchProfiler, and check the phases recorded for their commands.
+ */
+@SuppressWarnings("restriction")
+public class KeyDispatchProfilerTest {
+
+	private static final String SLOW_COMMAND = "test.slow";
+	private static final String FAST_COMMAND = "test.fast";
+
+	/** The duration of the slow handler, and of the lookup before it */
+	private static final long SLEEP_MILLIS = 20;
+
+	/** A handler sleeping while it executes */
+	public static final class StubHandler {
+		private final long millis;
+		int count;
+
+		StubHandler(long millis) {
+			this.millis = millis;
+		}
+
+		@Execute
+		public void execute() throws InterruptedException {
+			count++;
+			Thread.sleep(millis);
+		}
+	}
+
+	private IEclipseContext context;
+	private EHandlerService handlerService;
+	private CommandManager manager;
+	private KeyDispatchProfiler profiler;
+	private final StubHandler slowHandler = new StubHandler(SLEEP_MILLIS);
+	private final StubHandler fastHandler = new StubHandler(0);
+
+	@Before
+	public void setUp() {
+		context = EclipseContextFactory.create("dispatch");
+		manager = new CommandManager();
+		context.set(CommandManager.class, manager);
+		handlerService = ContextInjectionFactory.make(HandlerServiceImpl.class, context);
+		context.set(EHandlerService.class, handlerService);
+		define(SLOW_COMMAND, slowHandler);
+		define(FAST_COMMAND, fastHandler);
+
+		// Not made by the injector : it would keep one singleton for all the tests
+		profiler = new KeyDispatchProfiler();
+		ContextInjectionFactory.inject(profiler, context);
+		// No display : only the executions are listened to, the dispatch is driven
+		assertFalse(profiler.start(null));
+		assertTrue(profiler.isRunning());
+	}
+
+	@After
+	public void tearDown() {
+		profiler.stop();
+		context.dispose();
+	}
+
+	private void define(String commandId, StubHandler handler) {
+		Category category = manager.getCategory("test.category");
+		category.define("Test", null);
+		Command command = manager.getCommand(commandId);
+		command.define(commandId, null, category);
+		command.setHandler(HandlerServiceImpl.getHandler(commandId));
+		handlerService.activateHandler(commandId, handler);
+	}
+
+	private Object execute(String commandId) {
+		return handlerService.executeHandler(new ParameterizedCommand(manager.getCommand(commandId), null));
+	}
+
+	private static long millis(KeyDispatchTimings timings, KeyDispatchTimings.Phase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(timings.getHistogram(phase).getMax());
+	}
+
+	@Test
+	public void testPhases() throws InterruptedException {
+		profiler.dispatchStarted();
+		// The dispatcher looks the binding and the handler up before the execution
+		Thread.sleep(SLEEP_MILLIS);
+		execute(SLOW_COMMAND);
+		profiler.dispatchFinished();
+
+		assertEquals(1, slowHandler.count);
+		KeyDispatchTimings timings = profiler.getTimings(SLOW_COMMAND);
+		assertEquals(1, timings.getCount());
+		long lookup = millis(timings, KeyDispatchTimings.Phase.LOOKUP);
+		long execute = millis(timings, KeyDispatchTimings.Phase.EXECUTE);
+		long total = millis(timings, KeyDispatchTimings.Phase.TOTAL);
+		assertTrue("lookup " + lookup, lookup >= SLEEP_MILLIS - 1);
+		assertTrue("execute " + execute, execute >= SLEEP_MILLIS - 1);
+		assertTrue("total " + total, total >= lookup + execute - 1);
+		assertNull(profiler.getTimings(FAST_COMMAND));
+	}
+
+	@Test
+	public void testFastDispatch() {
+		for (int i = 0; i < 10; i++) {
+			profiler.dispatchStarted();
+			execute(FAST_COMMAND);
+			profiler.dispatchFinished();
+		}
+		KeyDispatchTimings timings = profiler.getTimings(FAST_COMMAND);
+		assertEquals(10, timings.getCount());
+		assertEquals(10, timings.getHistogram(KeyDispatchTimings.Phase.LOOKUP).getCount());
+		assertEquals(10, timings.getHistogram(KeyDispatchTimings.Phase.TOTAL).getCount());
+		assertTrue(timings.getHistogram(KeyDispatchTimings.Phase.TOTAL).getMax() >= timings
+				.getHistogram(KeyDispatchTimings.Phase.EXECUTE).getMax());
+	}
+
+	@Test
+	public void testNotRecorded() {
+		// An execution without key event
+		execute(FAST_COMMAND);
+		// A key event without execution (no binding, or the first key of a sequence)
+		profiler.dispatchStarted();
+		profiler.dispatchFinished();
+		assertNull(profiler.getTimings(FAST_COMMAND));
+
+		// Stopped : the executions are not listened to any more
+		profiler.stop();
+		profiler.dispatchStarted();
+		execute(FAST_COMMAND);
+		profiler.dispatchFinished();
+		assertNull(profiler.getTimings(FAST_COMMAND));
+	}
+
+	@Test
+	public void testNestedDispatch() {
+		// A handler running an event loop : only the outer dispatch and its command are recorded
+		profiler.dispatchStarted();
+		profiler.executionStarted(SLOW_COMMAND);
+		profiler.dispatchStarted();
+		execute(FAST_COMMAND);
+		profiler.dispatchFinished();
+		profiler.executionFinished(SLOW_COMMAND);
+		profiler.dispatchFinished();
+
+		assertEquals(1, profiler.getTimings(SLOW_COMMAND).getCount());
+		assertNull(profiler.getTimings(FAST_COMMAND));
+
+		profiler.reset();
+		assertNull(profiler.getTimings(SLOW_COMMAND));
+	}
+
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.eclipse.jface.bindings.keys.KeySequence;
+import org.eclipse.jface.bindings.keys.ParseException;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Keeps the BindingTrie of all the contexts of the tree and analyzes the
+ * bindings of a context with it : conflicts, conflicts with sibling contexts,
+ * bindings shadowed by a longer sequence, what fires for a sequence, and the
+ * commands whose handler lookup is the most expensive.
+ *
+ * The trie is built in a background job on first use, and built again after
+ * each change of the models. Until then the previous trie is used.
+ */
+@Creatable
+@Singleton
+public class BindingAnalysis {
+
+	/** Delay between a change of the models and the new trie, to build it once for a burst */
+	private static final long REBUILD_DELAY = 300;
+
+	/** The number of models built in one runnable of the UI thread */
+	private static final int MODELS_PER_RUNNABLE = 4;
+
+	/** Number of slowest handler lookups listed for a context */
+	private static final int SLOW_HANDLER_COUNT = 10;
+
+	/** Called in the UI thread when a new trie is available */
+	public interface IAnalysisListener {
+		void analysisChanged();
+	}
+
+	@Inject
+	private ContextTreeRegistry contextRegistry;
+
+	@Inject
+	private BindingModelRegistry modelRegistry;
+
+	private Display display;
+
+	private volatile BindingTrie trie;
+
+	/** Incremented on each change of the models, guarded by this */
+	private int generation;
+
+	private final CopyOnWriteArrayList<IAnalysisListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final Job buildJob = new Job("Binding spy analysis") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			return buildTrie(monitor);
+		}
+	};
+
+	private final BindingModelRegistry.IModelListener modelListener = new BindingModelRegistry.IModelListener() {
+		@Override
+		public void modelInvalidated(IEclipseContext context) {
+			modelsChanged();
+		}
+	};
+
+	private final ContextTreeRegistry.IContextTreeListener treeListener = new ContextTreeRegistry.IContextTreeListener() {
+		@Override
+		public void contextAdded(IEclipseContext parent, IEclipseContext context) {
+			modelsChanged();
+		}
+
+		@Override
+		public void contextRemoved(IEclipseContext parent, IEclipseContext context) {
+			modelsChanged();
+		}
+	};
+
+	@PostConstruct
+	void start() {
+		display = Display.getCurrent();
+		buildJob.setSystem(true);
+		modelRegistry.addModelListener(modelListener);
+		contextRegistry.addContextTreeListener(treeListener);
+	}
+
+	@PreDestroy
+	void stop() {
+		buildJob.cancel();
+		modelRegistry.removeModelListener(modelListener);
+		contextRegistry.removeContextTreeListener(treeListener);
+	}
+
+	public void addAnalysisListener(IAnalysisListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeAnalysisListener(IAnalysisListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the trie of all the contexts, possibly older than the last
+	 *         change, or null if it is not built yet : the listeners are
+	 *         notified when it is
+	 */
+	public BindingTrie getTrie() {
+		BindingTrie current = trie;
+		if (current == null)
+			buildJob.schedule();
+		return current;
+	}
+
+	/** Build the trie again, only if it has already been asked */
+	private void modelsChanged() {
+		synchronized (this) {
+			generation++;
+		}
+		if (trie != null)
+			buildJob.schedule(REBUILD_DELAY);
+	}
+
+	private IStatus buildTrie(IProgressMonitor monitor) {
+		final int built;
+		synchronized (this) {
+			built = generation;
+		}
+		if ((display == null) || display.isDisposed())
+			return Status.CANCEL_STATUS;
+
+		// The contexts and the models already built are captured in the UI
+		// thread, the missing models are built there a few at a time
+		final List<IEclipseContext> contexts = new ArrayList<>();
+		final List<BindingRowModel> models = new ArrayList<>();
+		final List<Integer> missing = new ArrayList<>();
+		display.syncExec(new Runnable() {
+			@Override
+			public void run() {
+				for (IEclipseContext ctx : contextRegistry.getAllContexts()) {
+					BindingRowModel model = modelRegistry.getCurrentModel(ctx);
+					if (model == null)
+						missing.add(models.size());
+					contexts.add(ctx);
+					models.add(model);
+				}
+			}
+		});
+		for (int i = 0; i < missing.size(); i += MODELS_PER_RUNNABLE) {
+			if (monitor.isCanceled() || display.isDisposed())
+				return Status.CANCEL_STATUS;
+			final List<Integer> indexes = missing.subList(i, Math.min(i + MODELS_PER_RUNNABLE, missing.size()));
+			display.syncExec(new Runnable() {
+				@Override
+				public void run() {
+					for (int index : indexes) {
+						models.set(index, modelRegistry.getModel(contexts.get(index)));
+					}
+				}
+			});
+		}
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+
+		BindingTrie newTrie = BindingTrie.build(models);
+		synchronized (this) {
+			// A newer change has rescheduled this job, the next run will publish
+			if ((built != generation) && (trie != null))
+				return Status.CANCEL_STATUS;
+			trie = newTrie;
+		}
+		if (!display.isDisposed()) {
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					for (IAnalysisListener listener : listeners) {
+						listener.analysisChanged();
+					}
+				}
+			});
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Analyze the active bindings of a model
+	 *
+	 * @param query
+	 *            the sequence whose fired binding is asked, or null
+	 * @return the issues found, the answer to the query first, or null if the
+	 *         trie is not built yet
+	 */
+	public List<BindingIssue> analyze(BindingRowModel model, TriggerSequence query) {
+		BindingTrie current = getTrie();
+		if (current == null)
+			return null;
+		List<BindingIssue> issues = analyze(current, model, getSiblings(model.getContext()), query);
+		issues.addAll(getSlowHandlers(model));
+		return issues;
+	}
+
+	/**
+	 * @return the commands of the model whose handler lookup has been the
+	 *         slowest in its context, the slowest first. A handler set in the
+	 *         context itself is never listed.
+	 */
+	static List<BindingIssue> getSlowHandlers(BindingRowModel model) {
+		Map<String, BindingRow> rows = new HashMap<>();
+		for (BindingRow row : model.getConflictRows()) {
+			rows.put(row.getCommandId(), row);
+		}
+		for (BindingRow row : model.getActiveRows()) {
+			rows.put(row.getCommandId(), row);
+		}
+
+		List<BindingIssue> issues = new ArrayList<>();
+		HandlerResolutionCache cache = HandlerResolutionCache.get(model.getContext());
+		for (HandlerResolutionCache.Resolution resolution : cache.getSlowest(cache.size())) {
+			BindingRow row = rows.get(resolution.getCommandId());
+			if ((row == null) || (resolution.getHops() == 0))
+				continue;
+			String where = (resolution.getHops() < 0) ? "no handler in the " + model.getContext() + " hierarchy"
+					: "handler found " + resolution.getHops() + " parent contexts up";
+			issues.add(new BindingIssue(BindingIssue.Kind.SLOW_HANDLER, row.getBinding().getTriggerSequence(), row,
+					null, row.getCommandId() + " : " + where + ", in "
+							+ KeyDispatchTimings.format(resolution.getNanos())));
+			if (issues.size() == SLOW_HANDLER_COUNT)
+				break;
+		}
+		return issues;
+	}
+
+	private List<IEclipseContext> getSiblings(IEclipseContext context) {
+		IEclipseContext parent = contextRegistry.getParent(context);
+		List<IEclipseContext> siblings = (parent == null) ? contextRegistry.getRootContexts()
+				: contextRegistry.getChildren(parent);
+		siblings.remove(context);
+		return siblings;
+	}
+
+	/**
+	 * Analyze the active bindings of a model with a trie : each binding costs
+	 * one walk in the trie per context (itself and its siblings)
+	 */
+	static List<BindingIssue> analyze(BindingTrie trie, BindingRowModel model, List<IEclipseContext> siblings,
+			TriggerSequence query) {
+		IEclipseContext ctx = model.getContext();
+		List<BindingIssue> issues = new ArrayList<>();
+		for (BindingRow row : model.getActiveRows()) {
+			Binding binding = row.getBinding();
+			TriggerSequence sequence = binding.getTriggerSequence();
+
+			BindingTrie.Entry conflict = null;
+			int conflictCount = 0;
+			for (BindingTrie.Entry entry : trie.getBindings(ctx, sequence)) {
+				if (entry.isActive() && !isSameCommand(binding, entry.getRow().getBinding())) {
+					if (conflict == null)
+						conflict = entry;
+					conflictCount++;
+				}
+			}
+			if (conflict != null) {
+				issues.add(new BindingIssue(BindingIssue.Kind.CONFLICT, sequence, row, conflict,
+						row.getCommandId() + " conflicts with " + describe(conflict.getRow())
+								+ ((conflictCount > 1) ? " and " + (conflictCount - 1) + " other bindings" : "")));
+			}
+
+			BindingTrie.Entry longer = trie.getLongerBinding(ctx, sequence);
+			if (longer != null) {
+				issues.add(new BindingIssue(BindingIssue.Kind.SHADOWED, sequence, row, longer,
+						row.getCommandId() + " never fires, " + describeLonger(longer) + " starts with it"));
+			}
+
+			// One issue per binding, naming the first sibling in conflict
+			BindingTrie.Entry siblingEntry = null;
+			int siblingCount = 0;
+			for (IEclipseContext sibling : siblings) {
+				for (BindingTrie.Entry entry : trie.getBindings(sibling, sequence)) {
+					if (entry.isActive() && !isSameCommand(binding, entry.getRow().getBinding())) {
+						if (siblingEntry == null)
+							siblingEntry = entry;
+						siblingCount++;
+						break;
+					}
+				}
+			}
+			if (siblingEntry != null) {
+				issues.add(new BindingIssue(BindingIssue.Kind.SIBLING_CONFLICT, sequence, row, siblingEntry,
+						row.getCommandId() + " here, " + describe(siblingEntry.getRow()) + " in sibling "
+								+ siblingEntry.getContext()
+								+ ((siblingCount > 1) ? " and " + (siblingCount - 1) + " other siblings" : "")));
+			}
+		}
+
+		Collections.sort(issues, new Comparator<BindingIssue>() {
+			@Override
+			public int compare(BindingIssue i1, BindingIssue i2) {
+				int rc = i1.getKind().compareTo(i2.getKind());
+				return (rc != 0) ? rc : i1.getSequenceText().compareTo(i2.getSequenceText());
+			}
+		});
+		if (query != null)
+			issues.add(0, query(trie, ctx, query));
+		return issues;
+	}
+
+	/** @return what the key binding dispatcher of this context does for this sequence */
+	static BindingIssue query(BindingTrie trie, IEclipseContext context, TriggerSequence sequence) {
+		BindingTrie.Entry fired = trie.getFired(context, sequence);
+		if (fired != null)
+			return new BindingIssue(BindingIssue.Kind.FIRES, sequence, fired.getRow(), null,
+					describe(fired.getRow()));
+
+		BindingTrie.Entry longer = trie.getLongerBinding(context, sequence);
+		if (longer != null)
+			return new BindingIssue(BindingIssue.Kind.PREFIX, sequence, null, longer,
+					"waits for the next key, as for " + describeLonger(longer));
+
+		List<BindingTrie.Entry> entries = trie.getBindings(context, sequence);
+		if (!entries.isEmpty())
+			return new BindingIssue(BindingIssue.Kind.CONFLICT, sequence, entries.get(0).getRow(), null,
+					"nothing fires, " + entries.size() + " bindings are in conflict");
+		return new BindingIssue(BindingIssue.Kind.UNBOUND, sequence, null, null,
+				"nothing is bound to this sequence in this context");
+	}
+
+	/** @return true if both bindings execute the same command, the contexts often share the same bindings */
+	private static boolean isSameCommand(Binding b1, Binding b2) {
+		return (b1 == b2) || b1.getParameterizedCommand().equals(b2.getParameterizedCommand());
+	}
+
+	private static String describe(BindingRow row) {
+		return (row.getCommandName() == null) ? row.getCommandId()
+				: row.getCommandId() + " (" + row.getCommandName() + ")";
+	}
+
+	private static String describeLonger(BindingTrie.Entry longer) {
+		return longer.getRow().getText(BindingDataProvider.Column.TRIGGER_SEQUENCE) + " ("
+				+ longer.getRow().getCommandId() + ")";
+	}
+
+	/** @return the key sequence written in this text (case is ignored), or null if it is not one */
+	public static TriggerSequence parseSequence(String text) {
+		if ((text == null) || (text.trim().length() == 0))
+			return null;
+		try {
+			KeySequence sequence = KeySequence.getInstance(text.trim().toUpperCase(Locale.ENGLISH));
+			return (sequence.isEmpty() || !sequence.isComplete()) ? null : sequence;
+		} catch (ParseException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandEvent;
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.CommandManagerEvent;
+import org.eclipse.core.commands.ICommandListener;
+import org.eclipse.core.commands.ICommandManagerListener;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.ui.di.UIEventTopic;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.eclipse.jface.bindings.BindingManager;
+import org.eclipse.jface.bindings.BindingManagerEvent;
+import org.eclipse.jface.bindings.IBindingManagerListener;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Listens to the changes of the bindings, of the commands of the displayed
+ * context and of the handlers, and updates the models. The changes are
+ * coalesced : a burst of events (a plugin contributing hundreds of bindings)
+ * is applied once, after a short delay, and only the rows of the changed
+ * bindings and commands are created again.
+ *
+ * A changed command or handler updates only the models binding this command.
+ * A binding change may concern any context : only the displayed models are
+ * updated at once, the other ones are marked stale in the BindingModelRegistry
+ * and are updated when they are used again.
+ *
+ * It is created with ContextInjectionFactory in the UI thread, and must be
+ * disposed with its part.
+ */
+public class BindingChangeTracker {
+
+	/** Delay between the first event of a burst and the update of the models */
+	private static final int COALESCE_DELAY = 100;
+
+	/** Called in the UI thread with the models updated by a burst of changes */
+	public interface IBindingChangeListener {
+		/**
+		 * @param deltas
+		 *            the non empty delta of each updated model
+		 */
+		void bindingsChanged(Map<IEclipseContext, BindingModelDelta> deltas);
+	}
+
+	@Inject
+	private BindingModelRegistry modelRegistry;
+
+	@Inject
+	@Optional
+	private CommandManager commandManager;
+
+	@Inject
+	@Optional
+	private BindingManager bindingManager;
+
+	private Display display;
+
+	private IBindingChangeListener listener;
+
+	private volatile boolean disposed;
+
+	/** The pending changes, guarded by this */
+	private boolean changed;
+	private boolean bindingsChanged;
+	private boolean scheduled;
+	private Set<String> changedCommandIds = new HashSet<>();
+	private Map<IEclipseContext, BindingModelDelta> staleDeltas = new LinkedHashMap<>();
+
+	/** The commands of the displayed rows we listen to, used in the UI thread */
+	private Set<Command> listenedCommands = new HashSet<>();
+
+	/** The contexts of the displayed models, updated at once, used in the UI thread */
+	private List<IEclipseContext> trackedContexts = Collections.emptyList();
+
+	private final ICommandManagerListener commandManagerListener = new ICommandManagerListener() {
+		@Override
+		public void commandManagerChanged(CommandManagerEvent event) {
+			if (event.isCommandChanged())
+				commandChanged(event.getCommandId());
+			else if (event.isCategoryChanged())
+				commandChanged(null);
+		}
+	};
+
+	private final ICommandListener commandListener = new ICommandListener() {
+		@Override
+		public void commandChanged(CommandEvent event) {
+			BindingChangeTracker.this.commandChanged(event.getCommand().getId());
+		}
+	};
+
+	private final IBindingManagerListener bindingManagerListener = new IBindingManagerListener() {
+		@Override
+		public void bindingManagerChanged(BindingManagerEvent event) {
+			if (event.isActiveBindingsChanged())
+				bindingsChanged();
+		}
+	};
+
+	/* The handlers are tracked by the cache of each context : no other RunAndTrack */
+	private final HandlerResolutionCache.IHandlerChangeListener handlerListener = new HandlerResolutionCache.IHandlerChangeListener() {
+		@Override
+		public void handlerChanged(IEclipseContext context, String commandId) {
+			commandChanged(commandId);
+		}
+	};
+
+	private final BindingModelRegistry.IModelUpdateListener staleModelListener = new BindingModelRegistry.IModelUpdateListener() {
+		@Override
+		public void modelUpdated(IEclipseContext context, BindingModelDelta delta) {
+			synchronized (BindingChangeTracker.this) {
+				staleDeltas.put(context, delta);
+			}
+			schedule();
+		}
+	};
+
+	private final Runnable flushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	@PostConstruct
+	void start() {
+		display = Display.getCurrent();
+		if (commandManager != null)
+			commandManager.addCommandManagerListener(commandManagerListener);
+		if (bindingManager != null)
+			bindingManager.addBindingManagerListener(bindingManagerListener);
+		HandlerResolutionCache.addHandlerChangeListener(handlerListener);
+		modelRegistry.addModelUpdateListener(staleModelListener);
+	}
+
+	public void setChangeListener(IBindingChangeListener listener) {
+		this.listener = listener;
+	}
+
+	/** Stop listening, no more change will be notified */
+	public void dispose() {
+		disposed = true;
+		if (commandManager != null)
+			commandManager.removeCommandManagerListener(commandManagerListener);
+		if (bindingManager != null)
+			bindingManager.removeBindingManagerListener(bindingManagerListener);
+		HandlerResolutionCache.removeHandlerChangeListener(handlerListener);
+		modelRegistry.removeModelUpdateListener(staleModelListener);
+		for (Command command : listenedCommands) {
+			command.removeCommandListener(commandListener);
+		}
+		listenedCommands.clear();
+		trackedContexts = Collections.emptyList();
+	}
+
+	/* The binding tables of the application model */
+
+	@Inject
+	@Optional
+	void bindingTableChanged(@UIEventTopic(UIEvents.BindingTable.TOPIC_BINDINGS) Object data) {
+		bindingsChanged();
+	}
+
+	@Inject
+	@Optional
+	void bindingTablesChanged(@UIEventTopic(UIEvents.BindingTableContainer.TOPIC_BINDINGTABLES) Object data) {
+		bindingsChanged();
+	}
+
+	@Inject
+	@Optional
+	void keyBindingChanged(@UIEventTopic(UIEvents.KeyBinding.TOPIC_ALL) Object data) {
+		bindingsChanged();
+	}
+
+	@Inject
+	@Optional
+	void keySequenceChanged(@UIEventTopic(UIEvents.KeySequence.TOPIC_KEYSEQUENCE) Object data) {
+		bindingsChanged();
+	}
+
+	/**
+	 * Track the displayed models : a change of one of their commands updates
+	 * the rows of this command, and they are updated at once on a binding
+	 * change. The previously tracked models are forgotten, and the listeners
+	 * of the commands they do not share with these ones are removed.
+	 *
+	 * @param model
+	 *            the displayed model, or null
+	 * @param comparedContext
+	 *            the context compared with it, or null
+	 */
+	public void track(BindingRowModel model, IEclipseContext comparedContext) {
+		if (disposed)
+			return;
+
+		List<IEclipseContext> contexts = new ArrayList<>(2);
+		Set<Command> commands = new HashSet<>();
+		if (model != null) {
+			contexts.add(model.getContext());
+			for (int i = 0; i < model.size(); i++) {
+				commands.add(model.getRow(i).getBinding().getParameterizedCommand().getCommand());
+			}
+		}
+		if (comparedContext != null)
+			contexts.add(comparedContext);
+		trackedContexts = contexts;
+
+		for (Command command : listenedCommands) {
+			if (!commands.contains(command))
+				command.removeCommandListener(commandListener);
+		}
+		for (Command command : commands) {
+			if (!listenedCommands.contains(command))
+				command.addCommandListener(commandListener);
+		}
+		listenedCommands = commands;
+	}
+
+	/** The bindings have changed : all the models must be compared with their bindings */
+	private void bindingsChanged() {
+		synchronized (this) {
+			changed = true;
+			bindingsChanged = true;
+		}
+		schedule();
+	}
+
+	/**
+	 * A command or its handler has changed : its rows must be resolved again
+	 *
+	 * @param commandId
+	 *            the changed command, or null if all the commands may have
+	 *            changed
+	 */
+	private void commandChanged(String commandId) {
+		synchronized (this) {
+			changed = true;
+			if (commandId == null)
+				changedCommandIds = null;
+			else if (changedCommandIds != null)
+				changedCommandIds.add(commandId);
+		}
+		schedule();
+	}
+
+	/** Schedule the update of the models, once for a burst of events */
+	private void schedule() {
+		synchronized (this) {
+			if (scheduled || disposed)
+				return;
+			scheduled = true;
+		}
+		// Events may come from any thread, timerExec must be called in the UI
+		if (!display.isDisposed()) {
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (!display.isDisposed())
+						display.timerExec(COALESCE_DELAY, flushRunnable);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Update the models concerned by the pending changes, and notify the
+	 * updates of the stale models used meanwhile
+	 */
+	private void flush() {
+		boolean updateModels;
+		boolean allModels;
+		Set<String> commandIds;
+		Map<IEclipseContext, BindingModelDelta> deltas;
+		synchronized (this) {
+			scheduled = false;
+			if (disposed)
+				return;
+			updateModels = changed;
+			allModels = bindingsChanged || (changedCommandIds == null);
+			commandIds = changedCommandIds;
+			deltas = staleDeltas;
+			changed = false;
+			bindingsChanged = false;
+			changedCommandIds = new HashSet<>();
+			staleDeltas = new LinkedHashMap<>();
+		}
+
+		if (updateModels) {
+			List<IEclipseContext> contexts;
+			if (allModels) {
+				contexts = trackedContexts;
+				modelRegistry.markStale(commandIds, contexts);
+			} else
+				contexts = modelRegistry.getCachedContexts(commandIds);
+			for (IEclipseContext ctx : contexts) {
+				BindingModelDelta delta = modelRegistry.update(ctx, commandIds);
+				if ((delta != null) && !delta.isEmpty())
+					deltas.put(ctx, delta);
+			}
+		}
+		if (!deltas.isEmpty() && (listener != null))
+			listener.bindingsChanged(deltas);
+	}
+
+}
@@ -10,28 +10,108 @@
  *******************************************************************************/
 package org.eclipse.e4.internal.tools.bindings.spy;
 
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.e4.core.services.log.Logger;
-import org.eclipse.e4.ui.bindings.EBindingService;
-import org.eclipse.jface.bindings.Binding;
-import org.eclipse.jface.viewers.DelegatingStyledCellLabelProvider;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 
 @Creatable
 @Singleton
-public class BindingDataFilter extends ViewerFilter {
+public class BindingDataFilter extends ViewerFilter implements BindingModelRegistry.IModelListener {
 
 	@Inject
 	Logger log;
 
+	private BindingModelRegistry modelRegistry;
+
 	private String pattern;
 
+	/** The pattern compiled, null when the pattern is empty */
+	private BindingQuery query;
+
+	/**
+	 * The contexts already checked against the current pattern, so that the
+	 * context tree can ask it on each paint. Cleared when the pattern changes,
+	 * updated when the model of a context is invalidated.
+	 */
+	private final Map<IEclipseContext, Boolean> contextMatches = new WeakHashMap<>();
+
+	/** The rows of each model matching the current pattern (computed once) */
+	private final Map<BindingRowModel, BitSet> rowMatches = new WeakHashMap<>();
+
+	/**
+	 * The match counts of each context found by the last search, guarded by
+	 * contextMatches. They are kept until the next search, which is started
+	 * again when the bindings change.
+	 */
+	private final Map<IEclipseContext, BindingTreeScan.Counts> contextCounts = new WeakHashMap<>();
+
+	/**
+	 * The result of a search, prepared off the UI thread by BindingSearchJob
+	 * and applied to the filter in one step with applyResult
+	 */
+	public static final class SearchResult {
+		private final String pattern;
+		private final BindingQuery query;
+		private final Map<BindingRowModel, BitSet> rowMatches = new HashMap<>();
+		private final Map<IEclipseContext, Boolean> contextMatches = new HashMap<>();
+		private final Map<IEclipseContext, BindingTreeScan.Counts> contextCounts = new HashMap<>();
+		private int matchingRowCount;
+		private int matchingContextCount;
+		private int contextCount;
+
+		SearchResult(String pattern) {
+			this.pattern = normalize(pattern);
+			this.query = BindingQuery.compile(pattern);
+		}
+
+		/** @return the lower case pattern searched, or null if none */
+		public String getPattern() {
+			return pattern;
+		}
+
+		/** @return the compiled pattern, or null if none */
+		public BindingQuery getQuery() {
+			return query;
+		}
+
+		public int getMatchingRowCount() {
+			return matchingRowCount;
+		}
+
+		public int getMatchingContextCount() {
+			return matchingContextCount;
+		}
+
+		/** @return the number of contexts searched */
+		public int getContextCount() {
+			return contextCount;
+		}
+
+		/** Add the matching rows of a searched model */
+		void add(BindingRowModel model, BitSet rows, BindingTreeScan.Counts counts) {
+			rowMatches.put(model, rows);
+			boolean match = !rows.isEmpty();
+			contextMatches.put(model.getContext(), Boolean.valueOf(match));
+			contextCounts.put(model.getContext(), counts);
+			contextCount++;
+			if (match) {
+				matchingContextCount++;
+				matchingRowCount += rows.cardinality();
+			}
+		}
+	}
+
 	// Implements the filter for the data table content
 	@Override
 	public boolean select(Viewer viewer, Object parentElement, Object element) {
@@ -39,60 +119,129 @@ public class BindingDataFilter extends ViewerFilter {
 				|| (element == BindingDataProvider.CONFLICT_BINDINGS))
 			return true;
 
-		TreeViewer tv = (TreeViewer) viewer;
+		if (!(element instanceof BindingRow) || (pattern == null))
+			return false;
 
-		// Must only select objects matching the pattern
-		for (int col = 0; col < tv.getTree().getColumnCount(); col++) {
-			BindingDataProvider bindingDataProvider = getBindingDataProvider(tv.getLabelProvider(col));
-			
-			// If the text matches in one of the column, must keep it...
-			String text = bindingDataProvider.getText(element);
-			if (matchText(text))
-				return true;
-		}
-		return false;
+		BindingRow row = (BindingRow) element;
+		Object input = viewer.getInput();
+		if (!(input instanceof BindingRowModel))
+			return query.matches(row);
+
+		return select((BindingRowModel) input, row);
 	}
 
 	/**
-	 * @param labelProvider
+	 * Check a row of a model against the pattern. Used by the lazy content
+	 * provider, whose model can be newer than the input of the viewer.
 	 */
-	private BindingDataProvider getBindingDataProvider(Object labelProvider) {
-		if (labelProvider instanceof DelegatingStyledCellLabelProvider) {
-			labelProvider = ((DelegatingStyledCellLabelProvider) labelProvider).getStyledStringProvider();
+	public boolean select(BindingRowModel model, BindingRow row) {
+		if (pattern == null)
+			return false;
+		// Must only select objects matching the pattern : use the index once
+		// for all the rows of the displayed model
+		return getMatchingRows(model).get(row.getIndex());
+	}
+
+	/** @return the indexes of the rows of this model matching the pattern */
+	private BitSet getMatchingRows(BindingRowModel model) {
+		BitSet rows = rowMatches.get(model);
+		if (rows == null) {
+			rows = query.find(model);
+			rowMatches.put(model, rows);
 		}
-		return (BindingDataProvider) labelProvider;
+		return rows;
 	}
 
-	/** Set the pattern and use it as lowercase */
+	@Inject
+	void setModelRegistry(BindingModelRegistry registry) {
+		modelRegistry = registry;
+		registry.addModelListener(this);
+	}
+
+	@Override
+	public void modelInvalidated(IEclipseContext context) {
+		synchronized (contextMatches) {
+			if (context == null)
+				contextMatches.clear();
+			else
+				contextMatches.remove(context);
+		}
+	}
+
+	/** Set the pattern, it is compiled once here (see BindingQuery) */
 	public void setPattern(String newPattern) {
-		if ((newPattern == null) || (newPattern.length() == 0))
-			pattern = null;
-		else
-			pattern = newPattern.toLowerCase();
+		pattern = normalize(newPattern);
+		query = BindingQuery.compile(newPattern);
+		rowMatches.clear();
+		synchronized (contextMatches) {
+			contextMatches.clear();
+			contextCounts.clear();
+		}
+	}
+
+	/** @return the lower case pattern, or null if it is blank */
+	static String normalize(String newPattern) {
+		return ((newPattern == null) || (newPattern.trim().length() == 0)) ? null : newPattern.toLowerCase();
+	}
+
+	/** Replace the pattern and all the precomputed matches with a search result */
+	public void applyResult(SearchResult result) {
+		pattern = result.pattern;
+		query = result.query;
+		rowMatches.clear();
+		rowMatches.putAll(result.rowMatches);
+		synchronized (contextMatches) {
+			contextMatches.clear();
+			contextMatches.putAll(result.contextMatches);
+			contextCounts.clear();
+			contextCounts.putAll(result.contextCounts);
+		}
+	}
+
+	/** @return the match counts of this context and its subtree found by the last search, or null */
+	public BindingTreeScan.Counts getCounts(IEclipseContext ctx) {
+		if (query == null)
+			return null;
+		synchronized (contextMatches) {
+			return contextCounts.get(ctx);
+		}
+	}
+
+	/** @return the current lower case pattern, or null if none */
+	public String getPattern() {
+		return pattern;
 	}
 
 	/**
 	 * This method search for an object and check if it contains the text or a
-	 * pattern matching this text
+	 * pattern matching this text. The result is computed once per context and
+	 * pattern, then it is a simple lookup.
 	 */
 	boolean containsText(IEclipseContext ctx, TreeViewer bindingDataViewer) {
-		
-		EBindingService bindingService = ctx.get(EBindingService.class);
-		if (bindingService != null) {
-			for(Binding binding : bindingService.getActiveBindings()) {
-				if (select(bindingDataViewer, null, binding))
-					return true;
-			}
-			for(Binding binding : bindingService.getAllConflicts()) {
-				if (select(bindingDataViewer, null, binding))
-					return true;
-			}
+		BindingQuery currentQuery = query;
+		if (currentQuery == null)
+			return false;
+
+		synchronized (contextMatches) {
+			Boolean match = contextMatches.get(ctx);
+			if (match != null)
+				return match.booleanValue();
 		}
-		
-		return false;
+
+		boolean match = currentQuery.anyMatch(modelRegistry.getModel(ctx));
+		synchronized (contextMatches) {
+			if (currentQuery == query)
+				contextMatches.put(ctx, Boolean.valueOf(match));
+		}
+		return match;
 	}
 
 	public boolean matchText(String text) {
-		return ((text == null) || (pattern == null)) ? false : text.toLowerCase().contains(pattern);
+		return ((text == null) || (query == null)) ? false : query.highlights(text.toLowerCase());
+	}
+
+	/** Same as matchText on the column text of a row, without lowering it again */
+	public boolean matchText(BindingRow row, BindingDataProvider.Column column) {
+		return (query == null) ? false : query.highlights(row, column);
 	}
 }
@@ -10,12 +10,17 @@
  *******************************************************************************/
 package org.eclipse.e4.internal.tools.bindings.spy;
 
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.core.internal.contexts.EclipseContext;
@@ -47,23 +52,52 @@ import org.eclipse.swt.widgets.TreeColumn;
 public class BindingDataPart {
 	public TreeViewer bindingDataViewer;
 
-	private BindingDataProvider dataProvider;
+	private BindingLazyContentProvider contentProvider;
 
 	private BindingEntryComparator comparator;
 
+	/** Builds the styled cells of the rows off the UI thread */
+	private BindingRowRenderer rowRenderer;
+
+	@Inject
+	private BindingModelRegistry modelRegistry;
+
+	/** The labels shared by the providers of all the columns */
+	@Inject
+	private BindingLabelService labelService;
+
+	@Inject
+	private BindingAnalysis analysis;
+
+	/** The views of the contexts displayed recently, reused when they are displayed again */
+	private final BindingViewCache viewCache = new BindingViewCache();
+
+	/** Display the issues again when the trie of all the contexts is (re)built */
+	private final BindingAnalysis.IAnalysisListener analysisListener = new BindingAnalysis.IAnalysisListener() {
+		@Override
+		public void analysisChanged() {
+			if ((bindingDataViewer != null) && !bindingDataViewer.getControl().isDisposed())
+				contentProvider.refreshAnalysis();
+		}
+	};
+
 	/**
 	 * Create contents of the view part.
 	 */
 	@PostConstruct
-	public void createControls(Composite parent, IEclipseContext ctx) {
+	public void createControls(Composite parent) {
 
 		parent.setLayout(new GridLayout(1, false));
 
-		// TreeViewer on the top
-		bindingDataViewer = new TreeViewer(parent);
-		dataProvider = ContextInjectionFactory.make(BindingDataProvider.class, ctx);
-		bindingDataViewer.setContentProvider(dataProvider);
-		bindingDataViewer.setLabelProvider(dataProvider);
+		// Virtual TreeViewer on the top : only the visible rows are created and
+		// labelled, filter and sort are managed by the lazy content provider
+		bindingDataViewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.VIRTUAL);
+		bindingDataViewer.setUseHashlookup(true);
+		rowRenderer = new BindingRowRenderer(parent.getDisplay(), bindingDataViewer);
+		contentProvider = new BindingLazyContentProvider(modelRegistry, analysis);
+		analysis.addAnalysisListener(analysisListener);
+		modelRegistry.addModelListener(viewCache);
+		bindingDataViewer.setContentProvider(contentProvider);
 		// contextContentTv.setSorter(new ViewerSorter());
 
 		final Tree cTree = bindingDataViewer.getTree();
@@ -75,12 +109,15 @@ public class BindingDataPart {
 		bindingDataViewer.setInput("Foo"); // getElements starts alone
 
 		// Add columns in the tree
-		createColumn(ctx, "Key", 100, BindingDataProvider.Column.TRIGGER_SEQUENCE);
-		createColumn(ctx, "Command id/name/description", 250, BindingDataProvider.Column.COMMAND_DESCRIPTION);
-		createColumn(ctx, "Command handler", 250, BindingDataProvider.Column.COMMAND_HANDLER);
-		createColumn(ctx, "State", 60, BindingDataProvider.Column.STATE);
-		createColumn(ctx, "Category", 60, BindingDataProvider.Column.CATEGORY);
-		createColumn(ctx, "Binding context id", 250, BindingDataProvider.Column.BINDING_CONTEXT_ID);
+		createColumn("Key", 100, BindingDataProvider.Column.TRIGGER_SEQUENCE);
+		createColumn("Command id/name/description", 250, BindingDataProvider.Column.COMMAND_DESCRIPTION);
+		createColumn("Command handler", 250, BindingDataProvider.Column.COMMAND_HANDLER);
+		createColumn("State", 60, BindingDataProvider.Column.STATE);
+		createColumn("Category", 60, BindingDataProvider.Column.CATEGORY);
+		createColumn("Binding context id", 250, BindingDataProvider.Column.BINDING_CONTEXT_ID);
+		createColumn("p50", 70, BindingDataProvider.Column.DISPATCH_P50);
+		createColumn("p99", 70, BindingDataProvider.Column.DISPATCH_P99);
+		createColumn("max", 70, BindingDataProvider.Column.DISPATCH_MAX);
 
 		// Open all the tree
 		bindingDataViewer.expandAll();
@@ -89,30 +126,37 @@ public class BindingDataPart {
 	}
 
 	/**
-	 * Create column
-	 * @param ctx
+	 * Create column, its label provider only holds the column
 	 */
-	private void createColumn(IEclipseContext ctx, String text, int width, BindingDataProvider.Column column) {
+	private void createColumn(String text, int width, BindingDataProvider.Column column) {
 		TreeViewerColumn treeCol = new TreeViewerColumn(bindingDataViewer, SWT.NONE);
 		treeCol.getColumn().setWidth(width);
 		treeCol.getColumn().setText(text);
-		BindingDataProvider labelProvider = ContextInjectionFactory.make(BindingDataProvider.class, ctx);
-		labelProvider.setColumn(column);
+		BindingDataProvider labelProvider = new BindingDataProvider(labelService, column);
+		labelProvider.setRenderer(rowRenderer);
 	
 		if (bindingDataViewer.getTree().getColumnCount() == 1) {
 			comparator = new BindingEntryComparator(0, labelProvider);
-			bindingDataViewer.setComparator(comparator);
+			contentProvider.setComparator(comparator);
 			treeCol.setLabelProvider(labelProvider);
 		} else {	
 			treeCol.setLabelProvider(new DelegatingStyledCellLabelProvider(labelProvider));
 		}
 		
+		// The key dispatch timings change while the rows live, they are not sorted
+		if (BindingDataProvider.isDispatchColumn(column)) {
+			treeCol.getColumn().setToolTipText("Key dispatch time of the command (recorded while profiling)");
+			return;
+		}
 		treeCol.getColumn().addSelectionListener(
 				getHeaderSelectionAdapter(bindingDataViewer, treeCol.getColumn(), bindingDataViewer.getTree().getColumnCount()-1, labelProvider));
 	}
 
 	@PreDestroy
 	public void dispose() {
+		analysis.removeAnalysisListener(analysisListener);
+		modelRegistry.removeModelListener(viewCache);
+		rowRenderer.dispose();
 	}
 
 	@Focus
@@ -129,10 +173,131 @@ public class BindingDataPart {
 		if ((ctx == null) || (bindingDataViewer == null)) {
 			return;
 		}
+		// The content provider gets the rows from the registry, they are kept
+		// while the bindings do not change
+		saveView();
+		contentProvider.setComparedContext(null);
 		bindingDataViewer.setInput(ctx);
+		rowRenderer.setModel(contentProvider.getModel());
+
+		// A context displayed recently reuses its sorted rows and column widths
+		BindingViewCache.Entry entry = viewCache.get(ctx, contentProvider.getModel(),
+				contentProvider.getViewGeneration());
+		if (entry != null)
+			contentProvider.setViews(entry.getViews());
 		bindingDataViewer.expandToLevel(2);
-		
-		packAllColumns();
+
+		if (entry != null)
+			setColumnWidths(entry.getColumnWidths());
+		else
+			packAllColumns();
+	}
+
+	/** Keep the views and the column widths of the displayed context, before another one is displayed */
+	private void saveView() {
+		BindingRowModel model = contentProvider.getModel();
+		if (model == null)
+			return;
+		TreeColumn[] columns = bindingDataViewer.getTree().getColumns();
+		int[] widths = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			widths[i] = columns[i].getWidth();
+		}
+		viewCache.put(model.getContext(), model, contentProvider.getViewGeneration(), contentProvider.getViews(),
+				widths);
+	}
+
+	private void setColumnWidths(int[] widths) {
+		TreeColumn[] columns = bindingDataViewer.getTree().getColumns();
+		for (int i = 0; (i < columns.length) && (i < widths.length); i++) {
+			columns[i].setWidth(widths[i]);
+		}
+	}
+
+	/** A context of an opened snapshot is selected : display its rows, read from the file on demand */
+	@Inject
+	@Optional
+	public void listenToSnapshotContext(@Named(IServiceConstants.ACTIVE_SELECTION) BindingSnapshot.Context ctx) {
+		if ((ctx == null) || (bindingDataViewer == null)) {
+			return;
+		}
+		saveView();
+		contentProvider.setComparedContext(null);
+		bindingDataViewer.setInput(ctx);
+		rowRenderer.setModel(null);
+		bindingDataViewer.expandToLevel(2);
+	}
+
+	/**
+	 * Two contexts are selected : display the first one, and the differences
+	 * with the second one in the DIFFERENCES node
+	 */
+	@Inject
+	@Optional
+	public void listenToContexts(@Named(IServiceConstants.ACTIVE_SELECTION) Object[] selection) {
+		if ((selection == null) || (selection.length != 2) || (bindingDataViewer == null)
+				|| !(selection[0] instanceof IEclipseContext) || !(selection[1] instanceof IEclipseContext)) {
+			return;
+		}
+		saveView();
+		contentProvider.setComparedContext((IEclipseContext) selection[1]);
+		bindingDataViewer.setInput(selection[0]);
+		rowRenderer.setModel(contentProvider.getModel());
+		bindingDataViewer.expandToLevel(2);
+	}
+
+	/** @return the context compared with the displayed one, or null */
+	public IEclipseContext getComparedContext() {
+		return contentProvider.getComparedContext();
+	}
+
+	/** The model of the compared context has changed : compute the differences again */
+	public void refreshDifferences() {
+		contentProvider.refreshDifferences();
+	}
+
+	/** Display this past state of the displayed context in the HISTORY node, or no such node if null */
+	public void showHistory(BindingHistory.Snapshot snapshot) {
+		contentProvider.setHistory(snapshot);
+		if (snapshot != null)
+			bindingDataViewer.setExpandedState(BindingDataProvider.HISTORY, true);
+	}
+
+	/** @return the model of the displayed context, or null */
+	public BindingRowModel getRowModel() {
+		return contentProvider.getModel();
+	}
+
+	/**
+	 * Rebuild the rows of the displayed context (bindings or commands have
+	 * changed) and refresh the viewer
+	 */
+	public void reload() {
+		BindingRowModel rowModel = contentProvider.getModel();
+		if (rowModel == null) {
+			refresh(true);
+			return;
+		}
+		IEclipseContext ctx = rowModel.getContext();
+		modelRegistry.invalidate(ctx);
+		bindingDataViewer.setInput(ctx);
+		rowRenderer.setModel(contentProvider.getModel());
+		bindingDataViewer.expandToLevel(2);
+	}
+
+	/**
+	 * Apply the update of the displayed model : only the rows removed, added
+	 * or changed are updated in the viewer
+	 *
+	 * @return false if the delta is not about the displayed model
+	 */
+	public boolean applyDelta(BindingModelDelta delta) {
+		if (delta.getOldModel() != contentProvider.getModel())
+			return false;
+		comparator.keepSortKeys(delta);
+		// The new rows are rendered in the background, the kept ones already are
+		rowRenderer.setModel(delta.getNewModel());
+		return contentProvider.applyDelta(delta);
 	}
 
 	/**
@@ -146,23 +311,122 @@ public class BindingDataPart {
 
 	/**
 	 * An entry comparator for the table, dealing with column index, keys and
-	 * values
+	 * values. Rows are compared with collation keys computed once per row and
+	 * column, and a whole node is sorted as a permutation of row positions.
 	 */
 	public class BindingEntryComparator extends ViewerComparator {
 		private int columnIndex;
 		private int direction;
 		private ILabelProvider labelProvider;
 
+		private final Collator collator;
+
+		/** The sort keys of each model, indexed by column ordinal then by row index */
+		private final Map<BindingRowModel, CollationKey[][]> sortKeys = new WeakHashMap<>();
+
 		public BindingEntryComparator(int columnIndex, ILabelProvider defaultLabelProvider) {
 			this.columnIndex = columnIndex;
 			direction = SWT.UP;
 			labelProvider = defaultLabelProvider;
+			collator = Collator.getInstance();
+			// Ignore case like the previous lower case comparison
+			collator.setStrength(Collator.SECONDARY);
 		}
 
 		public int getDirection() {
 			return direction;
 		}
 
+		public int getColumnIndex() {
+			return columnIndex;
+		}
+
+		/** @return the column of the rows used to sort */
+		private BindingDataProvider.Column getSortColumn() {
+			return (labelProvider instanceof BindingDataProvider) ? ((BindingDataProvider) labelProvider).getColumn()
+					: BindingDataProvider.Column.TRIGGER_SEQUENCE;
+		}
+
+		/** @return the collation key of a row for the sorted column, computed once */
+		private CollationKey getSortKey(BindingRowModel model, BindingRow row) {
+			CollationKey[][] modelKeys = sortKeys.get(model);
+			if (modelKeys == null) {
+				modelKeys = new CollationKey[BindingDataProvider.Column.values().length][];
+				sortKeys.put(model, modelKeys);
+			}
+			int col = getSortColumn().ordinal();
+			if (modelKeys[col] == null)
+				modelKeys[col] = new CollationKey[model.size()];
+			CollationKey key = modelKeys[col][row.getIndex()];
+			if (key == null) {
+				key = collator.getCollationKey(row.getText(getSortColumn()));
+				modelKeys[col][row.getIndex()] = key;
+			}
+			return key;
+		}
+
+		/**
+		 * Sort the positions of some rows of a model
+		 *
+		 * @param positions
+		 *            the positions of the rows in the list, sorted in place
+		 */
+		public void sort(BindingRowModel model, List<BindingRow> rows, int[] positions) {
+			CollationKey[] keys = new CollationKey[rows.size()];
+			for (int p : positions) {
+				keys[p] = getSortKey(model, rows.get(p));
+			}
+			mergeSort(positions, positions.clone(), 0, positions.length, keys);
+
+			// If descending order, flip the direction
+			if (direction == SWT.DOWN)
+				reverse(positions);
+		}
+
+		/**
+		 * Merge two arrays of positions already sorted by this comparator
+		 *
+		 * @return the sorted positions of both arrays
+		 */
+		public int[] merge(BindingRowModel model, List<BindingRow> rows, int[] sorted1, int[] sorted2) {
+			int[] result = new int[sorted1.length + sorted2.length];
+			int i = 0;
+			int j = 0;
+			for (int k = 0; k < result.length; k++) {
+				if (j >= sorted2.length) {
+					result[k] = sorted1[i++];
+				} else if (i >= sorted1.length) {
+					result[k] = sorted2[j++];
+				} else {
+					int rc = getSortKey(model, rows.get(sorted1[i])).compareTo(getSortKey(model, rows.get(sorted2[j])));
+					if (direction == SWT.DOWN)
+						rc = -rc;
+					result[k] = (rc <= 0) ? sorted1[i++] : sorted2[j++];
+				}
+			}
+			return result;
+		}
+
+		/** Give the sort keys of the rows kept by a model update to the new model */
+		public void keepSortKeys(BindingModelDelta delta) {
+			CollationKey[][] oldKeys = sortKeys.get(delta.getOldModel());
+			if (oldKeys == null)
+				return;
+			BindingRowModel newModel = delta.getNewModel();
+			CollationKey[][] newKeys = new CollationKey[oldKeys.length][];
+			for (int col = 0; col < oldKeys.length; col++) {
+				if (oldKeys[col] == null)
+					continue;
+				newKeys[col] = new CollationKey[newModel.size()];
+				for (int i = 0; i < newKeys[col].length; i++) {
+					int oldIndex = delta.getOldIndex(i);
+					if (oldIndex >= 0)
+						newKeys[col][i] = oldKeys[col][oldIndex];
+				}
+			}
+			sortKeys.put(newModel, newKeys);
+		}
+
 		/** Called when click on table header, reverse order */
 		public void setColumn(int column) {
 			if (column == columnIndex) {
@@ -183,6 +447,14 @@ public class BindingDataPart {
 			if (e2 == BindingDataProvider.ACTIVE_BINDINGS)
 				return 1;
 
+			// Rows of the displayed model are compared with their sort keys
+			BindingRowModel model = getDisplayedModel(viewer);
+			if ((e1 instanceof BindingRow) && (e2 instanceof BindingRow) && (model != null)
+					&& model.contains((BindingRow) e1) && model.contains((BindingRow) e2)) {
+				int rc = getSortKey(model, (BindingRow) e1).compareTo(getSortKey(model, (BindingRow) e2));
+				return (direction == SWT.DOWN) ? -rc : rc;
+			}
+
 			// Now can compare the text from label provider.
 			String lp1 = labelProvider.getText(e1);
 			String lp2 = labelProvider.getText(e2);
@@ -199,14 +471,52 @@ public class BindingDataPart {
 
 	}
 
+	/** @return the model displayed in this viewer, or null */
+	private BindingRowModel getDisplayedModel(Viewer viewer) {
+		if ((viewer != null) && (viewer.getInput() instanceof BindingRowModel))
+			return (BindingRowModel) viewer.getInput();
+		return (contentProvider == null) ? null : contentProvider.getModel();
+	}
+
+	/** A stable sort of positions on their keys, without boxing them */
+	private static void mergeSort(int[] a, int[] tmp, int from, int to, CollationKey[] keys) {
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		mergeSort(tmp, a, from, mid, keys);
+		mergeSort(tmp, a, mid, to, keys);
+		// tmp holds both sorted halves, merge them in a
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if ((j >= to) || ((i < mid) && (keys[tmp[i]].compareTo(keys[tmp[j]]) <= 0)))
+				a[k] = tmp[i++];
+			else
+				a[k] = tmp[j++];
+		}
+	}
+
+	static void reverse(int[] a) {
+		for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+
 	private SelectionAdapter getHeaderSelectionAdapter(final TreeViewer viewer, final TreeColumn column,
 			final int columnIndex, final ILabelProvider textProvider) {
 		SelectionAdapter selectionAdapter = new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				viewer.setComparator(comparator);
+				boolean sameColumn = (comparator.getColumnIndex() == columnIndex);
 				comparator.setColumn(columnIndex);
 				comparator.setLabelProvider(textProvider);
+				// Same column : the sorted rows are just reversed
+				if (sameColumn)
+					contentProvider.reverseViews();
+				else
+					contentProvider.setComparator(comparator);
 				viewer.getTree().setSortDirection(comparator.getDirection());
 				viewer.getTree().setSortColumn(column);
 				viewer.refresh();
@@ -216,14 +526,27 @@ public class BindingDataPart {
 	}
 
 	public void refresh(boolean refreshLabel) {
+		// The filter may have changed its pattern
+		contentProvider.clearViews();
 		bindingDataViewer.refresh(refreshLabel);
 	}
 
-	private static final ViewerFilter[] NO_FILTER = new ViewerFilter[0];
+	/**
+	 * Set the text of the "what fires" query of the analysis node, it is
+	 * ignored if it is not a key sequence. Call refresh then
+	 */
+	public void setAnalysisQuery(String text) {
+		contentProvider.setQuery(BindingAnalysis.parseSequence(text));
+	}
 
-	public void setFilter(ViewerFilter filter) {
+	/** Update the labels of the displayed rows, after new key dispatches have been recorded */
+	public void refreshLabels() {
+		bindingDataViewer.refresh(true);
+	}
 
-		bindingDataViewer.setFilters((filter == null) ? NO_FILTER : new ViewerFilter[] { filter });
+	public void setFilter(ViewerFilter filter) {
+		contentProvider.setFilter(filter);
+		bindingDataViewer.refresh();
 	}
 
 }
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+
+/**
+ * The difference between the active bindings of two contexts : the (sequence,
+ * command) pairs bound only in the compared context (added), only in the
+ * displayed one (removed), or the sequences bound to other commands only
+ * (overridden).
+ *
+ * Both models are indexed by sequence then by command id in hash maps, so the
+ * cost is linear in the number of bindings : each row is compared only with
+ * the few rows of the other context on the same sequence.
+ */
+public final class BindingDiff {
+
+	public static enum Kind {
+		ADDED("Added"), REMOVED("Removed"), OVERRIDDEN("Overridden");
+
+		private final String label;
+
+		private Kind(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/** One changed binding, displayed below the DIFFERENCES node */
+	public static final class Change {
+		private final Kind kind;
+		private final String sequenceText;
+
+		/** The binding of the displayed context, null if added */
+		private final BindingRow left;
+
+		/** The binding of the compared context, null if removed */
+		private final BindingRow right;
+
+		Change(Kind kind, BindingRow left, BindingRow right) {
+			this.kind = kind;
+			this.left = left;
+			this.right = right;
+			this.sequenceText = ((left != null) ? left : right).getText(Column.TRIGGER_SEQUENCE);
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String getSequenceText() {
+			return sequenceText;
+		}
+
+		public BindingRow getLeft() {
+			return left;
+		}
+
+		public BindingRow getRight() {
+			return right;
+		}
+
+		/** @return the text of this change in a column of the binding viewer */
+		public String getText(Column column) {
+			switch (column) {
+			case TRIGGER_SEQUENCE:
+				return sequenceText;
+			case COMMAND_DESCRIPTION:
+				if (kind == Kind.OVERRIDDEN)
+					return left.getCommandId() + " -> " + right.getCommandId();
+				return ((left != null) ? left : right).getCommandId();
+			case STATE:
+				return kind.getLabel();
+			case BINDING_CONTEXT_ID:
+				if (kind == Kind.OVERRIDDEN)
+					return left.getBinding().getContextId() + " -> " + right.getBinding().getContextId();
+				return ((left != null) ? left : right).getBinding().getContextId();
+			default:
+				return "";
+			}
+		}
+
+		@Override
+		public String toString() {
+			return kind.getLabel() + " " + sequenceText + " : " + getText(Column.COMMAND_DESCRIPTION);
+		}
+	}
+
+	private final BindingRowModel left;
+	private final BindingRowModel right;
+	private final List<Change> changes;
+
+	private BindingDiff(BindingRowModel left, BindingRowModel right, List<Change> changes) {
+		this.left = left;
+		this.right = right;
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	/**
+	 * Compare the active bindings of two models
+	 *
+	 * @param left
+	 *            the model of the displayed context
+	 * @param right
+	 *            the model of the compared context
+	 */
+	public static BindingDiff compute(BindingRowModel left, BindingRowModel right) {
+		Map<String, Map<String, BindingRow>> leftRows = index(left.getActiveRows());
+		Map<String, Map<String, BindingRow>> rightRows = index(right.getActiveRows());
+		List<Change> changes = new ArrayList<>();
+
+		for (Map.Entry<String, Map<String, BindingRow>> entry : rightRows.entrySet()) {
+			Map<String, BindingRow> sameSequence = leftRows.get(entry.getKey());
+			// With a command in common, each other pair is only added or removed
+			if (sameSequence != null && shareCommand(sameSequence, entry.getValue()))
+				diffCommands(sameSequence, entry.getValue(), changes);
+			else
+				diffSequence(sameSequence, entry.getValue(), changes);
+		}
+		for (Map.Entry<String, Map<String, BindingRow>> entry : leftRows.entrySet()) {
+			if (!rightRows.containsKey(entry.getKey()))
+				diffSequence(entry.getValue(), null, changes);
+		}
+
+		Collections.sort(changes, new Comparator<Change>() {
+			@Override
+			public int compare(Change c1, Change c2) {
+				int rc = c1.getKind().compareTo(c2.getKind());
+				return (rc != 0) ? rc : c1.getSequenceText().compareTo(c2.getSequenceText());
+			}
+		});
+		return new BindingDiff(left, right, changes);
+	}
+
+	/**
+	 * @return the rows by sequence then by command id, most sequences have only
+	 *         one row
+	 */
+	private static Map<String, Map<String, BindingRow>> index(List<BindingRow> rows) {
+		Map<String, Map<String, BindingRow>> index = new HashMap<>(rows.size() * 4 / 3 + 1);
+		for (BindingRow row : rows) {
+			String sequence = row.getText(Column.TRIGGER_SEQUENCE);
+			Map<String, BindingRow> sameSequence = index.get(sequence);
+			if (sameSequence == null) {
+				sameSequence = new LinkedHashMap<>(2);
+				index.put(sequence, sameSequence);
+			}
+			// The same command twice on a sequence (other parameters) is one pair
+			if (!sameSequence.containsKey(row.getCommandId()))
+				sameSequence.put(row.getCommandId(), row);
+		}
+		return index;
+	}
+
+	private static boolean shareCommand(Map<String, BindingRow> leftRows, Map<String, BindingRow> rightRows) {
+		for (String commandId : rightRows.keySet()) {
+			if (leftRows.containsKey(commandId))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Diff the rows of a sequence without command in common : the rows bound on
+	 * both sides are overridden one to one, the other ones are added or removed
+	 *
+	 * @param leftRows
+	 *            the rows of the displayed context, or null
+	 * @param rightRows
+	 *            the rows of the compared context, or null
+	 */
+	private static void diffSequence(Map<String, BindingRow> leftRows, Map<String, BindingRow> rightRows,
+			List<Change> changes) {
+		Iterator<BindingRow> leftIt = (leftRows == null) ? Collections.<BindingRow> emptyIterator()
+				: leftRows.values().iterator();
+		Iterator<BindingRow> rightIt = (rightRows == null) ? Collections.<BindingRow> emptyIterator()
+				: rightRows.values().iterator();
+		while (leftIt.hasNext() && rightIt.hasNext()) {
+			changes.add(new Change(Kind.OVERRIDDEN, leftIt.next(), rightIt.next()));
+		}
+		while (rightIt.hasNext()) {
+			changes.add(new Change(Kind.ADDED, null, rightIt.next()));
+		}
+		while (leftIt.hasNext()) {
+			changes.add(new Change(Kind.REMOVED, leftIt.next(), null));
+		}
+	}
+
+	/** Diff the pairs of a sequence bound to a same command on both sides */
+	private static void diffCommands(Map<String, BindingRow> leftRows, Map<String, BindingRow> rightRows,
+			List<Change> changes) {
+		for (Map.Entry<String, BindingRow> entry : rightRows.entrySet()) {
+			if (!leftRows.containsKey(entry.getKey()))
+				changes.add(new Change(Kind.ADDED, null, entry.getValue()));
+		}
+		for (Map.Entry<String, BindingRow> entry : leftRows.entrySet()) {
+			if (!rightRows.containsKey(entry.getKey()))
+				changes.add(new Change(Kind.REMOVED, entry.getValue(), null));
+		}
+	}
+
+	public BindingRowModel getLeft() {
+		return left;
+	}
+
+	public BindingRowModel getRight() {
+		return right;
+	}
+
+	/** @return the changes, sorted by kind then by sequence */
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+}
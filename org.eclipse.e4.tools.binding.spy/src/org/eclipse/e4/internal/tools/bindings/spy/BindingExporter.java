@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.jface.bindings.Binding;
+
+/**
+ * Write the bindings extracted by a BindingExtractor as JSON or CSV. Each
+ * context is written as soon as it is extracted, the whole extraction is never
+ * kept in memory.
+ */
+public class BindingExporter {
+
+	private static final String[] CSV_HEADER = { "context", "parent", "depth", "kind", "trigger", "commandId",
+			"commandName", "commandDescription", "handler", "contextHandler", "enabled", "category",
+			"bindingContextId", "type", "schemeId", "platform", "locale" };
+
+	private final BindingExtractor extractor;
+
+	public BindingExporter(BindingExtractor extractor) {
+		this.extractor = extractor;
+	}
+
+	/** Write one CSV line per binding, with a header line */
+	public void writeCsv(final Writer out) throws IOException {
+		writeCsvLine(out, CSV_HEADER);
+		try {
+			extractor.extract(new BindingExtractor.IContextVisitor() {
+				@Override
+				public boolean visit(BindingRowModel model, int depth) {
+					try {
+						writeCsvRows(out, model, depth, "active", model.getActiveRows());
+						writeCsvRows(out, model, depth, "conflict", model.getConflictRows());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return true;
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.flush();
+	}
+
+	private void writeCsvRows(Writer out, BindingRowModel model, int depth, String kind, List<BindingRow> rows)
+			throws IOException {
+		IEclipseContext ctx = model.getContext();
+		String[] values = new String[CSV_HEADER.length];
+		for (BindingRow row : rows) {
+			Binding binding = row.getBinding();
+			int i = 0;
+			values[i++] = String.valueOf(ctx);
+			values[i++] = (ctx.getParent() == null) ? "" : String.valueOf(ctx.getParent());
+			values[i++] = String.valueOf(depth);
+			values[i++] = kind;
+			values[i++] = row.getText(BindingDataProvider.Column.TRIGGER_SEQUENCE);
+			values[i++] = row.getCommandId();
+			values[i++] = (row.getCommandError() != null) ? row.getCommandError() : row.getCommandName();
+			values[i++] = row.getCommandDescription();
+			values[i++] = row.getHandler();
+			values[i++] = row.getContextHandler();
+			values[i++] = String.valueOf(row.isEnabled());
+			values[i++] = row.getCategory();
+			values[i++] = binding.getContextId();
+			values[i++] = (binding.getType() == Binding.SYSTEM) ? "SYSTEM" : "USER";
+			values[i++] = binding.getSchemeId();
+			values[i++] = binding.getPlatform();
+			values[i++] = binding.getLocale();
+			writeCsvLine(out, values);
+		}
+	}
+
+	private static void writeCsvLine(Writer out, String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				out.write(',');
+			String value = values[i];
+			if (value == null)
+				continue;
+			if ((value.indexOf(',') < 0) && (value.indexOf('"') < 0) && (value.indexOf('\n') < 0)
+					&& (value.indexOf('\r') < 0)) {
+				out.write(value);
+			} else {
+				out.write('"');
+				out.write(value.replace("\"", "\"\""));
+				out.write('"');
+			}
+		}
+		out.write("\r\n");
+	}
+
+	/** Write a JSON object with an array of contexts, each one with its bindings */
+	public void writeJson(final Writer out) throws IOException {
+		out.write("{\"contexts\":[");
+		try {
+			extractor.extract(new BindingExtractor.IContextVisitor() {
+				private boolean first = true;
+
+				@Override
+				public boolean visit(BindingRowModel model, int depth) {
+					try {
+						if (!first)
+							out.write(',');
+						first = false;
+						writeJsonContext(out, model, depth);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return true;
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.write("]}");
+		out.flush();
+	}
+
+	private void writeJsonContext(Writer out, BindingRowModel model, int depth) throws IOException {
+		IEclipseContext ctx = model.getContext();
+		out.write("\n{\"name\":");
+		writeJsonString(out, String.valueOf(ctx));
+		out.write(",\"parent\":");
+		writeJsonString(out, (ctx.getParent() == null) ? null : String.valueOf(ctx.getParent()));
+		out.write(",\"depth\":");
+		out.write(String.valueOf(depth));
+		out.write(",\"active\":");
+		writeJsonRows(out, model.getActiveRows());
+		out.write(",\"conflicts\":");
+		writeJsonRows(out, model.getConflictRows());
+		out.write('}');
+	}
+
+	private void writeJsonRows(Writer out, List<BindingRow> rows) throws IOException {
+		out.write('[');
+		boolean first = true;
+		for (BindingRow row : rows) {
+			if (!first)
+				out.write(',');
+			first = false;
+			Binding binding = row.getBinding();
+			out.write("\n {\"trigger\":");
+			writeJsonString(out, row.getText(BindingDataProvider.Column.TRIGGER_SEQUENCE));
+			out.write(",\"commandId\":");
+			writeJsonString(out, row.getCommandId());
+			out.write(",\"commandName\":");
+			writeJsonString(out, row.getCommandName());
+			out.write(",\"commandDescription\":");
+			writeJsonString(out, row.getCommandDescription());
+			out.write(",\"commandError\":");
+			writeJsonString(out, row.getCommandError());
+			out.write(",\"handler\":");
+			writeJsonString(out, row.getHandler());
+			out.write(",\"contextHandler\":");
+			writeJsonString(out, row.getContextHandler());
+			out.write(",\"enabled\":");
+			out.write(String.valueOf(row.isEnabled()));
+			out.write(",\"category\":");
+			writeJsonString(out, row.getCategory());
+			out.write(",\"bindingContextId\":");
+			writeJsonString(out, binding.getContextId());
+			out.write(",\"type\":");
+			writeJsonString(out, (binding.getType() == Binding.SYSTEM) ? "SYSTEM" : "USER");
+			out.write(",\"schemeId\":");
+			writeJsonString(out, binding.getSchemeId());
+			out.write(",\"platform\":");
+			writeJsonString(out, binding.getPlatform());
+			out.write(",\"locale\":");
+			writeJsonString(out, binding.getLocale());
+			out.write('}');
+		}
+		out.write(']');
+	}
+
+	private static void writeJsonString(Writer out, String value) throws IOException {
+		if (value == null) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", Integer.valueOf(c)));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+
+}
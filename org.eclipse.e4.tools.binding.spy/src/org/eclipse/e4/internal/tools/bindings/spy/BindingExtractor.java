@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+
+/**
+ * The headless binding extraction : it walks all the contexts created by
+ * EclipseContextFactory and their children, and builds the BindingRowModel of
+ * each one. It does not use SWT nor the display, so that it can be used in
+ * headless tests or batch jobs.
+ *
+ * The contexts are not thread safe : when the extraction does not run in the
+ * UI thread, a context executor (ex : Display.syncExec) reads each context in
+ * the UI thread, one at a time, and the visitor is called in the extracting
+ * thread.
+ *
+ * @see BindingExporter
+ */
+public class BindingExtractor {
+
+	/** Receives the contexts one by one, parents before children */
+	public interface IContextVisitor {
+		/**
+		 * @param model
+		 *            the rows of the context
+		 * @param depth
+		 *            the depth of the context, 0 for the root contexts
+		 * @return false to stop the extraction
+		 */
+		boolean visit(BindingRowModel model, int depth);
+	}
+
+	/** Selects the contexts to visit, before their model is built */
+	public interface IContextFilter {
+		/** @return true to build and visit the model of this context */
+		boolean accept(IEclipseContext ctx);
+	}
+
+	private final BindingModelRegistry modelRegistry;
+
+	private final Executor contextExecutor;
+
+	/** Create an extractor building new models for each extraction */
+	public BindingExtractor() {
+		this(null);
+	}
+
+	/**
+	 * Create an extractor reusing the models of a registry
+	 *
+	 * @param modelRegistry
+	 *            the registry used to get the models, or null to build them
+	 */
+	public BindingExtractor(BindingModelRegistry modelRegistry) {
+		this(modelRegistry, null);
+	}
+
+	/**
+	 * Create an extractor reading the contexts with an executor
+	 *
+	 * @param modelRegistry
+	 *            the registry used to get the models, or null to build them
+	 * @param contextExecutor
+	 *            runs the reading of each context (its model and children)
+	 *            before returning, or null to read them in the calling thread.
+	 *            The extraction stops if it does not run it (ex : the display
+	 *            is disposed).
+	 */
+	public BindingExtractor(BindingModelRegistry modelRegistry, Executor contextExecutor) {
+		this.modelRegistry = modelRegistry;
+		this.contextExecutor = contextExecutor;
+	}
+
+	/**
+	 * Visit all the contexts. Models are passed to the visitor as soon as they
+	 * are built, so that they can be written and forgotten.
+	 */
+	public void extract(IContextVisitor visitor) {
+		extract(visitor, null);
+	}
+
+	/**
+	 * Visit the contexts accepted by a filter. The children of the rejected
+	 * contexts are still visited.
+	 *
+	 * @param filter
+	 *            the filter of the contexts, or null to visit all of them
+	 */
+	public void extract(IContextVisitor visitor, IContextFilter filter) {
+		for (IEclipseContext root : ContextSpyHelper.getAllBundleContexts()) {
+			if (!visit(root, 0, visitor, filter))
+				return;
+		}
+	}
+
+	private boolean visit(final IEclipseContext ctx, int depth, IContextVisitor visitor,
+			final IContextFilter filter) {
+		final BindingRowModel[] model = new BindingRowModel[1];
+		final List<IEclipseContext> children = new ArrayList<>();
+		final boolean[] read = new boolean[1];
+		Runnable reader = new Runnable() {
+			@Override
+			public void run() {
+				if ((filter == null) || filter.accept(ctx))
+					model[0] = (modelRegistry == null) ? BindingRowModel.build(ctx) : modelRegistry.getModel(ctx);
+				addChildren(ctx, children);
+				read[0] = true;
+			}
+		};
+		if (contextExecutor == null) {
+			reader.run();
+		} else {
+			try {
+				contextExecutor.execute(reader);
+			} catch (RuntimeException e) {
+				return false; // The UI thread is gone
+			}
+			if (!read[0])
+				return false;
+		}
+
+		if ((model[0] != null) && !visitor.visit(model[0], depth))
+			return false;
+		for (IEclipseContext child : children) {
+			if (!visit(child, depth + 1, visitor, filter))
+				return false;
+		}
+		return true;
+	}
+
+	@SuppressWarnings("restriction")
+	private static void addChildren(IEclipseContext ctx, List<IEclipseContext> children) {
+		if (ctx instanceof EclipseContext) {
+			Collection<EclipseContext> contextChildren = ((EclipseContext) ctx).getChildren();
+			children.addAll(contextChildren);
+		}
+	}
+
+	/** @return the models of all the contexts */
+	public List<BindingRowModel> extractAll() {
+		final List<BindingRowModel> result = new ArrayList<>();
+		extract(new IContextVisitor() {
+			@Override
+			public boolean visit(BindingRowModel model, int depth) {
+				result.add(model);
+				return true;
+			}
+		});
+		return result;
+	}
+
+}
@@ -0,0 +1,660 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+
+/**
+ * Records the changes of the bindings of the contexts whose model is built, so
+ * that any past state can be displayed again. Each burst of changes is a
+ * frame of a ring buffer, holding for each changed context the ids of the
+ * bindings added and removed : a binding (sequence, command, context id) is
+ * interned once as an int id, and only the current state of each context is
+ * kept in full. A past state is rebuilt from the current one by undoing the
+ * newer frames, in a time proportional to their size.
+ *
+ * The memory is bounded : the oldest frames are dropped beyond MAX_FRAMES
+ * frames or MAX_DELTA_IDS recorded ids, and an interned binding is forgotten
+ * when no state or frame refers to it anymore.
+ */
+@Creatable
+@Singleton
+public class BindingHistory {
+
+	/** The maximum number of frames kept */
+	static final int MAX_FRAMES = 1024;
+
+	/** The maximum number of added and removed ids in all the frames (4 bytes each) */
+	static final int MAX_DELTA_IDS = 1 << 18;
+
+	private static final int[] NO_IDS = new int[0];
+
+	/** The order of the items : by sequence, a removed binding after the current ones */
+	private static final Comparator<Item> ITEM_ORDER = new Comparator<Item>() {
+		@Override
+		public int compare(Item i1, Item i2) {
+			int rc = i1.getEntry().sequence.compareTo(i2.getEntry().sequence);
+			return (rc != 0) ? rc : i1.getStatus().compareTo(i2.getStatus());
+		}
+	};
+
+	/** A recorded binding, interned */
+	public static final class Entry {
+		private final String sequence;
+		private final String commandId;
+		private final String contextId;
+		private final boolean conflict;
+
+		Entry(String sequence, String commandId, String contextId, boolean conflict) {
+			this.sequence = sequence;
+			this.commandId = commandId;
+			this.contextId = contextId;
+			this.conflict = conflict;
+		}
+
+		public boolean isConflict() {
+			return conflict;
+		}
+
+		/** @return the text of this binding in a column of the binding viewer */
+		public String getText(Column column) {
+			switch (column) {
+			case TRIGGER_SEQUENCE:
+				return sequence;
+			case COMMAND_DESCRIPTION:
+				return commandId;
+			case BINDING_CONTEXT_ID:
+				return contextId;
+			default:
+				return "";
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return ((sequence.hashCode() * 31 + commandId.hashCode()) * 31 + String.valueOf(contextId).hashCode())
+					* 2 + (conflict ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			Entry other = (Entry) obj;
+			return (conflict == other.conflict) && sequence.equals(other.sequence)
+					&& commandId.equals(other.commandId)
+					&& ((contextId == null) ? (other.contextId == null) : contextId.equals(other.contextId));
+		}
+	}
+
+	public static enum Status {
+		KEPT("Unchanged since"), REMOVED("Removed since"), ADDED("Added since");
+
+		private final String label;
+
+		private Status(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/** A binding of a past state compared with the current state, displayed below the HISTORY node */
+	public static final class Item {
+		private final Entry entry;
+		private final Status status;
+
+		Item(Entry entry, Status status) {
+			this.entry = entry;
+			this.status = status;
+		}
+
+		public Entry getEntry() {
+			return entry;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/** @return the text of this item in a column of the binding viewer */
+		public String getText(Column column) {
+			if (column == Column.STATE)
+				return entry.isConflict() ? status.getLabel() + " (conflict)" : status.getLabel();
+			return entry.getText(column);
+		}
+
+		@Override
+		public String toString() {
+			return status.getLabel() + " " + entry.getText(Column.TRIGGER_SEQUENCE) + " : "
+					+ entry.getText(Column.COMMAND_DESCRIPTION);
+		}
+	}
+
+	/** The bindings of a context at a position of the history */
+	public static final class Snapshot {
+		private final IEclipseContext context;
+		private final long position;
+		private final long time;
+		private final List<Item> items;
+		private final int changedCount;
+
+		Snapshot(IEclipseContext context, long position, long time, List<Item> items, int changedCount) {
+			this.context = context;
+			this.position = position;
+			this.time = time;
+			this.items = Collections.unmodifiableList(items);
+			this.changedCount = changedCount;
+		}
+
+		public IEclipseContext getContext() {
+			return context;
+		}
+
+		public long getPosition() {
+			return position;
+		}
+
+		/** @return the time of this state (System.currentTimeMillis) */
+		public long getTime() {
+			return time;
+		}
+
+		/** @return the bindings of this state and the bindings added since, sorted by sequence */
+		public List<Item> getItems() {
+			return items;
+		}
+
+		/** @return the number of bindings removed or added since this state */
+		public int getChangedCount() {
+			return changedCount;
+		}
+	}
+
+	/** The changes of a burst : the sorted ids added to and removed from each changed context */
+	private static final class Frame {
+		final long time;
+		final int[] contexts;
+		final int[][] added;
+		final int[][] removed;
+
+		Frame(long time, int[] contexts, int[][] added, int[][] removed) {
+			this.time = time;
+			this.contexts = contexts;
+			this.added = added;
+			this.removed = removed;
+		}
+
+		int indexOf(int context) {
+			for (int i = 0; i < contexts.length; i++) {
+				if (contexts[i] == context)
+					return i;
+			}
+			return -1;
+		}
+
+		int size() {
+			int size = 0;
+			for (int i = 0; i < contexts.length; i++) {
+				size += added[i].length + removed[i].length;
+			}
+			return size;
+		}
+	}
+
+	/* The interned entries, guarded by this : an id is reused once no state nor frame refers to it */
+	private final List<Entry> entries = new ArrayList<>();
+	private final Map<Entry, Integer> ids = new HashMap<>();
+	private int[] refs = new int[256];
+	private int[] freeIds = new int[16];
+	private int freeCount;
+
+	/* The recorded contexts, guarded by this : their ids are never reused */
+	private final Map<IEclipseContext, Integer> contextIds = new WeakHashMap<>();
+	private final Map<Integer, WeakReference<IEclipseContext>> contexts = new HashMap<>();
+	private int nextContextId;
+
+	/** The current sorted ids of each recorded context, guarded by this */
+	private final Map<Integer, int[]> heads = new HashMap<>();
+
+	/** The current ids of each context sorted by sequence, computed by the first snapshot after a change */
+	private final Map<Integer, int[]> sortedHeads = new HashMap<>();
+
+	/* The ring buffer of frames, guarded by this */
+	private final Frame[] frames = new Frame[MAX_FRAMES];
+	private int first;
+	private int count;
+	private int deltaIds;
+
+	/** The absolute number of the newest frame, 0 before the first one */
+	private long newestPosition;
+
+	/** The time of the oldest state kept (start of the recording or last dropped frame) */
+	private long oldestTime;
+
+	private volatile boolean recording;
+
+	/** Start recording the changes of the models already built, and of the models built later */
+	public synchronized void start(BindingModelRegistry modelRegistry) {
+		if (recording)
+			return;
+		clear();
+		recording = true;
+		oldestTime = System.currentTimeMillis();
+		for (IEclipseContext context : modelRegistry.getCachedContexts()) {
+			BindingRowModel model = modelRegistry.getCachedModel(context);
+			if (model != null)
+				getHead(context, model);
+		}
+	}
+
+	/** Stop recording, the history is kept until the next start */
+	public void stop() {
+		recording = false;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/** Forget all the frames and states */
+	public synchronized void clear() {
+		Arrays.fill(frames, null);
+		first = 0;
+		count = 0;
+		deltaIds = 0;
+		newestPosition = 0;
+		entries.clear();
+		ids.clear();
+		refs = new int[256];
+		freeCount = 0;
+		contextIds.clear();
+		contexts.clear();
+		heads.clear();
+		sortedHeads.clear();
+	}
+
+	/**
+	 * Record the updates of the models as one frame, if recording
+	 *
+	 * @return true if a frame has been recorded
+	 */
+	public boolean record(Map<IEclipseContext, BindingModelDelta> deltas) {
+		return recording && record(System.currentTimeMillis(), deltas);
+	}
+
+	synchronized boolean record(long time, Map<IEclipseContext, BindingModelDelta> deltas) {
+		forgetCollectedContexts();
+
+		int[] changedContexts = new int[deltas.size()];
+		int[][] added = new int[deltas.size()][];
+		int[][] removed = new int[deltas.size()][];
+		int changed = 0;
+		for (Map.Entry<IEclipseContext, BindingModelDelta> entry : deltas.entrySet()) {
+			BindingModelDelta delta = entry.getValue();
+			int context = getHead(entry.getKey(), delta.getOldModel());
+			int[] head = heads.get(context);
+
+			// A changed row with the same entry (another handler...) is not a change
+			int[] newIds = internAdded(delta);
+			int[] oldIds = internRemoved(delta);
+			int[] addedIds = difference(difference(newIds, oldIds), head);
+			int[] removedIds = intersection(difference(oldIds, newIds), head);
+			// An added id is referred to by the frame and the state, a removed
+			// one by the frame instead of the state
+			retain(addedIds);
+			retain(addedIds);
+			releaseUnused(newIds);
+			releaseUnused(oldIds);
+			if ((addedIds.length == 0) && (removedIds.length == 0))
+				continue;
+
+			heads.put(context, union(difference(head, removedIds), addedIds));
+			sortedHeads.remove(context);
+			changedContexts[changed] = context;
+			added[changed] = addedIds;
+			removed[changed] = removedIds;
+			changed++;
+		}
+		if (changed == 0)
+			return false;
+
+		Frame frame = new Frame(time, Arrays.copyOf(changedContexts, changed), Arrays.copyOf(added, changed),
+				Arrays.copyOf(removed, changed));
+		if (count == MAX_FRAMES)
+			dropOldest();
+		frames[(first + count) % MAX_FRAMES] = frame;
+		count++;
+		deltaIds += frame.size();
+		newestPosition++;
+		while ((deltaIds > MAX_DELTA_IDS) && (count > 1))
+			dropOldest();
+		return true;
+	}
+
+	/** @return the position of the oldest state kept */
+	public synchronized long getOldestPosition() {
+		return newestPosition - count;
+	}
+
+	/** @return the position of the current state */
+	public synchronized long getNewestPosition() {
+		return newestPosition;
+	}
+
+	/** @return the time of the state at this position */
+	public synchronized long getTime(long position) {
+		long oldest = newestPosition - count;
+		if (position <= oldest)
+			return oldestTime;
+		return frame((int) (Math.min(position, newestPosition) - oldest - 1)).time;
+	}
+
+	/** @return the number of frames kept */
+	public synchronized int getFrameCount() {
+		return count;
+	}
+
+	/** @return the number of interned bindings */
+	public synchronized int getEntryCount() {
+		return ids.size();
+	}
+
+	/**
+	 * Rebuild the bindings of a context at a past position, by undoing the
+	 * newer frames on its current state
+	 *
+	 * @param position
+	 *            a position between getOldestPosition and getNewestPosition
+	 * @return the state at this position compared with the current one, or
+	 *         null if this context is not recorded
+	 */
+	public synchronized Snapshot getSnapshot(IEclipseContext context, long position) {
+		Integer contextId = contextIds.get(context);
+		int[] head = (contextId == null) ? null : heads.get(contextId);
+		if (head == null)
+			return null;
+
+		long oldest = newestPosition - count;
+		long target = Math.max(oldest, Math.min(position, newestPosition));
+		BitSet current = new BitSet();
+		for (int id : head) {
+			current.set(id);
+		}
+		BitSet past = (BitSet) current.clone();
+		for (int i = (int) (newestPosition - oldest) - 1; i >= target - oldest; i--) {
+			Frame frame = frame(i);
+			int k = frame.indexOf(contextId);
+			if (k < 0)
+				continue;
+			for (int id : frame.added[k]) {
+				past.clear(id);
+			}
+			for (int id : frame.removed[k]) {
+				past.set(id);
+			}
+		}
+
+		// The current bindings are sorted once, only the removed ones are sorted here
+		List<Item> removedItems = new ArrayList<>();
+		for (int id = past.nextSetBit(0); id >= 0; id = past.nextSetBit(id + 1)) {
+			if (!current.get(id))
+				removedItems.add(new Item(entries.get(id), Status.REMOVED));
+		}
+		Collections.sort(removedItems, ITEM_ORDER);
+
+		int[] sorted = getSortedHead(contextId, head);
+		List<Item> items = new ArrayList<>(sorted.length + removedItems.size());
+		int changedCount = removedItems.size();
+		int r = 0;
+		for (int id : sorted) {
+			Item item = new Item(entries.get(id), past.get(id) ? Status.KEPT : Status.ADDED);
+			if (item.getStatus() == Status.ADDED)
+				changedCount++;
+			while ((r < removedItems.size()) && (ITEM_ORDER.compare(removedItems.get(r), item) < 0))
+				items.add(removedItems.get(r++));
+			items.add(item);
+		}
+		items.addAll(removedItems.subList(r, removedItems.size()));
+		return new Snapshot(context, target, getTime(target), items, changedCount);
+	}
+
+	private int[] getSortedHead(Integer contextId, int[] head) {
+		int[] sorted = sortedHeads.get(contextId);
+		if (sorted == null) {
+			Integer[] boxed = new Integer[head.length];
+			for (int i = 0; i < head.length; i++) {
+				boxed[i] = head[i];
+			}
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer id1, Integer id2) {
+					return entries.get(id1).sequence.compareTo(entries.get(id2).sequence);
+				}
+			});
+			sorted = new int[head.length];
+			for (int i = 0; i < head.length; i++) {
+				sorted[i] = boxed[i];
+			}
+			sortedHeads.put(contextId, sorted);
+		}
+		return sorted;
+	}
+
+	private Frame frame(int index) {
+		return frames[(first + index) % MAX_FRAMES];
+	}
+
+	private void dropOldest() {
+		Frame frame = frames[first];
+		frames[first] = null;
+		first = (first + 1) % MAX_FRAMES;
+		count--;
+		deltaIds -= frame.size();
+		oldestTime = frame.time;
+		for (int i = 0; i < frame.contexts.length; i++) {
+			release(frame.added[i]);
+			release(frame.removed[i]);
+		}
+	}
+
+	/**
+	 * @return the id of this context, its state is initialized with the rows
+	 *         of this model if it is not recorded yet
+	 */
+	private int getHead(IEclipseContext context, BindingRowModel model) {
+		Integer contextId = contextIds.get(context);
+		if (contextId != null)
+			return contextId;
+
+		int id = nextContextId++;
+		contextIds.put(context, id);
+		contexts.put(id, new WeakReference<>(context));
+		int[] head = new int[model.size()];
+		for (int i = 0; i < head.length; i++) {
+			head[i] = intern(model, model.getRow(i));
+		}
+		head = unique(head);
+		retain(head);
+		heads.put(id, head);
+		return id;
+	}
+
+	/** Release the state of the contexts garbage collected, their frames are dropped with the oldest ones */
+	private void forgetCollectedContexts() {
+		for (Iterator<Map.Entry<Integer, WeakReference<IEclipseContext>>> it = contexts.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<Integer, WeakReference<IEclipseContext>> entry = it.next();
+			if (entry.getValue().get() == null) {
+				release(heads.remove(entry.getKey()));
+				sortedHeads.remove(entry.getKey());
+				it.remove();
+			}
+		}
+	}
+
+	/** @return the sorted ids of the rows of the new model that are not in the old one */
+	private int[] internAdded(BindingModelDelta delta) {
+		BindingRowModel model = delta.getNewModel();
+		int[] result = new int[model.size()];
+		int size = 0;
+		for (int i = 0; i < model.size(); i++) {
+			if (delta.getOldIndex(i) < 0)
+				result[size++] = intern(model, model.getRow(i));
+		}
+		return unique(Arrays.copyOf(result, size));
+	}
+
+	/** @return the sorted ids of the rows of the old model that are not in the new one */
+	private int[] internRemoved(BindingModelDelta delta) {
+		BindingRowModel model = delta.getOldModel();
+		int[] result = new int[model.size()];
+		int size = 0;
+		for (int i = 0; i < model.size(); i++) {
+			if (delta.getNewIndex(i) < 0)
+				result[size++] = intern(model, model.getRow(i));
+		}
+		return unique(Arrays.copyOf(result, size));
+	}
+
+	/** @return the id of the entry of this row, interned with no reference if new */
+	private int intern(BindingRowModel model, BindingRow row) {
+		Entry entry = new Entry(row.getText(Column.TRIGGER_SEQUENCE), row.getCommandId(),
+				row.getBinding().getContextId(), row.getIndex() >= model.getActiveRows().size());
+		Integer id = ids.get(entry);
+		if (id != null)
+			return id;
+
+		int newId;
+		if (freeCount > 0) {
+			newId = freeIds[--freeCount];
+			entries.set(newId, entry);
+		} else {
+			newId = entries.size();
+			entries.add(entry);
+			if (newId == refs.length)
+				refs = Arrays.copyOf(refs, refs.length * 2);
+		}
+		refs[newId] = 0;
+		ids.put(entry, newId);
+		return newId;
+	}
+
+	private void retain(int[] entryIds) {
+		for (int id : entryIds) {
+			refs[id]++;
+		}
+	}
+
+	private void release(int[] entryIds) {
+		if (entryIds == null)
+			return;
+		for (int id : entryIds) {
+			if (--refs[id] == 0)
+				free(id);
+		}
+	}
+
+	/** Forget the entries interned for nothing, when a row has not really changed */
+	private void releaseUnused(int[] entryIds) {
+		for (int id : entryIds) {
+			if ((refs[id] == 0) && (entries.get(id) != null))
+				free(id);
+		}
+	}
+
+	private void free(int id) {
+		ids.remove(entries.get(id));
+		entries.set(id, null);
+		if (freeCount == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+		freeIds[freeCount++] = id;
+	}
+
+	/* Operations on sorted arrays of ids without duplicates */
+
+	private static int[] unique(int[] a) {
+		if (a.length == 0)
+			return NO_IDS;
+		Arrays.sort(a);
+		int size = 1;
+		for (int i = 1; i < a.length; i++) {
+			if (a[i] != a[size - 1])
+				a[size++] = a[i];
+		}
+		return (size == a.length) ? a : Arrays.copyOf(a, size);
+	}
+
+	/** @return the ids of a that are not in b */
+	static int[] difference(int[] a, int[] b) {
+		int[] result = new int[a.length];
+		int size = 0;
+		int j = 0;
+		for (int id : a) {
+			while ((j < b.length) && (b[j] < id))
+				j++;
+			if ((j == b.length) || (b[j] != id))
+				result[size++] = id;
+		}
+		return (size == 0) ? NO_IDS : (size == a.length) ? a : Arrays.copyOf(result, size);
+	}
+
+	/** @return the ids of a that are in b */
+	static int[] intersection(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		int j = 0;
+		for (int id : a) {
+			while ((j < b.length) && (b[j] < id))
+				j++;
+			if ((j < b.length) && (b[j] == id))
+				result[size++] = id;
+		}
+		return (size == 0) ? NO_IDS : Arrays.copyOf(result, size);
+	}
+
+	static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while ((i < a.length) || (j < b.length)) {
+			if ((j == b.length) || ((i < a.length) && (a[i] < b[j])))
+				result[size++] = a[i++];
+			else if ((i == a.length) || (b[j] < a[i]))
+				result[size++] = b[j++];
+			else {
+				result[size++] = a[i++];
+				j++;
+			}
+		}
+		return (size == result.length) ? result : Arrays.copyOf(result, size);
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.jface.bindings.TriggerSequence;
+
+/**
+ * One finding of the binding analysis, displayed below the ANALYSIS node : a
+ * conflict, a binding shadowed by a longer one, an expensive handler lookup,
+ * or the answer to the "what fires for this sequence" query of the search
+ * text.
+ *
+ * @see BindingAnalysis
+ */
+public final class BindingIssue {
+
+	public static enum Kind {
+		/** Several active bindings of the context on the same sequence */
+		CONFLICT("Conflict", true),
+		/** A sibling context binds the same sequence to another command */
+		SIBLING_CONFLICT("Sibling conflict", true),
+		/** A longer binding of the context starts with this sequence */
+		SHADOWED("Shadowed", true),
+		/** The queried sequence executes a command */
+		FIRES("Fires", false),
+		/** The queried sequence waits for the next key */
+		PREFIX("Prefix", false),
+		/** Nothing happens for the queried sequence */
+		UNBOUND("Unbound", false),
+		/** The handler of the command is found far above the context */
+		SLOW_HANDLER("Slow handler", false);
+
+		private final String label;
+		private final boolean error;
+
+		private Kind(String label, boolean error) {
+			this.label = label;
+			this.error = error;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public boolean isError() {
+			return error;
+		}
+	}
+
+	private final Kind kind;
+	private final TriggerSequence sequence;
+
+	/** The formatted sequence, computed once as issues are sorted on it */
+	private final String sequenceText;
+
+	/** The binding of the displayed context, or null */
+	private final BindingRow row;
+
+	/** The other binding involved, or null */
+	private final BindingTrie.Entry other;
+
+	private final String message;
+
+	BindingIssue(Kind kind, TriggerSequence sequence, BindingRow row, BindingTrie.Entry other, String message) {
+		this.kind = kind;
+		this.sequence = sequence;
+		this.sequenceText = (row != null) ? row.getText(Column.TRIGGER_SEQUENCE) : sequence.format();
+		this.row = row;
+		this.other = other;
+		this.message = message;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public TriggerSequence getSequence() {
+		return sequence;
+	}
+
+	public String getSequenceText() {
+		return sequenceText;
+	}
+
+	public BindingRow getRow() {
+		return row;
+	}
+
+	public BindingTrie.Entry getOther() {
+		return other;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/** @return the text of this issue in a column of the binding viewer */
+	public String getText(Column column) {
+		switch (column) {
+		case TRIGGER_SEQUENCE:
+			return sequenceText;
+		case COMMAND_DESCRIPTION:
+			return message;
+		case STATE:
+			return kind.getLabel();
+		case BINDING_CONTEXT_ID:
+			return (row == null) ? "" : row.getBinding().getContextId();
+		default:
+			return "";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return kind.getLabel() + " " + sequenceText + " : " + message;
+	}
+
+}
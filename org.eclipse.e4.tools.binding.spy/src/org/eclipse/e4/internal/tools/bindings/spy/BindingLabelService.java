@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.jface.resource.ColorRegistry;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.viewers.StyledString;
+import org.eclipse.jface.viewers.StyledString.Styler;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * The labels of the binding viewer : fonts, colors, stylers and the text of
+ * each element for a column. It is created once and shared by the label
+ * providers of all the columns of all the opened spies, which only hold their
+ * column.
+ *
+ * @see BindingDataProvider
+ */
+@Creatable
+@Singleton
+public class BindingLabelService {
+
+	private final Color foundColor;
+	private final Color exceptionColor;
+
+	private final Font boldFont;
+
+	/** The stylers of the rendered cells, by BindingRowRenderer.Style ordinal */
+	private final Styler[] stylers;
+
+	@Inject
+	private BindingDataFilter contextFilter;
+
+	@Inject
+	private KeyDispatchProfiler profiler;
+
+	public BindingLabelService() {
+		Display display = Display.getCurrent();
+		foundColor = display.getSystemColor(SWT.COLOR_BLUE);
+		exceptionColor = display.getSystemColor(SWT.COLOR_RED);
+
+		FontData[] fontData = display.getSystemFont().getFontData();
+		boldFont = JFaceResources.getFontRegistry().getBold(fontData[0].getName());
+
+		ColorRegistry colorRegistry = JFaceResources.getColorRegistry();
+		colorRegistry.put("COUNTER_COLOR", new RGB(0, 127, 174));
+		colorRegistry.put("DECORATIONS_COLOR", new RGB(149, 125, 71));
+		colorRegistry.put("EXCEPTION_COLOR", new RGB(255, 0, 0));
+		colorRegistry.put("ENABLED_COLOR", new RGB(0, 192, 0));
+		colorRegistry.put("DISABLED_COLOR", new RGB(128, 128, 128));
+
+		stylers = new Styler[BindingRowRenderer.Style.values().length];
+		stylers[BindingRowRenderer.Style.COMMAND_NAME.ordinal()] = StyledString.createColorRegistryStyler("COUNTER_COLOR", null);
+		stylers[BindingRowRenderer.Style.COMMAND_DESCRIPTION.ordinal()] = StyledString.createColorRegistryStyler("DECORATIONS_COLOR", null);
+		stylers[BindingRowRenderer.Style.EXCEPTION.ordinal()] = StyledString.createColorRegistryStyler("EXCEPTION_COLOR", null);
+		stylers[BindingRowRenderer.Style.HANDLER.ordinal()] = StyledString.createColorRegistryStyler("DISABLED_COLOR", null);
+		stylers[BindingRowRenderer.Style.ENABLED.ordinal()] = StyledString.createColorRegistryStyler("ENABLED_COLOR", null);
+		stylers[BindingRowRenderer.Style.DISABLED.ordinal()] = StyledString.createColorRegistryStyler("DISABLED_COLOR", null);
+	}
+
+	public String getText(Object element, Column column) {
+		// Rows already hold the resolved text, no need to build a styled string
+		if ((element instanceof BindingRow) && BindingDataProvider.isDispatchColumn(column))
+			return getDispatchText((BindingRow) element, column);
+		if (element instanceof BindingRow)
+			return ((BindingRow) element).getText(column);
+		if (element instanceof BindingIssue)
+			return ((BindingIssue) element).getText(column);
+		if (element instanceof BindingDiff.Change)
+			return ((BindingDiff.Change) element).getText(column);
+		if (element instanceof BindingHistory.Item)
+			return ((BindingHistory.Item) element).getText(column);
+		if (element instanceof BindingSnapshot.Row)
+			return ((BindingSnapshot.Row) element).getText(column);
+		return (column == Column.TRIGGER_SEQUENCE) ? String.valueOf(element) : "";
+	}
+
+	public Color getForeground(Object element, Column column) {
+		// Return red color if exception
+		if ((element instanceof BindingRow) && ((BindingRow) element).isError(column))
+			return exceptionColor;
+		if ((element instanceof BindingIssue) && ((BindingIssue) element).getKind().isError()
+				&& (column == Column.STATE))
+			return exceptionColor;
+		if ((element instanceof BindingSnapshot.Row) && ((BindingSnapshot.Row) element).isError(column))
+			return exceptionColor;
+
+		// Return blue color if the string matches the search
+		if (element instanceof BindingRow)
+			return contextFilter.matchText((BindingRow) element, column) ? foundColor : null;
+		return (contextFilter.matchText(getText(element, column))) ? foundColor : null;
+	}
+
+	/** Get the bold font for the nodes of the tree */
+	public Font getFont(Object element) {
+		return (element == BindingDataProvider.ACTIVE_BINDINGS || element == BindingDataProvider.CONFLICT_BINDINGS
+				|| element == BindingDataProvider.ANALYSIS || element == BindingDataProvider.DIFFERENCES
+				|| element == BindingDataProvider.HISTORY) ? boldFont : null;
+	}
+
+	/** @return the duration of the key dispatches of this row command, or "" if none is recorded */
+	private String getDispatchText(BindingRow row, Column column) {
+		KeyDispatchTimings timings = profiler.getTimings(row.getCommandId());
+		if (timings == null)
+			return "";
+		LatencyHistogram total = timings.getHistogram(KeyDispatchTimings.Phase.TOTAL);
+		switch (column) {
+		case DISPATCH_P50:
+			return KeyDispatchTimings.format(total.getPercentile(50));
+		case DISPATCH_P99:
+			return KeyDispatchTimings.format(total.getPercentile(99));
+		default:
+			return KeyDispatchTimings.format(total.getMax());
+		}
+	}
+
+	/** @return the detail of each phase of the key dispatch, or null if the cell has no tooltip */
+	public String getToolTipText(Object element, Column column) {
+		if ((element instanceof BindingRow) && BindingDataProvider.isDispatchColumn(column)) {
+			KeyDispatchTimings timings = profiler.getTimings(((BindingRow) element).getCommandId());
+			if (timings != null)
+				return timings.describe();
+		}
+		return null;
+	}
+
+	/**
+	 * @param renderer
+	 *            the render stage of the viewer, or null to render the rows here
+	 */
+	public StyledString getStyledText(Object element, Column column, BindingRowRenderer renderer) {
+		StyledString styledString = new StyledString();
+
+		if (element instanceof BindingRow) {
+			BindingRow row = (BindingRow) element;
+			if (BindingDataProvider.isDispatchColumn(column))
+				return new StyledString(getDispatchText(row, column));
+			// A matching row is displayed without style, no need for its cell
+			if (contextFilter.matchText(row, column))
+				return new StyledString(row.getText(column));
+
+			// Copy the cell prepared by the renderer, the plain text until it is ready
+			BindingRowRenderer.Cell cell = (renderer != null) ? renderer.getCell(row, column)
+					: BindingRowRenderer.render(row, column);
+			if ((cell == null) || (cell == BindingRowRenderer.PENDING))
+				return new StyledString(row.getText(column));
+			styledString = new StyledString(cell.getText());
+			for (int i = 0; i < cell.getRangeCount(); i++) {
+				styledString.setStyle(cell.getStart(i), cell.getLength(i), stylers[cell.getStyle(i).ordinal()]);
+			}
+			return styledString;
+		} else if (element instanceof BindingIssue) {
+			BindingIssue issue = (BindingIssue) element;
+			if ((column == Column.STATE) && issue.getKind().isError())
+				styledString.append(issue.getText(column), stylers[BindingRowRenderer.Style.EXCEPTION.ordinal()]);
+			else
+				styledString.append(issue.getText(column));
+		} else if (element instanceof BindingDiff.Change) {
+			styledString.append(((BindingDiff.Change) element).getText(column));
+		} else if (element instanceof BindingHistory.Item) {
+			// The bindings changed since this time are colored in the state column
+			BindingHistory.Item item = (BindingHistory.Item) element;
+			BindingRowRenderer.Style style = null;
+			if ((column == Column.STATE) && (item.getStatus() == BindingHistory.Status.REMOVED))
+				style = BindingRowRenderer.Style.DISABLED;
+			else if ((column == Column.STATE) && (item.getStatus() == BindingHistory.Status.ADDED))
+				style = BindingRowRenderer.Style.ENABLED;
+			styledString.append(item.getText(column), (style == null) ? null : stylers[style.ordinal()]);
+		} else if (element instanceof BindingSnapshot.Row) {
+			// Decoded from the snapshot file, the values are not split into styled ranges
+			BindingSnapshot.Row row = (BindingSnapshot.Row) element;
+			styledString.append(row.getText(column),
+					row.isError(column) ? stylers[BindingRowRenderer.Style.EXCEPTION.ordinal()] : null);
+		} else {
+			if (column == Column.TRIGGER_SEQUENCE)
+				styledString.append(String.valueOf(element));
+		}
+
+		// do not use style for matching text
+		String text = styledString.toString();
+		if (contextFilter.matchText(text))
+			return new StyledString(text);
+
+		return styledString;
+	}
+
+}
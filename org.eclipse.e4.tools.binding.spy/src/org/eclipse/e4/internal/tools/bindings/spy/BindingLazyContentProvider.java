@@ -0,0 +1,564 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+/**
+ * The lazy content provider of the virtual binding tree : only the visible
+ * rows are asked, created and labelled by the viewer. As a lazy viewer does
+ * not filter nor sort its elements, this provider keeps for each node the
+ * filtered and sorted positions of its rows in the BindingRowModel.
+ *
+ * The input of the viewer is the displayed context : its model can then be
+ * replaced by an update, only the changed rows are removed and inserted in the
+ * viewer (see applyDelta).
+ *
+ * The ANALYSIS node lists the issues found by the BindingAnalysis for the
+ * displayed context, they are computed again on each refresh. When a second
+ * context is compared with the displayed one, the DIFFERENCES node lists the
+ * BindingDiff of their active bindings. When a past time of the BindingHistory
+ * is selected, the HISTORY node lists the bindings of the displayed context at
+ * that time.
+ *
+ * The input can also be a context of an opened BindingSnapshot : its rows are
+ * read from the file when they are displayed, they are neither filtered nor
+ * sorted as this would decode them all.
+ *
+ * @see BindingDataPart
+ */
+public class BindingLazyContentProvider implements ILazyTreeContentProvider {
+
+	private static final Object[] NO_NODES = new Object[0];
+
+	private final BindingModelRegistry modelRegistry;
+
+	/** The analysis of the ANALYSIS node, or null for no such node */
+	private final BindingAnalysis analysis;
+
+	private TreeViewer viewer;
+
+	/** The model of the displayed context, possibly newer than the one used at input time */
+	private BindingRowModel model;
+
+	/** The ACTIVE_BINDINGS, CONFLICT_BINDINGS, ANALYSIS, DIFFERENCES and HISTORY nodes displayed for the model */
+	private Object[] nodes = NO_NODES;
+
+	/** The filtered and sorted positions of the rows of each node, computed on demand */
+	private final Map<Object, int[]> views = new HashMap<>();
+
+	/** Incremented when the filter or the sort changes : views of another generation are stale */
+	private int viewGeneration;
+
+	private ViewerFilter filter;
+
+	private BindingDataPart.BindingEntryComparator comparator;
+
+	/** The sequence whose fired binding is displayed in the ANALYSIS node, or null */
+	private TriggerSequence query;
+
+	/** The children of the ANALYSIS node, computed on demand */
+	private List<?> analysisItems;
+
+	/** The context compared with the displayed one, or null for no DIFFERENCES node */
+	private IEclipseContext comparedContext;
+
+	/** The children of the DIFFERENCES node, computed on demand */
+	private BindingDiff diff;
+
+	/** The past state of the HISTORY node, or null for no such node */
+	private BindingHistory.Snapshot history;
+
+	/** The context of an opened snapshot displayed instead of a model, or null */
+	private BindingSnapshot.Context snapshotContext;
+
+	/**
+	 * @param analysis
+	 *            the analysis displayed in the ANALYSIS node, or null for no
+	 *            ANALYSIS node
+	 */
+	public BindingLazyContentProvider(BindingModelRegistry modelRegistry, BindingAnalysis analysis) {
+		this.modelRegistry = modelRegistry;
+		this.analysis = analysis;
+	}
+
+	@Override
+	public void inputChanged(Viewer v, Object oldInput, Object newInput) {
+		viewer = (TreeViewer) v;
+		if (newInput instanceof IEclipseContext)
+			model = modelRegistry.getModel((IEclipseContext) newInput);
+		else if (newInput instanceof BindingRowModel)
+			model = (BindingRowModel) newInput;
+		else
+			model = null;
+		snapshotContext = (newInput instanceof BindingSnapshot.Context) ? (BindingSnapshot.Context) newInput : null;
+		nodes = getNodes(model);
+		views.clear();
+		analysisItems = null;
+		diff = null;
+	}
+
+	/** @return the model currently displayed, or null */
+	public BindingRowModel getModel() {
+		return model;
+	}
+
+	private Object[] getNodes(BindingRowModel model) {
+		List<Object> newNodes = new ArrayList<>(4);
+		if (model != null) {
+			if (!model.getActiveRows().isEmpty())
+				newNodes.add(BindingDataProvider.ACTIVE_BINDINGS);
+			if (!model.getConflictRows().isEmpty())
+				newNodes.add(BindingDataProvider.CONFLICT_BINDINGS);
+			if (analysis != null)
+				newNodes.add(BindingDataProvider.ANALYSIS);
+			if (comparedContext != null)
+				newNodes.add(BindingDataProvider.DIFFERENCES);
+			if ((history != null) && (history.getContext() == model.getContext()))
+				newNodes.add(BindingDataProvider.HISTORY);
+		} else if (snapshotContext != null) {
+			if (snapshotContext.getActiveCount() > 0)
+				newNodes.add(BindingDataProvider.ACTIVE_BINDINGS);
+			if (snapshotContext.getConflictCount() > 0)
+				newNodes.add(BindingDataProvider.CONFLICT_BINDINGS);
+		}
+		return newNodes.toArray();
+	}
+
+	@Override
+	public void dispose() {
+		model = null;
+		snapshotContext = null;
+		views.clear();
+		analysisItems = null;
+		diff = null;
+		history = null;
+	}
+
+	/** Set the filter applied on rows (null for no filter). Call refresh on viewer then */
+	public void setFilter(ViewerFilter filter) {
+		this.filter = filter;
+		views.clear();
+		viewGeneration++;
+	}
+
+	/** Set the comparator used to sort rows (null for model order). Call refresh on viewer then */
+	public void setComparator(BindingDataPart.BindingEntryComparator comparator) {
+		this.comparator = comparator;
+		views.clear();
+		viewGeneration++;
+	}
+
+	/**
+	 * Reverse the rows already sorted, when the comparator only changed its
+	 * direction. Call refresh on viewer then
+	 */
+	public void reverseViews() {
+		for (int[] view : views.values()) {
+			BindingDataPart.reverse(view);
+		}
+		viewGeneration++;
+	}
+
+	/** Forget the filtered and sorted rows, they will be computed again on next access */
+	public void clearViews() {
+		views.clear();
+		analysisItems = null;
+		viewGeneration++;
+	}
+
+	/** @return the generation of the filter and sort used to compute the views */
+	public int getViewGeneration() {
+		return viewGeneration;
+	}
+
+	/** @return the views already computed for the displayed model */
+	public Map<Object, int[]> getViews() {
+		return new HashMap<>(views);
+	}
+
+	/**
+	 * Reuse views computed for the displayed model with the current
+	 * generation, before the viewer asks them
+	 */
+	public void setViews(Map<Object, int[]> computedViews) {
+		views.clear();
+		views.putAll(computedViews);
+	}
+
+	/** Set the sequence whose fired binding is displayed in the ANALYSIS node (null for none) */
+	public void setQuery(TriggerSequence query) {
+		this.query = query;
+		analysisItems = null;
+	}
+
+	/** Compute the issues of the ANALYSIS node again and refresh it */
+	public void refreshAnalysis() {
+		analysisItems = null;
+		if (Arrays.asList(nodes).contains(BindingDataProvider.ANALYSIS)) {
+			viewer.setChildCount(BindingDataProvider.ANALYSIS, getAnalysisItems().size());
+			viewer.refresh(BindingDataProvider.ANALYSIS);
+		}
+	}
+
+	/** @return the issues of the displayed model, or the pending message while the trie is built */
+	private List<?> getAnalysisItems() {
+		if (analysisItems == null) {
+			List<BindingIssue> issues = (model == null) ? null : analysis.analyze(model, query);
+			if (issues != null)
+				analysisItems = issues;
+			else
+				return Arrays.asList(BindingDataProvider.ANALYSIS_PENDING);
+		}
+		return analysisItems;
+	}
+
+	/**
+	 * Set the context compared with the displayed one (null for none). Set
+	 * the input of the viewer then
+	 */
+	public void setComparedContext(IEclipseContext context) {
+		comparedContext = context;
+		diff = null;
+	}
+
+	public IEclipseContext getComparedContext() {
+		return comparedContext;
+	}
+
+	/** Compute the differences again if one of the models has changed, and refresh the DIFFERENCES node */
+	public void refreshDifferences() {
+		if (Arrays.asList(nodes).contains(BindingDataProvider.DIFFERENCES)) {
+			viewer.setChildCount(BindingDataProvider.DIFFERENCES, getDifferences().size());
+			viewer.refresh(BindingDataProvider.DIFFERENCES);
+		}
+	}
+
+	/** @return the changes between the displayed model and the current model of the compared context */
+	private List<BindingDiff.Change> getDifferences() {
+		BindingRowModel compared = modelRegistry.getModel(comparedContext);
+		if ((diff == null) || (diff.getLeft() != model) || (diff.getRight() != compared))
+			diff = BindingDiff.compute(model, compared);
+		return diff.getChanges();
+	}
+
+	/**
+	 * Display a past state of the displayed context in the HISTORY node (null
+	 * for no HISTORY node), the viewer is refreshed
+	 */
+	public void setHistory(BindingHistory.Snapshot snapshot) {
+		history = snapshot;
+		Object[] newNodes = getNodes(model);
+		if (!Arrays.equals(nodes, newNodes)) {
+			nodes = newNodes;
+			viewer.refresh();
+		} else if (Arrays.asList(nodes).contains(BindingDataProvider.HISTORY)) {
+			viewer.setChildCount(BindingDataProvider.HISTORY, history.getItems().size());
+			viewer.refresh(BindingDataProvider.HISTORY);
+		}
+	}
+
+	@Override
+	public void updateElement(Object parent, int index) {
+		if (parent == viewer.getInput()) {
+			if (index < nodes.length) {
+				viewer.replace(parent, index, nodes[index]);
+				viewer.setHasChildren(nodes[index], true);
+			}
+			return;
+		}
+
+		if (parent == BindingDataProvider.ANALYSIS) {
+			List<?> items = getAnalysisItems();
+			if (index < items.size()) {
+				viewer.replace(parent, index, items.get(index));
+				viewer.setChildCount(items.get(index), 0);
+			}
+			return;
+		}
+
+		if (parent == BindingDataProvider.DIFFERENCES) {
+			List<BindingDiff.Change> changes = getDifferences();
+			if (index < changes.size()) {
+				viewer.replace(parent, index, changes.get(index));
+				viewer.setChildCount(changes.get(index), 0);
+			}
+			return;
+		}
+
+		if (parent == BindingDataProvider.HISTORY) {
+			List<BindingHistory.Item> items = history.getItems();
+			if (index < items.size()) {
+				viewer.replace(parent, index, items.get(index));
+				viewer.setChildCount(items.get(index), 0);
+			}
+			return;
+		}
+
+		if (snapshotContext != null) {
+			// Only the row is located here, its values are decoded when it is labelled
+			int first = (parent == BindingDataProvider.CONFLICT_BINDINGS) ? snapshotContext.getActiveCount() : 0;
+			if (index < getSnapshotCount(parent)) {
+				BindingSnapshot.Row row = snapshotContext.getRow(first + index);
+				viewer.replace(parent, index, row);
+				viewer.setChildCount(row, 0);
+			}
+			return;
+		}
+
+		int[] view = getView(parent);
+		if (index < view.length) {
+			BindingRow row = model.getRows(parent).get(view[index]);
+			viewer.replace(parent, index, row);
+			viewer.setChildCount(row, 0);
+		}
+	}
+
+	@Override
+	public void updateChildCount(Object element, int currentChildCount) {
+		int count;
+		if (element == viewer.getInput())
+			count = nodes.length;
+		else if ((element == BindingDataProvider.ACTIVE_BINDINGS) || (element == BindingDataProvider.CONFLICT_BINDINGS))
+			count = (snapshotContext != null) ? getSnapshotCount(element) : getView(element).length;
+		else if (element == BindingDataProvider.ANALYSIS)
+			count = getAnalysisItems().size();
+		else if (element == BindingDataProvider.DIFFERENCES)
+			count = getDifferences().size();
+		else if (element == BindingDataProvider.HISTORY)
+			count = history.getItems().size();
+		else
+			count = 0;
+
+		if (count != currentChildCount)
+			viewer.setChildCount(element, count);
+	}
+
+	/** @return the number of rows of a node of the displayed snapshot context, read in its table */
+	private int getSnapshotCount(Object node) {
+		return (node == BindingDataProvider.CONFLICT_BINDINGS) ? snapshotContext.getConflictCount()
+				: snapshotContext.getActiveCount();
+	}
+
+	@Override
+	public Object getParent(Object element) {
+		if (element instanceof BindingSnapshot.Row) {
+			return ((BindingSnapshot.Row) element).isConflict() ? BindingDataProvider.CONFLICT_BINDINGS
+					: BindingDataProvider.ACTIVE_BINDINGS;
+		}
+		if (element instanceof BindingRow) {
+			return (((BindingRow) element).getIndex() < model.getActiveRows().size())
+					? BindingDataProvider.ACTIVE_BINDINGS : BindingDataProvider.CONFLICT_BINDINGS;
+		}
+		if ((element instanceof BindingIssue) || (element == BindingDataProvider.ANALYSIS_PENDING))
+			return BindingDataProvider.ANALYSIS;
+		if (element instanceof BindingDiff.Change)
+			return BindingDataProvider.DIFFERENCES;
+		if (element instanceof BindingHistory.Item)
+			return BindingDataProvider.HISTORY;
+		if ((element == BindingDataProvider.ACTIVE_BINDINGS) || (element == BindingDataProvider.CONFLICT_BINDINGS)
+				|| (element == BindingDataProvider.ANALYSIS) || (element == BindingDataProvider.DIFFERENCES)
+				|| (element == BindingDataProvider.HISTORY))
+			return viewer.getInput();
+		return null;
+	}
+
+	/**
+	 * Replace the displayed model by its update : the removed rows are removed
+	 * from the viewer and the new ones are inserted at their sorted position,
+	 * the other rows are left untouched.
+	 *
+	 * @return false if the delta does not apply to the displayed model
+	 */
+	public boolean applyDelta(BindingModelDelta delta) {
+		if ((model == null) || (delta.getOldModel() != model))
+			return false;
+
+		BindingRowModel oldModel = model;
+		model = delta.getNewModel();
+		Object[] newNodes = getNodes(model);
+		if (!Arrays.equals(nodes, newNodes)) {
+			// A node appears or disappears, the tree structure changes
+			nodes = newNodes;
+			views.clear();
+			analysisItems = null;
+			diff = null;
+			viewer.refresh();
+			return true;
+		}
+
+		for (Object node : nodes) {
+			if (node == BindingDataProvider.ANALYSIS) {
+				refreshAnalysis();
+				continue;
+			}
+			if (node == BindingDataProvider.DIFFERENCES) {
+				refreshDifferences();
+				continue;
+			}
+			if (node == BindingDataProvider.HISTORY)
+				continue; // Compared with the new state by the next setHistory
+			int[] oldView = views.get(node);
+			if (oldView == null)
+				continue; // Never displayed, will be computed on demand
+			int[] newView = updateView(node, oldModel, oldView, delta);
+			views.put(node, newView);
+			if (!viewer.getExpandedState(node) || !applyView(node, oldModel, oldView, newView, delta)) {
+				viewer.setChildCount(node, newView.length);
+				viewer.refresh(node);
+			}
+		}
+		return true;
+	}
+
+	/** @return the index in its model of the first row of a node */
+	private static int getFirstIndex(BindingRowModel m, Object node) {
+		return (node == BindingDataProvider.CONFLICT_BINDINGS) ? m.getActiveRows().size() : 0;
+	}
+
+	/**
+	 * Compute the new positions of a node : the rows kept keep their order and
+	 * filter state, only the new rows are filtered and merged into them.
+	 */
+	private int[] updateView(Object node, BindingRowModel oldModel, int[] oldView, BindingModelDelta delta) {
+		int oldFirst = getFirstIndex(oldModel, node);
+		int newFirst = getFirstIndex(model, node);
+		List<BindingRow> rows = model.getRows(node);
+
+		int[] kept = new int[oldView.length];
+		int keptCount = 0;
+		for (int p : oldView) {
+			int newIndex = delta.getNewIndex(oldFirst + p);
+			if (newIndex >= 0)
+				kept[keptCount++] = newIndex - newFirst;
+		}
+		kept = Arrays.copyOf(kept, keptCount);
+
+		int[] added = new int[rows.size()];
+		int addedCount = 0;
+		for (int q = 0; q < rows.size(); q++) {
+			if ((delta.getOldIndex(newFirst + q) < 0) && select(node, rows.get(q)))
+				added[addedCount++] = q;
+		}
+		added = Arrays.copyOf(added, addedCount);
+
+		if (comparator != null) {
+			comparator.sort(model, rows, added);
+			return comparator.merge(model, rows, kept, added);
+		}
+		int[] merged = Arrays.copyOf(kept, keptCount + addedCount);
+		System.arraycopy(added, 0, merged, keptCount, addedCount);
+		Arrays.sort(merged);
+		return merged;
+	}
+
+	/**
+	 * Remove and insert the changed rows of an expanded node
+	 *
+	 * @return false if the kept rows have been reordered, the node must then
+	 *         be refreshed
+	 */
+	private boolean applyView(Object node, BindingRowModel oldModel, int[] oldView, int[] newView,
+			BindingModelDelta delta) {
+		int oldFirst = getFirstIndex(oldModel, node);
+		int newFirst = getFirstIndex(model, node);
+		List<BindingRow> oldRows = oldModel.getRows(node);
+		List<BindingRow> rows = model.getRows(node);
+
+		// The kept rows must be in the same order in both views
+		int lastOldPosition = -1;
+		int[] oldPositions = new int[oldRows.size()];
+		for (int i = 0; i < oldView.length; i++) {
+			oldPositions[oldView[i]] = i;
+		}
+		for (int q : newView) {
+			int oldIndex = delta.getOldIndex(newFirst + q);
+			if (oldIndex < 0)
+				continue;
+			int oldPosition = oldPositions[oldIndex - oldFirst];
+			if (oldPosition < lastOldPosition)
+				return false;
+			lastOldPosition = oldPosition;
+		}
+
+		// Remove from the end so that the positions still to remove are unchanged
+		for (int i = oldView.length - 1; i >= 0; i--) {
+			if (delta.getNewIndex(oldFirst + oldView[i]) < 0)
+				viewer.remove(node, i);
+		}
+
+		// Insert in ascending order, each row is then inserted at its final position
+		for (int i = 0; i < newView.length; i++) {
+			BindingRow row = rows.get(newView[i]);
+			int oldIndex = delta.getOldIndex(newFirst + newView[i]);
+			if (oldIndex < 0) {
+				viewer.insert(node, row, i);
+				viewer.setChildCount(row, 0);
+			} else {
+				// A kept row may have moved in the model : update the items
+				// already created, the others get the new row on demand
+				BindingRow oldRow = oldRows.get(oldIndex - oldFirst);
+				if ((oldRow != row) && (viewer.testFindItem(oldRow) != null))
+					viewer.replace(node, i, row);
+			}
+		}
+		return true;
+	}
+
+	/** @return the positions of the displayed rows of this node in the model */
+	private int[] getView(Object node) {
+		int[] view = views.get(node);
+		if (view == null) {
+			view = computeView(node);
+			views.put(node, view);
+		}
+		return view;
+	}
+
+	private int[] computeView(Object node) {
+		if (model == null)
+			return new int[0];
+
+		List<BindingRow> rows = model.getRows(node);
+		int[] selected = new int[rows.size()];
+		int count = 0;
+		for (int i = 0; i < rows.size(); i++) {
+			if (select(node, rows.get(i)))
+				selected[count++] = i;
+		}
+		selected = Arrays.copyOf(selected, count);
+
+		if (comparator != null)
+			comparator.sort(model, rows, selected);
+		return selected;
+	}
+
+	private boolean select(Object node, BindingRow row) {
+		if (filter == null)
+			return true;
+		// The filter must check the rows of this model, not of the viewer input
+		if (filter instanceof BindingDataFilter)
+			return ((BindingDataFilter) filter).select(model, row);
+		return filter.select(viewer, node, row);
+	}
+
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+/**
+ * The difference between two successive models of a context : the rows kept
+ * from the old model (possibly at another index), the rows removed and the
+ * rows added. It is computed by BindingRowModel.update and lets the viewer
+ * apply only the affected rows.
+ */
+public final class BindingModelDelta {
+
+	private final BindingRowModel oldModel;
+	private final BindingRowModel newModel;
+
+	/** For each row of the new model, the index of the same row in the old model or -1 */
+	private final int[] oldIndexes;
+
+	/** For each row of the old model, the index of the same row in the new model or -1 */
+	private final int[] newIndexes;
+
+	private final int addedCount;
+	private final int removedCount;
+	private final boolean moved;
+
+	BindingModelDelta(BindingRowModel oldModel, BindingRowModel newModel, int[] oldIndexes, int[] newIndexes) {
+		this.oldModel = oldModel;
+		this.newModel = newModel;
+		this.oldIndexes = oldIndexes;
+		this.newIndexes = newIndexes;
+
+		int added = 0;
+		boolean rowMoved = false;
+		for (int i = 0; i < oldIndexes.length; i++) {
+			if (oldIndexes[i] < 0)
+				added++;
+			else if (oldIndexes[i] != i)
+				rowMoved = true;
+		}
+		int kept = oldIndexes.length - added;
+		addedCount = added;
+		removedCount = newIndexes.length - kept;
+		moved = rowMoved;
+	}
+
+	public BindingRowModel getOldModel() {
+		return oldModel;
+	}
+
+	public BindingRowModel getNewModel() {
+		return newModel;
+	}
+
+	/** @return the index in the old model of the row at this index in the new model, or -1 if it is new */
+	public int getOldIndex(int newIndex) {
+		return oldIndexes[newIndex];
+	}
+
+	/** @return the index in the new model of the row at this index in the old model, or -1 if it is removed */
+	public int getNewIndex(int oldIndex) {
+		return newIndexes[oldIndex];
+	}
+
+	/** @return the number of rows created in the new model (new or changed bindings) */
+	public int getAddedCount() {
+		return addedCount;
+	}
+
+	/** @return the number of rows of the old model that are not in the new one */
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	/** @return true if both models display exactly the same rows at the same indexes */
+	public boolean isEmpty() {
+		return (addedCount == 0) && (removedCount == 0) && !moved;
+	}
+
+	@Override
+	public String toString() {
+		return "+" + addedCount + " -" + removedCount + " rows in " + newModel.getContext();
+	}
+
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+/**
+ * Keeps the BindingRowModel of each context already visited (the contexts are
+ * weakly referenced). A model is rebuilt only when it is invalidated or when
+ * the binding service of its context has changed.
+ *
+ * A model marked as stale is kept : it is updated from its bindings when it is
+ * used again, so the models that are not displayed cost nothing on a change.
+ */
+@Creatable
+@Singleton
+public class BindingModelRegistry {
+
+	/** Notified when the models of a context must be rebuilt or have been updated */
+	public interface IModelListener {
+		/**
+		 * @param context
+		 *            the context whose model is invalid or updated, or null if
+		 *            all the models are invalid
+		 */
+		void modelInvalidated(IEclipseContext context);
+	}
+
+	/** Notified when a stale model has been updated on its next use */
+	public interface IModelUpdateListener {
+		/**
+		 * @param delta
+		 *            the non empty difference with the stale model
+		 */
+		void modelUpdated(IEclipseContext context, BindingModelDelta delta);
+	}
+
+	private final Map<IEclipseContext, BindingRowModel> models = new WeakHashMap<>();
+
+	/**
+	 * The contexts whose model must be updated on next use, with the commands
+	 * changed meanwhile (null for all), guarded by models
+	 */
+	private final Map<IEclipseContext, Set<String>> staleModels = new WeakHashMap<>();
+
+	private final CopyOnWriteArrayList<IModelListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final CopyOnWriteArrayList<IModelUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+
+	/** @return the current model of this context, built if necessary */
+	public BindingRowModel getModel(IEclipseContext context) {
+		boolean stale;
+		synchronized (models) {
+			BindingRowModel model = models.get(context);
+			stale = staleModels.containsKey(context);
+			if ((model != null) && !stale && model.isCurrent())
+				return model;
+		}
+
+		if (stale) {
+			BindingModelDelta delta = update(context, Collections.<String> emptySet());
+			if ((delta != null) && !delta.isEmpty())
+				fireUpdated(context, delta);
+			BindingRowModel model = getCachedModel(context);
+			if ((model != null) && model.isCurrent())
+				return model;
+		}
+
+		// Build outside the lock, the context may call back other code
+		BindingRowModel model = BindingRowModel.build(context);
+		synchronized (models) {
+			models.put(context, model);
+		}
+		return model;
+	}
+
+	/**
+	 * @return the model of this context if it is built, current and not
+	 *         stale, or null : it is got without any call to the context
+	 *         bindings
+	 */
+	public BindingRowModel getCurrentModel(IEclipseContext context) {
+		synchronized (models) {
+			BindingRowModel model = models.get(context);
+			return ((model != null) && !staleModels.containsKey(context) && model.isCurrent()) ? model : null;
+		}
+	}
+
+	/** @return the model of this context if it is already built, or null */
+	public BindingRowModel getCachedModel(IEclipseContext context) {
+		synchronized (models) {
+			return models.get(context);
+		}
+	}
+
+	/** @return the contexts whose model is already built */
+	public List<IEclipseContext> getCachedContexts() {
+		synchronized (models) {
+			return new ArrayList<>(models.keySet());
+		}
+	}
+
+	/**
+	 * @param commandIds
+	 *            the changed commands
+	 * @return the contexts whose model is already built and binds one of
+	 *         these commands
+	 */
+	public List<IEclipseContext> getCachedContexts(Collection<String> commandIds) {
+		List<IEclipseContext> result = new ArrayList<>();
+		synchronized (models) {
+			for (Map.Entry<IEclipseContext, BindingRowModel> entry : models.entrySet()) {
+				if (entry.getValue().containsAnyCommand(commandIds))
+					result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Mark the models already built, except the given ones, as stale : each
+	 * one is updated when it is used again instead of now
+	 *
+	 * @param changedCommandIds
+	 *            the commands whose rows must be resolved again, or null for
+	 *            all
+	 */
+	public void markStale(Set<String> changedCommandIds, Collection<IEclipseContext> except) {
+		synchronized (models) {
+			for (IEclipseContext context : models.keySet()) {
+				if (except.contains(context))
+					continue;
+				if (staleModels.containsKey(context))
+					staleModels.put(context, union(staleModels.get(context), changedCommandIds));
+				else
+					staleModels.put(context, (changedCommandIds == null) ? null : new HashSet<>(changedCommandIds));
+			}
+		}
+	}
+
+	/** @return the stale commands with the other ones added, null meaning all of them */
+	private static Set<String> union(Set<String> staleIds, Set<String> otherIds) {
+		if ((staleIds == null) || (otherIds == null))
+			return null;
+		staleIds.addAll(otherIds);
+		return staleIds;
+	}
+
+	/**
+	 * Update the model of this context from its current bindings, reusing the
+	 * rows that have not changed.
+	 *
+	 * @param changedCommandIds
+	 *            the commands whose rows must be resolved again, or null for
+	 *            all
+	 * @return the difference with the previous model, or null if the model of
+	 *         this context is not built yet
+	 */
+	public BindingModelDelta update(IEclipseContext context, Set<String> changedCommandIds) {
+		BindingRowModel oldModel;
+		synchronized (models) {
+			oldModel = models.get(context);
+			if (oldModel == null)
+				return null;
+			// The changes missed by a stale model are applied too
+			if (staleModels.containsKey(context))
+				changedCommandIds = union(staleModels.remove(context), changedCommandIds);
+		}
+
+		BindingModelDelta delta = oldModel.update(changedCommandIds);
+		if (delta.isEmpty())
+			return delta;
+		synchronized (models) {
+			// Another thread may have rebuilt it meanwhile, keep the newest
+			if (models.get(context) == oldModel)
+				models.put(context, delta.getNewModel());
+		}
+		fireInvalidated(context);
+		return delta;
+	}
+
+	/** Forget the model of this context, it will be rebuilt on next access */
+	public void invalidate(IEclipseContext context) {
+		synchronized (models) {
+			models.remove(context);
+			staleModels.remove(context);
+		}
+		fireInvalidated(context);
+	}
+
+	/** Forget all the models */
+	public void invalidateAll() {
+		synchronized (models) {
+			models.clear();
+			staleModels.clear();
+		}
+		fireInvalidated(null);
+	}
+
+	public void addModelListener(IModelListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeModelListener(IModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	public void addModelUpdateListener(IModelUpdateListener listener) {
+		updateListeners.addIfAbsent(listener);
+	}
+
+	public void removeModelUpdateListener(IModelUpdateListener listener) {
+		updateListeners.remove(listener);
+	}
+
+	private void fireUpdated(IEclipseContext context, BindingModelDelta delta) {
+		for (IModelUpdateListener listener : updateListeners) {
+			listener.modelUpdated(context, delta);
+		}
+	}
+
+	private void fireInvalidated(IEclipseContext context) {
+		for (IModelListener listener : listeners) {
+			listener.modelInvalidated(context);
+		}
+	}
+
+}
@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+
+/**
+ * The compiled query of the search text. The terms are separated by spaces
+ * and a row must match all of them, the case is ignored :
+ * <ul>
+ * <li><code>refactor</code> : one of the displayed columns contains it</li>
+ * <li><code>key:ctrl+shift</code> : the column is given by the prefix, one of
+ * key, cmd, handler, state, category or context</li>
+ * <li><code>-state:disabled</code> : the row must not match the term</li>
+ * <li><code>/ctrl\+[a-c]$/</code> : a regular expression found in the column</li>
+ * <li><code>rename|format|debug</code> : one of these words, searched at once</li>
+ * <li><code>"ctrl+x ctrl+s"</code> : a text with spaces</li>
+ * </ul>
+ * The query is compiled once per search text. It is evaluated on the lower
+ * case texts already stored in the rows, and the positive terms are first
+ * resolved with the search index of the model. It is immutable.
+ */
+public final class BindingQuery {
+
+	private static final Map<String, Column> FIELDS = new HashMap<>();
+
+	static {
+		FIELDS.put("key", Column.TRIGGER_SEQUENCE);
+		FIELDS.put("cmd", Column.COMMAND_DESCRIPTION);
+		FIELDS.put("command", Column.COMMAND_DESCRIPTION);
+		FIELDS.put("handler", Column.COMMAND_HANDLER);
+		FIELDS.put("state", Column.STATE);
+		FIELDS.put("category", Column.CATEGORY);
+		FIELDS.put("cat", Column.CATEGORY);
+		FIELDS.put("context", Column.BINDING_CONTEXT_ID);
+		FIELDS.put("ctx", Column.BINDING_CONTEXT_ID);
+	}
+
+	/** One predicate of the query, on one column or on all the displayed ones */
+	private static final class Term {
+		/** The column searched, or null for all the searched columns */
+		final Column column;
+		final boolean negated;
+
+		/* Exactly one of them is set */
+		final String literal;
+		final KeywordMatcher keywords;
+		final Pattern regex;
+
+		/** The literal or the keywords, one of them is in every matching row */
+		final List<String> alternatives;
+
+		Term(Column column, boolean negated, String literal, List<String> alternatives, Pattern regex) {
+			this.column = column;
+			this.negated = negated;
+			this.literal = literal;
+			this.regex = regex;
+			if (literal != null)
+				this.alternatives = Collections.singletonList(literal);
+			else
+				this.alternatives = alternatives;
+			this.keywords = (alternatives != null) ? new KeywordMatcher(alternatives) : null;
+		}
+
+		/** @return the rows containing one of the alternatives in one of their columns */
+		BitSet findCandidates(BindingSearchIndex index) {
+			BitSet rows = null;
+			for (String alternative : alternatives) {
+				if (rows == null)
+					rows = index.find(alternative);
+				else
+					rows.or(index.find(alternative));
+			}
+			return rows;
+		}
+
+		boolean matches(String lowerText) {
+			if (literal != null)
+				return lowerText.contains(literal);
+			if (keywords != null)
+				return keywords.matches(lowerText);
+			return regex.matcher(lowerText).find();
+		}
+
+		boolean matches(BindingRow row) {
+			if (column != null)
+				return matches(row.getLowerText(column));
+			if (regex == null)
+				return matches(row.getSearchText()); // No match spans two columns
+			for (Column c : BindingRow.SEARCHED_COLUMNS) {
+				if (matches(row.getLowerText(c)))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private final String text;
+	private final Term[] terms;
+
+	/** The positive terms whose candidate rows are resolved with the search index */
+	private final Term[] indexedTerms;
+
+	/** The key sequence asked with key:, or null */
+	private final String sequenceText;
+
+	private BindingQuery(String text, List<Term> terms, String sequenceText) {
+		this.text = text;
+		this.terms = terms.toArray(new Term[terms.size()]);
+		List<Term> indexed = new ArrayList<>();
+		for (Term term : terms) {
+			if (!term.negated && (term.alternatives != null))
+				indexed.add(term);
+		}
+		this.indexedTerms = indexed.toArray(new Term[indexed.size()]);
+		this.sequenceText = sequenceText;
+	}
+
+	/** @return the compiled query of this search text, or null if it is empty */
+	public static BindingQuery compile(String text) {
+		if ((text == null) || (text.trim().length() == 0))
+			return null;
+
+		List<Term> terms = new ArrayList<>();
+		String sequenceText = null;
+		int i = 0;
+		int length = text.length();
+		while (i < length) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			boolean negated = false;
+			if ((text.charAt(i) == '-') && (i + 1 < length) && !Character.isWhitespace(text.charAt(i + 1))) {
+				negated = true;
+				i++;
+			}
+
+			Column column = null;
+			int colon = i;
+			while ((colon < length) && Character.isLetter(text.charAt(colon))) {
+				colon++;
+			}
+			if ((colon < length) && (text.charAt(colon) == ':')) {
+				column = FIELDS.get(text.substring(i, colon).toLowerCase(Locale.ENGLISH));
+				if (column != null)
+					i = colon + 1;
+			}
+
+			// The value : quoted, a regular expression, or up to the next space
+			String value;
+			boolean isRegex = false;
+			char first = (i < length) ? text.charAt(i) : ' ';
+			int end;
+			if ((first == '"') && ((end = text.indexOf('"', i + 1)) > 0)) {
+				value = text.substring(i + 1, end);
+				i = end + 1;
+			} else if ((first == '/') && ((end = regexEnd(text, i + 1)) > 0)) {
+				value = text.substring(i + 1, end);
+				isRegex = true;
+				i = end + 1;
+			} else {
+				end = i;
+				while ((end < length) && !Character.isWhitespace(text.charAt(end))) {
+					end++;
+				}
+				value = text.substring(i, end);
+				i = end;
+			}
+			if (value.length() == 0)
+				continue; // A term being typed, like "cmd:"
+
+			if ((column == Column.TRIGGER_SEQUENCE) && !negated && (sequenceText == null))
+				sequenceText = value;
+			terms.add(createTerm(column, negated, value, isRegex));
+		}
+		return new BindingQuery(text.toLowerCase(), terms, sequenceText);
+	}
+
+	/** @return the index of the slash closing a regular expression, followed by a space or the end */
+	private static int regexEnd(String text, int from) {
+		for (int i = from; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\')
+				i++;
+			else if ((c == '/') && ((i + 1 == text.length()) || Character.isWhitespace(text.charAt(i + 1))))
+				return i;
+		}
+		return -1;
+	}
+
+	private static Term createTerm(Column column, boolean negated, String value, boolean isRegex) {
+		if (isRegex) {
+			try {
+				// The case of the expression is kept : \S is not \s
+				return new Term(column, negated, null, null,
+						Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+			} catch (PatternSyntaxException e) {
+				// Not a regular expression (or not yet, while typing it) : search the text
+				return new Term(column, negated, ("/" + value + "/").toLowerCase(), null, null);
+			}
+		}
+
+		String lower = value.toLowerCase();
+		if (lower.indexOf('|') >= 0) {
+			List<String> keywords = new ArrayList<>();
+			for (String keyword : lower.split("\\|")) {
+				if (keyword.length() > 0)
+					keywords.add(keyword);
+			}
+			if (keywords.size() > 1)
+				return new Term(column, negated, null, keywords, null);
+			if (keywords.size() == 1)
+				lower = keywords.get(0);
+		}
+		return new Term(column, negated, lower, null, null);
+	}
+
+	/** @return the lower case search text */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the text of the key sequence asked : the value of key: if any,
+	 *         or else the whole search text
+	 */
+	public String getSequenceText() {
+		return (sequenceText != null) ? sequenceText : text;
+	}
+
+	/** @return true if the row matches all the terms */
+	public boolean matches(BindingRow row) {
+		for (Term term : terms) {
+			if (term.matches(row) == term.negated)
+				return false;
+		}
+		return true;
+	}
+
+	/** @return true if at least one row of the model matches, without building its search index */
+	public boolean anyMatch(BindingRowModel model) {
+		for (int i = 0; i < model.size(); i++) {
+			if (matches(model.getRow(i)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Find the matching rows of a model : the rows containing the literal or
+	 * one of the keywords of each positive term are found with the search
+	 * index, and only them are checked against all the terms.
+	 *
+	 * @return the indexes of the matching rows in the model
+	 */
+	public BitSet find(BindingRowModel model) {
+		BitSet candidates = null;
+		for (Term term : indexedTerms) {
+			BitSet rows = term.findCandidates(model.getSearchIndex());
+			if (candidates == null)
+				candidates = rows;
+			else
+				candidates.and(rows);
+			if (candidates.isEmpty())
+				return candidates;
+		}
+		if (candidates == null) {
+			candidates = new BitSet(model.size());
+			candidates.set(0, model.size());
+		}
+		if ((terms.length == 1) && (indexedTerms.length == 1) && (terms[0].column == null))
+			return candidates; // The index already checked the only term
+
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+			if (!matches(model.getRow(i)))
+				candidates.clear(i);
+		}
+		return candidates;
+	}
+
+	/** @return true if this column of the row is matched by one of the positive terms, to highlight it */
+	public boolean highlights(BindingRow row, Column column) {
+		String lowerText = row.getLowerText(column);
+		for (Term term : terms) {
+			if (!term.negated && ((term.column == null) || (term.column == column)) && term.matches(lowerText))
+				return true;
+		}
+		return false;
+	}
+
+	/** @return true if a text which is not a row column is matched by one of the positive terms */
+	public boolean highlights(String lowerText) {
+		for (Term term : terms) {
+			if (!term.negated && (term.column == null) && term.matches(lowerText))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Arrays;
+
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.jface.bindings.Binding;
+
+/**
+ * An immutable snapshot of one binding : all the column values are resolved
+ * once when the row is created, so that painting, sorting and filtering never
+ * go back to the command or to the context.
+ *
+ * @see BindingRowModel
+ */
+public final class BindingRow {
+
+	static final String EXCEPTION = "Exception : ";
+
+	private static final Column[] COLUMNS = Column.values();
+
+	/** The columns displayed in the binding viewer, the only ones searched */
+	static final Column[] SEARCHED_COLUMNS = { Column.TRIGGER_SEQUENCE, Column.COMMAND_DESCRIPTION,
+			Column.COMMAND_HANDLER, Column.STATE, Column.CATEGORY, Column.BINDING_CONTEXT_ID };
+
+	/** Separates the columns in the search text so that a match never spans two columns */
+	private static final char SEARCH_SEPARATOR = '\0';
+
+	private final Binding binding;
+
+	/** The index of this row in its BindingRowModel */
+	private final int index;
+
+	private final String commandId;
+	private final String commandName;
+	private final String commandDescription;
+	private final String commandError;
+
+	private final String contextHandler;
+	private final String handler;
+	private final boolean handled;
+
+	private final boolean enabled;
+
+	private final String category;
+	private final boolean categoryError;
+
+	/** The plain text of each column, indexed by Column ordinal */
+	private final String[] texts;
+
+	/** The lower case text of each column, indexed by Column ordinal */
+	private final String[] lowerTexts;
+
+	/** The lower case text of all the searched columns */
+	private final String searchText;
+
+	private BindingRow(Binding binding, IEclipseContext context, int index) {
+		this.binding = binding;
+		this.index = index;
+		ParameterizedCommand parameterizedCommand = binding.getParameterizedCommand();
+		Command cmd = parameterizedCommand.getCommand();
+
+		commandId = cmd.getId();
+		// Shared by the rows of all the contexts, without exception for the undefined commands
+		CommandMetadataCache.Metadata metadata = CommandMetadataCache.get(cmd);
+		commandName = metadata.getName();
+		commandDescription = metadata.getDescription();
+		commandError = metadata.getError();
+
+		Object ctxHandler = HandlerResolutionCache.get(context).getHandler(commandId);
+		contextHandler = (ctxHandler == null) ? null : String.valueOf(ctxHandler);
+		Object cmdHandler = cmd.getHandler();
+		handler = String.valueOf(cmdHandler);
+		handled = (ctxHandler != null) || (cmdHandler != null);
+
+		enabled = cmd.isEnabled();
+
+		category = metadata.getCategory();
+		categoryError = metadata.isCategoryError();
+
+		texts = new String[COLUMNS.length];
+		lowerTexts = new String[COLUMNS.length];
+		for (Column column : COLUMNS) {
+			String text = computeText(column);
+			texts[column.ordinal()] = text;
+			lowerTexts[column.ordinal()] = (text == null) ? "" : text.toLowerCase();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (Column column : SEARCHED_COLUMNS) {
+			sb.append(lowerTexts[column.ordinal()]).append(SEARCH_SEPARATOR);
+		}
+		searchText = sb.toString();
+	}
+
+	/** Copy a row at another index, all the resolved values are shared */
+	private BindingRow(BindingRow source, int index) {
+		this.binding = source.binding;
+		this.index = index;
+		commandId = source.commandId;
+		commandName = source.commandName;
+		commandDescription = source.commandDescription;
+		commandError = source.commandError;
+		contextHandler = source.contextHandler;
+		handler = source.handler;
+		handled = source.handled;
+		enabled = source.enabled;
+		category = source.category;
+		categoryError = source.categoryError;
+		texts = source.texts;
+		lowerTexts = source.lowerTexts;
+		searchText = source.searchText;
+	}
+
+	/**
+	 * Create the row of a binding, resolving its values in the given context
+	 *
+	 * @param index
+	 *            the index of the row in its model
+	 */
+	static BindingRow create(Binding binding, IEclipseContext context, int index) {
+		return new BindingRow(binding, context, index);
+	}
+
+	/** @return this row if it is already at this index, or a copy of it at this index */
+	BindingRow withIndex(int newIndex) {
+		return (newIndex == index) ? this : new BindingRow(this, newIndex);
+	}
+
+	/** @return true if the other row displays the same binding with the same values */
+	boolean hasSameContent(BindingRow other) {
+		return binding.equals(other.binding) && (categoryError == other.categoryError)
+				&& Arrays.equals(texts, other.texts);
+	}
+
+	private String computeText(Column column) {
+		switch (column) {
+		case TRIGGER_SEQUENCE:
+			return String.valueOf(binding.getTriggerSequence());
+		case COMMAND_DESCRIPTION:
+			return getCommandText(commandId, commandName, commandDescription, commandError);
+		case COMMAND_HANDLER:
+			return getHandlerText(contextHandler, handler);
+		case STATE:
+			return enabled ? "enabled" : "disabled";
+		case CATEGORY:
+			return category;
+		case BINDING_CONTEXT_ID:
+			return binding.getContextId();
+		case DISPATCH_P50:
+		case DISPATCH_P99:
+		case DISPATCH_MAX:
+			return null; // Measured while the rows live, see KeyDispatchProfiler
+		case TYPE:
+			return String.valueOf(binding.getType());
+		default:
+			return String.valueOf(binding);
+		}
+	}
+
+	/** @return the text of the COMMAND_DESCRIPTION column */
+	static String getCommandText(String commandId, String commandName, String commandDescription,
+			String commandError) {
+		if (commandError != null)
+			return commandId + commandError;
+		return commandId + " (" + commandName + ") " + ((commandDescription != null) ? " : " + commandDescription : "");
+	}
+
+	/** @return the text of the COMMAND_HANDLER column */
+	static String getHandlerText(String contextHandler, String handler) {
+		return (contextHandler != null) ? contextHandler + " : " + handler : handler;
+	}
+
+	public Binding getBinding() {
+		return binding;
+	}
+
+	/** @return the index of this row in its model (active rows first, then conflicts) */
+	public int getIndex() {
+		return index;
+	}
+
+	/** @return the plain text displayed for this column (never null) */
+	public String getText(Column column) {
+		String text = texts[column.ordinal()];
+		return (text == null) ? "" : text;
+	}
+
+	/** @return the lower case text of this column (never null) */
+	public String getLowerText(Column column) {
+		return lowerTexts[column.ordinal()];
+	}
+
+	/**
+	 * @return the lower case text of all the searched columns, separated by a
+	 *         character that can not be typed in a pattern
+	 */
+	public String getSearchText() {
+		return searchText;
+	}
+
+	/** @return true if the value of this column could not be resolved */
+	public boolean isError(Column column) {
+		switch (column) {
+		case COMMAND_DESCRIPTION:
+			return commandError != null;
+		case CATEGORY:
+			return categoryError;
+		default:
+			return false;
+		}
+	}
+
+	public String getCommandId() {
+		return commandId;
+	}
+
+	public String getCommandName() {
+		return commandName;
+	}
+
+	public String getCommandDescription() {
+		return commandDescription;
+	}
+
+	/** @return the exception message if the command is not defined, or null */
+	public String getCommandError() {
+		return commandError;
+	}
+
+	/** @return the handler found in the context for this command, or null */
+	public String getContextHandler() {
+		return contextHandler;
+	}
+
+	public String getHandler() {
+		return handler;
+	}
+
+	/** @return true if the command has a handler, in the context or in the command */
+	public boolean hasHandler() {
+		return handled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/** @return the category name, or the exception message if it is not defined */
+	public String getCategory() {
+		return category;
+	}
+
+	@Override
+	public String toString() {
+		return getText(Column.TRIGGER_SEQUENCE);
+	}
+
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+
+/**
+ * The immutable rows of a context : one BindingRow for each active binding and
+ * for each conflict. It is the input of the binding data viewer and must be
+ * rebuilt only when the bindings or the commands change.
+ */
+public final class BindingRowModel {
+
+	private final IEclipseContext context;
+	private final EBindingService bindingService;
+	private final List<BindingRow> activeRows;
+	private final List<BindingRow> conflictRows;
+
+	/** The commands of the rows, to update only the models of the changed commands */
+	private final Set<String> commandIds;
+
+	/** The n-gram index on the rows, built on the first search */
+	private BindingSearchIndex searchIndex;
+
+	private BindingRowModel(IEclipseContext context, EBindingService bindingService, List<BindingRow> activeRows,
+			List<BindingRow> conflictRows, Set<String> commandIds) {
+		this.context = context;
+		this.bindingService = bindingService;
+		this.activeRows = Collections.unmodifiableList(activeRows);
+		this.conflictRows = Collections.unmodifiableList(conflictRows);
+		this.commandIds = commandIds;
+	}
+
+	/** Build the rows of all the active and conflicting bindings of this context */
+	public static BindingRowModel build(IEclipseContext context) {
+		EBindingService bindingService = context.get(EBindingService.class);
+		if (bindingService == null)
+			return new BindingRowModel(context, null, new ArrayList<BindingRow>(0), new ArrayList<BindingRow>(0),
+					Collections.<String> emptySet());
+		return build(context, bindingService, bindingService.getActiveBindings(), bindingService.getAllConflicts());
+	}
+
+	static BindingRowModel build(IEclipseContext context, EBindingService bindingService,
+			Collection<Binding> activeBindings, Collection<Binding> conflicts) {
+		// All the handlers are resolved at once, then each row finds its handler in the cache
+		Set<String> commandIds = new HashSet<>();
+		addCommandIds(commandIds, activeBindings);
+		addCommandIds(commandIds, conflicts);
+		HandlerResolutionCache.get(context).resolve(commandIds);
+		return new BindingRowModel(context, bindingService, createRows(context, activeBindings, 0),
+				createRows(context, conflicts, activeBindings.size()), commandIds);
+	}
+
+	private static void addCommandIds(Set<String> commandIds, Collection<Binding> bindings) {
+		for (Binding binding : bindings) {
+			commandIds.add(binding.getParameterizedCommand().getId());
+		}
+	}
+
+	private static List<BindingRow> createRows(IEclipseContext context, Collection<Binding> bindings,
+			int firstIndex) {
+		List<BindingRow> rows = new ArrayList<>(bindings.size());
+		int index = firstIndex;
+		for (Binding binding : bindings) {
+			rows.add(BindingRow.create(binding, context, index++));
+		}
+		return rows;
+	}
+
+	/**
+	 * Build the model of the current bindings of the context, reusing the
+	 * rows of this model for the bindings that are still there. Only the rows
+	 * of new bindings and of the changed commands are resolved again.
+	 *
+	 * @param changedCommandIds
+	 *            the commands (or their handlers) that have changed since this
+	 *            model was built, or null if all of them may have changed
+	 * @return the difference between this model and the new one
+	 */
+	public BindingModelDelta update(Set<String> changedCommandIds) {
+		EBindingService service = context.get(EBindingService.class);
+		Collection<Binding> activeBindings = (service == null) ? Collections.<Binding> emptyList()
+				: service.getActiveBindings();
+		Collection<Binding> conflicts = (service == null) ? Collections.<Binding> emptyList()
+				: service.getAllConflicts();
+
+		int[] oldIndexes = new int[activeBindings.size() + conflicts.size()];
+		int[] newIndexes = new int[size()];
+		Arrays.fill(newIndexes, -1);
+		List<BindingRow> newActiveRows = updateRows(activeRows, activeBindings, 0, changedCommandIds, oldIndexes,
+				newIndexes);
+		List<BindingRow> newConflictRows = updateRows(conflictRows, conflicts, activeBindings.size(),
+				changedCommandIds, oldIndexes, newIndexes);
+		Set<String> newCommandIds = new HashSet<>();
+		addCommandIds(newCommandIds, activeBindings);
+		addCommandIds(newCommandIds, conflicts);
+		return new BindingModelDelta(this,
+				new BindingRowModel(context, service, newActiveRows, newConflictRows, newCommandIds), oldIndexes,
+				newIndexes);
+	}
+
+	private List<BindingRow> updateRows(List<BindingRow> previousRows, Collection<Binding> bindings, int firstIndex,
+			Set<String> changedCommandIds, int[] oldIndexes, int[] newIndexes) {
+		Map<Binding, BindingRow> previous = new HashMap<>(previousRows.size() * 4 / 3 + 1);
+		for (BindingRow row : previousRows) {
+			previous.put(row.getBinding(), row);
+		}
+
+		List<BindingRow> rows = new ArrayList<>(bindings.size());
+		int index = firstIndex;
+		for (Binding binding : bindings) {
+			// Removed from the map, so that a binding listed twice reuses its row once
+			BindingRow old = previous.remove(binding);
+			boolean reused = (old != null);
+			if (reused && ((changedCommandIds == null) || changedCommandIds.contains(old.getCommandId()))) {
+				// A changed command does not always change the values of its rows
+				BindingRow row = BindingRow.create(binding, context, index);
+				reused = row.hasSameContent(old);
+				if (!reused)
+					rows.add(row);
+			} else if (!reused) {
+				rows.add(BindingRow.create(binding, context, index));
+			}
+
+			if (reused) {
+				rows.add(old.withIndex(index));
+				oldIndexes[index] = old.getIndex();
+				newIndexes[old.getIndex()] = index;
+			} else {
+				oldIndexes[index] = -1;
+			}
+			index++;
+		}
+		return rows;
+	}
+
+	public IEclipseContext getContext() {
+		return context;
+	}
+
+	/**
+	 * @return true if this model has been built from the current binding
+	 *         service of its context
+	 */
+	public boolean isCurrent() {
+		return context.get(EBindingService.class) == bindingService;
+	}
+
+	public List<BindingRow> getActiveRows() {
+		return activeRows;
+	}
+
+	public List<BindingRow> getConflictRows() {
+		return conflictRows;
+	}
+
+	/** @return the number of rows (active and conflicts) */
+	public int size() {
+		return activeRows.size() + conflictRows.size();
+	}
+
+	/** @return the row at this index (active rows first, then conflicts) */
+	public BindingRow getRow(int index) {
+		int activeCount = activeRows.size();
+		return (index < activeCount) ? activeRows.get(index) : conflictRows.get(index - activeCount);
+	}
+
+	/** @return true if one of these commands is bound in this model */
+	public boolean containsAnyCommand(Collection<String> ids) {
+		for (String id : ids) {
+			if (commandIds.contains(id))
+				return true;
+		}
+		return false;
+	}
+
+	/** @return true if this row belongs to this model (and not to a previous one) */
+	public boolean contains(BindingRow row) {
+		return (row.getIndex() < size()) && (getRow(row.getIndex()) == row);
+	}
+
+	/** @return the search index of these rows, built on first call */
+	public synchronized BindingSearchIndex getSearchIndex() {
+		if (searchIndex == null)
+			searchIndex = new BindingSearchIndex(this);
+		return searchIndex;
+	}
+
+	/** @return the rows displayed below the ACTIVE_BINDINGS or CONFLICT_BINDINGS node */
+	public List<BindingRow> getRows(Object node) {
+		if (node == BindingDataProvider.ACTIVE_BINDINGS)
+			return activeRows;
+		if (node == BindingDataProvider.CONFLICT_BINDINGS)
+			return conflictRows;
+		return Collections.emptyList();
+	}
+
+}
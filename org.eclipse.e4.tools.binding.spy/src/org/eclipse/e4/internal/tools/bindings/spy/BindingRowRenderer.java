@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * The render stage of the binding viewer : the styled cells of the rows (text
+ * and style ranges) are built in this job, and handed to the UI thread in
+ * batches with asyncExec. The label provider only copies a rendered cell into
+ * a StyledString. Until its row is rendered, a cell displays the plain text of
+ * the row, then the items of each batch are updated.
+ *
+ * The rows asked by the viewer are rendered first, then all the rows of the
+ * displayed model, so that scrolling finds them ready.
+ */
+public class BindingRowRenderer extends Job {
+
+	/** Rows rendered between two hand-offs, small enough to update them within a frame */
+	private static final int BATCH_SIZE = 256;
+
+	/** The styles of the ranges, BindingDataProvider has a Styler for each one */
+	public static enum Style {
+		COMMAND_NAME, COMMAND_DESCRIPTION, EXCEPTION, HANDLER, ENABLED, DISABLED
+	}
+
+	/** The styled text of a cell : its text, and a (start, length, style ordinal) triple per range */
+	public static final class Cell {
+		private final String text;
+		private final int[] ranges;
+
+		Cell(String text, int[] ranges) {
+			this.text = text;
+			this.ranges = ranges;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		/** @return the number of styled ranges */
+		public int getRangeCount() {
+			return ranges.length / 3;
+		}
+
+		public int getStart(int range) {
+			return ranges[range * 3];
+		}
+
+		public int getLength(int range) {
+			return ranges[range * 3 + 1];
+		}
+
+		public Style getStyle(int range) {
+			return STYLES[ranges[range * 3 + 2]];
+		}
+	}
+
+	/** Returned by getCell for a row not rendered yet, to display as plain text meanwhile */
+	public static final Cell PENDING = new Cell("", new int[0]);
+
+	private static final Style[] STYLES = Style.values();
+
+	private static final Column[] COLUMNS = Column.values();
+
+	private final Display display;
+	private final TreeViewer viewer;
+
+	/** The cells of the rendered rows by Column ordinal, read by the job to skip them */
+	private final Map<BindingRow, Cell[]> rendered = Collections.synchronizedMap(new WeakHashMap<BindingRow, Cell[]>());
+
+	/* The rows to render, guarded by this */
+	private final LinkedHashSet<BindingRow> requested = new LinkedHashSet<>();
+	private BindingRowModel prefetchedModel;
+	private int prefetchIndex;
+
+	private volatile boolean disposed;
+
+	public BindingRowRenderer(Display display, TreeViewer viewer) {
+		super("Binding spy rendering");
+		this.display = display;
+		this.viewer = viewer;
+		setSystem(true);
+	}
+
+	/**
+	 * @return the rendered cell of this row, null if the column has no style,
+	 *         or PENDING if the row is not rendered yet (it is then requested)
+	 */
+	public Cell getCell(BindingRow row, Column column) {
+		Cell[] cells = rendered.get(row);
+		if (cells != null)
+			return cells[column.ordinal()];
+		boolean first;
+		synchronized (this) {
+			// The job takes all the requests : it is scheduled only for the first one
+			first = requested.isEmpty();
+			requested.add(row);
+		}
+		if (first)
+			schedule();
+		return PENDING;
+	}
+
+	/** Render the rows of this model in the background, the previous requests are dropped */
+	public void setModel(BindingRowModel model) {
+		synchronized (this) {
+			requested.clear();
+			prefetchedModel = model;
+			prefetchIndex = 0;
+		}
+		if (model != null)
+			schedule();
+	}
+
+	public void dispose() {
+		disposed = true;
+		cancel();
+		setModel(null);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		List<BindingRow> rows = new ArrayList<>(BATCH_SIZE);
+		List<Cell[]> cells = new ArrayList<>(BATCH_SIZE);
+		BindingRow row;
+		while ((row = next()) != null) {
+			if (monitor.isCanceled() || disposed)
+				return Status.CANCEL_STATUS;
+			if (rendered.containsKey(row))
+				continue;
+			rows.add(row);
+			cells.add(render(row));
+			if (rows.size() == BATCH_SIZE) {
+				handOff(rows, cells);
+				rows = new ArrayList<>(BATCH_SIZE);
+				cells = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+		if (!rows.isEmpty())
+			handOff(rows, cells);
+		return Status.OK_STATUS;
+	}
+
+	/** @return the next row to render : a requested one first, or the next row of the model */
+	private synchronized BindingRow next() {
+		Iterator<BindingRow> it = requested.iterator();
+		if (it.hasNext()) {
+			BindingRow row = it.next();
+			it.remove();
+			return row;
+		}
+		if ((prefetchedModel != null) && (prefetchIndex < prefetchedModel.size()))
+			return prefetchedModel.getRow(prefetchIndex++);
+		return null;
+	}
+
+	/** Give a batch to the UI thread, which only stores it and updates the items already created */
+	private void handOff(final List<BindingRow> rows, final List<Cell[]> cells) {
+		if (disposed || display.isDisposed())
+			return;
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < rows.size(); i++) {
+					rendered.put(rows.get(i), cells.get(i));
+				}
+				if (!disposed && !viewer.getControl().isDisposed())
+					viewer.update(rows.toArray(), null);
+			}
+		});
+	}
+
+	/** @return the cells of all the columns of a row, by Column ordinal */
+	static Cell[] render(BindingRow row) {
+		Cell[] cells = new Cell[COLUMNS.length];
+		for (Column column : COLUMNS) {
+			cells[column.ordinal()] = render(row, column);
+		}
+		return cells;
+	}
+
+	/** @return the styled cell of a row, or null for a column displayed as plain text */
+	static Cell render(BindingRow row, Column column) {
+		CellBuilder cell = new CellBuilder();
+		switch (column) {
+		case COMMAND_DESCRIPTION:
+			cell.append(row.getCommandId(), null);
+			if (row.getCommandError() != null) {
+				cell.append(row.getCommandError(), Style.EXCEPTION);
+			} else {
+				cell.append(" (" + row.getCommandName() + ") ", Style.COMMAND_NAME);
+				if (row.getCommandDescription() != null)
+					cell.append(" : " + row.getCommandDescription(), Style.COMMAND_DESCRIPTION);
+			}
+			break;
+		case COMMAND_HANDLER:
+			if (row.getContextHandler() != null) {
+				cell.append(row.getContextHandler(), null);
+				cell.append(" : ", null);
+			}
+			cell.append(row.getHandler(), Style.HANDLER);
+			break;
+		case STATE:
+			if (row.isEnabled())
+				cell.append("enabled", Style.ENABLED);
+			else
+				cell.append("disabled", Style.DISABLED);
+			break;
+		case CATEGORY:
+			cell.append(row.getText(column), row.isError(column) ? Style.EXCEPTION : null);
+			break;
+		default:
+			return null;
+		}
+		return cell.build();
+	}
+
+	private static final class CellBuilder {
+		private final StringBuilder text = new StringBuilder();
+		private int[] ranges = new int[6];
+		private int size;
+
+		void append(String s, Style style) {
+			if ((style != null) && (s.length() > 0)) {
+				if (size + 3 > ranges.length)
+					ranges = Arrays.copyOf(ranges, ranges.length * 2);
+				ranges[size++] = text.length();
+				ranges[size++] = s.length();
+				ranges[size++] = style.ordinal();
+			}
+			text.append(s);
+		}
+
+		Cell build() {
+			return new Cell(text.toString(), Arrays.copyOf(ranges, size));
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trigram index on the search text of the rows of a BindingRowModel. A
+ * pattern of at least 3 characters is first resolved to the rows containing
+ * all its trigrams, and only these candidates are checked with contains.
+ * Shorter patterns are simply scanned.
+ */
+public final class BindingSearchIndex {
+
+	private static final int[] NO_ROWS = new int[0];
+
+	private final BindingRowModel model;
+
+	/** For each trigram, the sorted indexes of the rows containing it */
+	private final Map<Long, int[]> postings;
+
+	BindingSearchIndex(BindingRowModel model) {
+		this.model = model;
+
+		// First collect the rows in growable arrays (size stored in first cell)
+		Map<Long, int[]> growing = new HashMap<>();
+		for (int i = 0; i < model.size(); i++) {
+			String text = model.getRow(i).getSearchText();
+			for (int c = 0; c + 3 <= text.length(); c++) {
+				Long trigram = trigram(text, c);
+				int[] rows = growing.get(trigram);
+				if (rows == null) {
+					rows = new int[4];
+					growing.put(trigram, rows);
+				} else if (rows[rows[0]] == i) {
+					continue; // Trigram already present in this row
+				}
+				if (rows[0] + 1 == rows.length) {
+					rows = Arrays.copyOf(rows, rows.length * 2);
+					growing.put(trigram, rows);
+				}
+				rows[++rows[0]] = i;
+			}
+		}
+
+		postings = new HashMap<>(growing.size() * 4 / 3 + 1);
+		for (Map.Entry<Long, int[]> e : growing.entrySet()) {
+			int[] rows = e.getValue();
+			postings.put(e.getKey(), Arrays.copyOfRange(rows, 1, rows[0] + 1));
+		}
+	}
+
+	private static Long trigram(String text, int start) {
+		return Long.valueOf(((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16)
+				| text.charAt(start + 2));
+	}
+
+	/**
+	 * Find the rows containing the pattern in one of their searched columns
+	 *
+	 * @param lowerPattern
+	 *            a lower case pattern
+	 * @return the indexes of the matching rows in the model
+	 */
+	public BitSet find(String lowerPattern) {
+		BitSet result = new BitSet(model.size());
+		if (lowerPattern.length() < 3) {
+			for (int i = 0; i < model.size(); i++) {
+				if (model.getRow(i).getSearchText().contains(lowerPattern))
+					result.set(i);
+			}
+			return result;
+		}
+
+		// Start with the rarest trigram to keep the candidate set small
+		int[] candidates = null;
+		for (int c = 0; c + 3 <= lowerPattern.length(); c++) {
+			int[] rows = postings.get(trigram(lowerPattern, c));
+			if (rows == null)
+				return result;
+			if ((candidates == null) || (rows.length < candidates.length))
+				candidates = rows;
+		}
+		if (candidates == null)
+			candidates = NO_ROWS;
+
+		for (int i : candidates) {
+			if (model.getRow(i).getSearchText().contains(lowerPattern))
+				result.set(i);
+		}
+		return result;
+	}
+
+}
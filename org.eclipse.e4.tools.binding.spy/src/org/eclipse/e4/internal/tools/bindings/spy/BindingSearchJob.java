@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * The search pipeline of the filter text : each new pattern cancels the
+ * pending search and is only started after a short delay, so that a fast
+ * typing runs only one search. The matching is done in this job on the
+ * immutable rows, one subtree per worker (see BindingTreeScan), and only the
+ * result of the newest pattern is handed to the UI thread.
+ */
+public class BindingSearchJob extends Job {
+
+	/** Delay between the last key stroke and the start of the search */
+	private static final long DEBOUNCE_DELAY = 150;
+
+	/** The number of models built in one runnable of the UI thread */
+	private static final int MODELS_PER_RUNNABLE = 4;
+
+	/** Called in the UI thread with the result of the newest pattern */
+	public interface ISearchResultHandler {
+		/**
+		 * @param result
+		 *            the prepared search result
+		 * @param latencyMillis
+		 *            the time between the first key stroke of this search and
+		 *            the result
+		 */
+		void searchDone(BindingDataFilter.SearchResult result, long latencyMillis);
+	}
+
+	private final Display display;
+	private final ContextTreeRegistry contextRegistry;
+	private final BindingModelRegistry modelRegistry;
+	private final ISearchResultHandler handler;
+
+	/** Incremented on each request, a result is applied only if it is the last */
+	private int requestCount;
+	private String requestedPattern;
+	private long requestTime;
+
+	public BindingSearchJob(Display display, ContextTreeRegistry contextRegistry, BindingModelRegistry modelRegistry,
+			ISearchResultHandler handler) {
+		super("Binding spy search");
+		this.display = display;
+		this.contextRegistry = contextRegistry;
+		this.modelRegistry = modelRegistry;
+		this.handler = handler;
+		setSystem(true);
+	}
+
+	/** Request a search for this pattern, canceling the pending one */
+	public void search(String pattern) {
+		synchronized (this) {
+			// Keep the time of the first stroke not yet answered to measure the latency
+			if (requestedPattern == null)
+				requestTime = System.nanoTime();
+			requestCount++;
+			requestedPattern = (pattern == null) ? "" : pattern;
+		}
+		cancel();
+		schedule(DEBOUNCE_DELAY);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		final String pattern;
+		final int request;
+		final long startTime;
+		synchronized (this) {
+			pattern = requestedPattern;
+			request = requestCount;
+			startTime = requestTime;
+		}
+		if ((pattern == null) || display.isDisposed())
+			return Status.OK_STATUS;
+
+		// The tree and the models already built are captured in the UI thread,
+		// the missing models are built there a few at a time
+		final List<BindingTreeScan.Node> roots = new ArrayList<>();
+		final Map<BindingTreeScan.Node, IEclipseContext> missing = new LinkedHashMap<>();
+		if (BindingDataFilter.normalize(pattern) != null) {
+			display.syncExec(new Runnable() {
+				@Override
+				public void run() {
+					for (IEclipseContext ctx : contextRegistry.getRootContexts()) {
+						roots.add(createNode(ctx, missing));
+					}
+				}
+			});
+			if (!buildModels(missing, request, monitor))
+				return Status.CANCEL_STATUS;
+		}
+		if (monitor.isCanceled() || isStale(request))
+			return Status.CANCEL_STATUS;
+
+		monitor.beginTask(getName(), IProgressMonitor.UNKNOWN);
+		final BindingDataFilter.SearchResult result = BindingTreeScan.scan(pattern, roots, monitor);
+		monitor.done();
+		if ((result == null) || isStale(request) || display.isDisposed())
+			return Status.CANCEL_STATUS;
+
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (BindingSearchJob.this) {
+					if (request != requestCount)
+						return; // A newer pattern is being searched
+					requestedPattern = null;
+				}
+				handler.searchDone(result, (System.nanoTime() - startTime) / 1000000);
+			}
+		});
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * @param missing
+	 *            the nodes whose model is not built yet, with their context
+	 * @return the node of a context and of its subtree, with their models
+	 *         already built
+	 */
+	private BindingTreeScan.Node createNode(IEclipseContext ctx, Map<BindingTreeScan.Node, IEclipseContext> missing) {
+		BindingRowModel model = modelRegistry.getCurrentModel(ctx);
+		BindingTreeScan.Node node = new BindingTreeScan.Node(model);
+		if (model == null)
+			missing.put(node, ctx);
+		for (IEclipseContext child : contextRegistry.getChildren(ctx)) {
+			node.addChild(createNode(child, missing));
+		}
+		return node;
+	}
+
+	/**
+	 * Build the missing models with one runnable of the UI thread per few
+	 * contexts, so that the UI keeps handling its events between them
+	 *
+	 * @return false if the search has been canceled or replaced meanwhile
+	 */
+	private boolean buildModels(Map<BindingTreeScan.Node, IEclipseContext> missing, int request,
+			IProgressMonitor monitor) {
+		final List<Map.Entry<BindingTreeScan.Node, IEclipseContext>> entries = new ArrayList<>(missing.entrySet());
+		for (int i = 0; i < entries.size(); i += MODELS_PER_RUNNABLE) {
+			if (monitor.isCanceled() || isStale(request) || display.isDisposed())
+				return false;
+			final int from = i;
+			display.syncExec(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = from; j < Math.min(from + MODELS_PER_RUNNABLE, entries.size()); j++) {
+						Map.Entry<BindingTreeScan.Node, IEclipseContext> entry = entries.get(j);
+						entry.getKey().setModel(modelRegistry.getModel(entry.getValue()));
+					}
+				}
+			});
+		}
+		return true;
+	}
+
+	private synchronized boolean isStale(int request) {
+		return request != requestCount;
+	}
+
+}
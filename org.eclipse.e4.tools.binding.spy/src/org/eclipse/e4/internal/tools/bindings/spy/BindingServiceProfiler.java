@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.ui.bindings.EBindingService;
+
+/**
+ * An opt-in profiler of the EBindingService calls : while it runs, the binding
+ * service of a context and of all its children is replaced by a proxy, which
+ * counts the calls of each method and records their durations in a
+ * LatencyHistogram. The calls are broken down by caller context : the context
+ * whose binding service has been called, as each context has its own one.
+ *
+ * The original services are set back when the profiler stops. The contexts
+ * created while it runs are not profiled, and a client which kept the
+ * original service (instead of being injected again) is not measured. The
+ * calls are kept by context (not by name) until a reset, or until the context
+ * is garbage collected.
+ *
+ * @see BindingServiceProfilerPart
+ */
+@Creatable
+@Singleton
+public class BindingServiceProfiler {
+
+	private static final String SERVICE_KEY = EBindingService.class.getName();
+
+	/** The calls of the binding service of one context, copied from the recorded ones */
+	public static final class ContextTimings {
+		private final String name;
+		private final List<CallTimings> calls = new ArrayList<>();
+		private long callCount;
+
+		ContextTimings(String name) {
+			this.name = name;
+		}
+
+		/** @return the name of the context whose binding service was called */
+		public String getName() {
+			return name;
+		}
+
+		/** @return the calls of each method, the most called first */
+		public List<CallTimings> getCalls() {
+			return calls;
+		}
+
+		public long getCallCount() {
+			return callCount;
+		}
+
+		@Override
+		public String toString() {
+			return name + " : " + callCount + " calls";
+		}
+	}
+
+	/** The calls of one method from one context, copied from the recorded ones */
+	public static final class CallTimings {
+		private final ContextTimings caller;
+		private final String method;
+		private final LatencyHistogram histogram;
+
+		CallTimings(ContextTimings caller, String method, LatencyHistogram histogram) {
+			this.caller = caller;
+			this.method = method;
+			this.histogram = histogram;
+		}
+
+		/** @return the timings of the context whose binding service was called */
+		public ContextTimings getCaller() {
+			return caller;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public LatencyHistogram getHistogram() {
+			return histogram;
+		}
+
+		@Override
+		public String toString() {
+			return caller.name + "." + method + " : " + histogram.getCount() + " calls";
+		}
+	}
+
+	private static final Comparator<CallTimings> BY_COUNT = new Comparator<CallTimings>() {
+		@Override
+		public int compare(CallTimings t1, CallTimings t2) {
+			int diff = Long.compare(t2.histogram.getCount(), t1.histogram.getCount());
+			return (diff != 0) ? diff : t1.method.compareTo(t2.method);
+		}
+	};
+
+	private static final Comparator<ContextTimings> BY_CALL_COUNT = new Comparator<ContextTimings>() {
+		@Override
+		public int compare(ContextTimings t1, ContextTimings t2) {
+			int diff = Long.compare(t2.callCount, t1.callCount);
+			return (diff != 0) ? diff : t1.name.compareTo(t2.name);
+		}
+	};
+
+	/**
+	 * The histograms of the calls from one context, by method name (the
+	 * overloaded methods are counted together). Guarded by this, the calls
+	 * come from any thread.
+	 */
+	private static final class CallerTimings {
+		private final String caller;
+		private final Map<String, LatencyHistogram> histograms = new HashMap<>();
+
+		CallerTimings(String caller) {
+			this.caller = caller;
+		}
+
+		synchronized void record(String method, long nanos) {
+			LatencyHistogram histogram = histograms.get(method);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				histograms.put(method, histogram);
+			}
+			histogram.record(nanos);
+		}
+
+		synchronized ContextTimings copy() {
+			ContextTimings copy = new ContextTimings(caller);
+			for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+				LatencyHistogram histogram = entry.getValue().copy();
+				copy.calls.add(new CallTimings(copy, entry.getKey(), histogram));
+				copy.callCount += histogram.getCount();
+			}
+			Collections.sort(copy.calls, BY_COUNT);
+			return copy;
+		}
+
+		synchronized void reset() {
+			histograms.clear();
+		}
+	}
+
+	/** The proxy of the binding service of a context */
+	private static final class CallRecorder implements InvocationHandler {
+		private final EBindingService target;
+		private final CallerTimings timings;
+
+		CallRecorder(EBindingService target, CallerTimings timings) {
+			this.target = target;
+			this.timings = timings;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				// Not a binding service call : the proxy is only equal to itself
+				if ("equals".equals(method.getName()))
+					return Boolean.valueOf(proxy == args[0]);
+				if ("hashCode".equals(method.getName()))
+					return Integer.valueOf(System.identityHashCode(proxy));
+				return method.invoke(target, args);
+			}
+			long start = System.nanoTime();
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				timings.record(method.getName(), System.nanoTime() - start);
+			}
+		}
+	}
+
+	/** A context whose binding service is replaced, and its original local value */
+	private static final class WrappedContext {
+		private final WeakReference<IEclipseContext> context;
+		private final Object localValue;
+
+		WrappedContext(IEclipseContext context, Object localValue) {
+			this.context = new WeakReference<>(context);
+			this.localValue = localValue;
+		}
+	}
+
+	private final List<WrappedContext> wrappedContexts = new ArrayList<>();
+
+	/**
+	 * The timings of all the contexts profiled since the last reset, by
+	 * context : distinct contexts may have the same name, and a context
+	 * profiled again goes on with its timings
+	 */
+	private final Map<IEclipseContext, CallerTimings> callers = new WeakHashMap<>();
+
+	private String profiledContext;
+
+	/**
+	 * Start profiling the binding services of a context and of its children.
+	 * The profiling of another context is stopped first.
+	 *
+	 * @return the number of contexts whose binding service is profiled
+	 */
+	public synchronized int start(IEclipseContext context) {
+		stop();
+		profiledContext = String.valueOf(context);
+		wrap(context);
+		return wrappedContexts.size();
+	}
+
+	/**
+	 * Children first : they get their own service before the parent one is
+	 * replaced. The service is asked to each context, so that the binding
+	 * service function creates a BindingServiceImpl in the contexts which did
+	 * not have one yet : they are set back to the function when stopping.
+	 */
+	@SuppressWarnings("restriction")
+	private void wrap(IEclipseContext context) {
+		if (context instanceof EclipseContext) {
+			for (EclipseContext child : ((EclipseContext) context).getChildren()) {
+				wrap(child);
+			}
+		}
+		EBindingService service = context.get(EBindingService.class);
+		if (service == null)
+			return;
+		if (Proxy.isProxyClass(service.getClass()) && (Proxy.getInvocationHandler(service) instanceof CallRecorder))
+			service = ((CallRecorder) Proxy.getInvocationHandler(service)).target;
+
+		// The raw local value (may be a context function) is set back when stopping
+		Object localValue = (context instanceof EclipseContext) ? ((EclipseContext) context).localData()
+				.get(SERVICE_KEY) : null;
+		CallerTimings timings = callers.get(context);
+		if (timings == null) {
+			timings = new CallerTimings(String.valueOf(context));
+			callers.put(context, timings);
+		}
+		wrappedContexts.add(new WrappedContext(context, localValue));
+		context.set(EBindingService.class, (EBindingService) Proxy.newProxyInstance(
+				EBindingService.class.getClassLoader(), new Class<?>[] { EBindingService.class },
+				new CallRecorder(service, timings)));
+	}
+
+	/** Stop profiling and set the original services back, the timings are kept */
+	public synchronized void stop() {
+		// Parents first, in the reverse order of the wrapping
+		for (int i = wrappedContexts.size() - 1; i >= 0; i--) {
+			WrappedContext wrapped = wrappedContexts.get(i);
+			IEclipseContext context = wrapped.context.get();
+			if (context == null)
+				continue;
+			if (wrapped.localValue == null)
+				context.remove(SERVICE_KEY);
+			else
+				context.set(SERVICE_KEY, wrapped.localValue);
+		}
+		wrappedContexts.clear();
+		profiledContext = null;
+	}
+
+	public synchronized boolean isRunning() {
+		return profiledContext != null;
+	}
+
+	/** @return the name of the context profiled with its children, or null if not running */
+	public synchronized String getProfiledContext() {
+		return profiledContext;
+	}
+
+	/** Forget all the timings */
+	public synchronized void reset() {
+		for (CallerTimings timings : callers.values()) {
+			timings.reset();
+		}
+		// The contexts no longer profiled will not record anything
+		if (profiledContext == null)
+			callers.clear();
+	}
+
+	/** @return a copy of the timings of each context, the most called first */
+	public List<ContextTimings> getTimings() {
+		List<ContextTimings> result = new ArrayList<>();
+		synchronized (this) {
+			for (CallerTimings timings : callers.values()) {
+				ContextTimings copy = timings.copy();
+				if (copy.callCount > 0)
+					result.add(copy);
+			}
+		}
+		Collections.sort(result, BY_CALL_COUNT);
+		return result;
+	}
+
+}
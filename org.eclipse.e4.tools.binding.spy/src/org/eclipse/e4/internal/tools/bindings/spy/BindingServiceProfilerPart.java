@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.ui.services.IServiceConstants;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.TreeViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Tree;
+
+/**
+ * Display the timings of the BindingServiceProfiler : one node per caller
+ * context, one row per method called with its number of calls and latency
+ * percentiles. The profiling is started on the selected context, and the
+ * viewer is refreshed periodically while it is visible.
+ */
+public class BindingServiceProfilerPart {
+
+	/** Delay between two refreshes of the timings */
+	private static final int REFRESH_DELAY = 1000;
+
+	@Inject
+	private BindingServiceProfiler profiler;
+
+	private TreeViewer timingsViewer;
+	private Button profileButton;
+	private Label summary;
+
+	/** The context selected in the context tree, profiled with its children */
+	private IEclipseContext selectedContext;
+
+	/** The timings displayed, one per caller context */
+	private List<BindingServiceProfiler.ContextTimings> timings = Collections.emptyList();
+
+	private boolean refreshScheduled;
+
+	private final Runnable refreshRunnable = new Runnable() {
+		@Override
+		public void run() {
+			refreshScheduled = false;
+			if (timingsViewer.getControl().isDisposed() || !profiler.isRunning())
+				return;
+			if (timingsViewer.getControl().isVisible())
+				refresh();
+			scheduleRefresh();
+		}
+	};
+
+	private final ITreeContentProvider contentProvider = new ITreeContentProvider() {
+		@Override
+		public Object[] getElements(Object inputElement) {
+			return timings.toArray();
+		}
+
+		@Override
+		public Object[] getChildren(Object parentElement) {
+			if (parentElement instanceof BindingServiceProfiler.ContextTimings)
+				return ((BindingServiceProfiler.ContextTimings) parentElement).getCalls().toArray();
+			return new Object[0];
+		}
+
+		@Override
+		public Object getParent(Object element) {
+			return (element instanceof BindingServiceProfiler.CallTimings)
+					? ((BindingServiceProfiler.CallTimings) element).getCaller() : null;
+		}
+
+		@Override
+		public boolean hasChildren(Object element) {
+			return element instanceof BindingServiceProfiler.ContextTimings;
+		}
+
+		@Override
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+
+		@Override
+		public void dispose() {
+		}
+	};
+
+	/** The text of a column for a method row, the total calls for a caller */
+	private abstract class TimingsLabelProvider extends ColumnLabelProvider {
+		@Override
+		public String getText(Object element) {
+			if (element instanceof BindingServiceProfiler.CallTimings)
+				return getText(((BindingServiceProfiler.CallTimings) element).getHistogram());
+			return getCallerText((BindingServiceProfiler.ContextTimings) element);
+		}
+
+		String getCallerText(BindingServiceProfiler.ContextTimings caller) {
+			return "";
+		}
+
+		abstract String getText(LatencyHistogram histogram);
+	}
+
+	@PostConstruct
+	public void createControls(Composite parent) {
+		parent.setLayout(new GridLayout(1, false));
+
+		Composite bar = new Composite(parent, SWT.NONE);
+		bar.setLayout(new GridLayout(3, false));
+		bar.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		profileButton = new Button(bar, SWT.CHECK);
+		profileButton.setText("Profile Selected Context");
+		profileButton.setToolTipText(
+				"Measure the calls of the binding service of the selected context and of its children");
+		profileButton.setSelection(profiler.isRunning());
+		profileButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (profileButton.getSelection())
+					start();
+				else
+					profiler.stop();
+				refresh();
+			}
+		});
+
+		Button resetButton = new Button(bar, SWT.PUSH);
+		resetButton.setText("Reset");
+		resetButton.setToolTipText("Forget the calls measured");
+		resetButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				profiler.reset();
+				refresh();
+			}
+		});
+
+		summary = new Label(bar, SWT.NONE);
+		summary.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		timingsViewer = new TreeViewer(parent, SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER);
+		timingsViewer.setContentProvider(contentProvider);
+		Tree tree = timingsViewer.getTree();
+		tree.setHeaderVisible(true);
+		tree.setLinesVisible(true);
+		tree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+		createColumn("Caller Context / Method", 350, SWT.NONE, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				if (element instanceof BindingServiceProfiler.CallTimings)
+					return ((BindingServiceProfiler.CallTimings) element).getMethod();
+				return ((BindingServiceProfiler.ContextTimings) element).getName();
+			}
+		});
+		createColumn("Calls", 80, SWT.RIGHT, new TimingsLabelProvider() {
+			@Override
+			String getText(LatencyHistogram histogram) {
+				return String.valueOf(histogram.getCount());
+			}
+
+			@Override
+			String getCallerText(BindingServiceProfiler.ContextTimings caller) {
+				return String.valueOf(caller.getCallCount());
+			}
+		});
+		createColumn("Mean", 80, SWT.RIGHT, new TimingsLabelProvider() {
+			@Override
+			String getText(LatencyHistogram histogram) {
+				return format(histogram.getMean());
+			}
+		});
+		createColumn("p50", 80, SWT.RIGHT, new TimingsLabelProvider() {
+			@Override
+			String getText(LatencyHistogram histogram) {
+				return format(histogram.getPercentile(50));
+			}
+		});
+		createColumn("p99", 80, SWT.RIGHT, new TimingsLabelProvider() {
+			@Override
+			String getText(LatencyHistogram histogram) {
+				return format(histogram.getPercentile(99));
+			}
+		});
+		createColumn("Max", 80, SWT.RIGHT, new TimingsLabelProvider() {
+			@Override
+			String getText(LatencyHistogram histogram) {
+				return format(histogram.getMax());
+			}
+		});
+
+		timingsViewer.setInput(this);
+		refresh();
+	}
+
+	private void createColumn(String title, int width, int style, ColumnLabelProvider labelProvider) {
+		TreeViewerColumn column = new TreeViewerColumn(timingsViewer, style);
+		column.getColumn().setText(title);
+		column.getColumn().setWidth(width);
+		column.setLabelProvider(labelProvider);
+	}
+
+	/** @return a duration in microseconds : most of the calls take less than a millisecond */
+	static String format(long nanos) {
+		return String.format("%.1f us", Double.valueOf(nanos / 1000.0));
+	}
+
+	/** Remember the context to profile (the current profiling goes on) */
+	@SuppressWarnings("restriction")
+	@Inject
+	@Optional
+	public void listenToContext(@Named(IServiceConstants.ACTIVE_SELECTION) EclipseContext ctx) {
+		selectedContext = ctx;
+		if ((summary != null) && !summary.isDisposed() && !profiler.isRunning())
+			refresh();
+	}
+
+	private void start() {
+		if (selectedContext == null) {
+			profileButton.setSelection(false);
+			return;
+		}
+		profiler.start(selectedContext);
+		scheduleRefresh();
+	}
+
+	private void scheduleRefresh() {
+		if (!refreshScheduled) {
+			refreshScheduled = true;
+			timingsViewer.getControl().getDisplay().timerExec(REFRESH_DELAY, refreshRunnable);
+		}
+	}
+
+	/** Copy the current timings and display them */
+	public void refresh() {
+		if (timingsViewer.getControl().isDisposed())
+			return;
+		// The most called contexts come first, and their most called methods
+		timings = profiler.getTimings();
+		long count = 0;
+		for (BindingServiceProfiler.ContextTimings caller : timings) {
+			count += caller.getCallCount();
+		}
+
+		profileButton.setSelection(profiler.isRunning());
+		if (profiler.isRunning())
+			summary.setText(count + " calls in " + timings.size() + " contexts, profiling "
+					+ profiler.getProfiledContext());
+		else if (selectedContext == null)
+			summary.setText("Select a context to profile");
+		else
+			summary.setText(count + " calls, not profiling");
+		timingsViewer.refresh();
+		timingsViewer.expandAll();
+	}
+
+	/** Called when the viewer is shown : display the last timings */
+	public void shown() {
+		refresh();
+	}
+
+}
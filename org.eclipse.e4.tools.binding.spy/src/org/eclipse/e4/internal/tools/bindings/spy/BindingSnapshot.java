@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider.Column;
+
+/**
+ * A binding snapshot file, written by BindingSnapshotWriter and opened for an
+ * offline inspection. The file is mapped in memory and only its header is
+ * read when it is opened : contexts and rows are decoded when the viewers
+ * display them.
+ *
+ * The file is made of (all values are big endian ints unless noted) :
+ * <ul>
+ * <li>a header : magic, version, context count, row count, string count, a
+ * reserved int, the offset of the context table (long) and the offset of the
+ * string table (long)</li>
+ * <li>the rows, ROW_FIELDS ints each : the string ids of their values and
+ * their flags. The rows of a context are contiguous, active rows first</li>
+ * <li>the context table, CONTEXT_FIELDS ints each, parents before children :
+ * name, parent index, depth, first row, active and conflict counts</li>
+ * <li>the string table : string count + 1 offsets in the UTF-8 data which
+ * follows them</li>
+ * </ul>
+ * A string id is -1 for a null value.
+ *
+ * The tables and the contexts are checked when the file is opened. A row is
+ * checked when it is first displayed : a row whose string ids are out of the
+ * string table is shown as corrupted instead of failing.
+ *
+ * @see BindingSnapshotWriter
+ */
+public final class BindingSnapshot {
+
+	static final int MAGIC = 0x42535059; // "BSPY"
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 40;
+
+	/* The fields of a row */
+	static final int ROW_TRIGGER = 0;
+	static final int ROW_COMMAND_ID = 1;
+	static final int ROW_COMMAND_NAME = 2;
+	static final int ROW_COMMAND_DESCRIPTION = 3;
+	static final int ROW_COMMAND_ERROR = 4;
+	static final int ROW_HANDLER = 5;
+	static final int ROW_CONTEXT_HANDLER = 6;
+	static final int ROW_CATEGORY = 7;
+	static final int ROW_BINDING_CONTEXT_ID = 8;
+	static final int ROW_SCHEME_ID = 9;
+	static final int ROW_PLATFORM = 10;
+	static final int ROW_LOCALE = 11;
+	static final int ROW_FLAGS = 12;
+	static final int ROW_FIELDS = 13;
+	static final int ROW_SIZE = ROW_FIELDS * 4;
+
+	/* The bits of the row flags */
+	static final int FLAG_ENABLED = 1;
+	static final int FLAG_CATEGORY_ERROR = 2;
+	static final int FLAG_USER = 4;
+
+	/* The fields of a context */
+	static final int CONTEXT_NAME = 0;
+	static final int CONTEXT_PARENT = 1;
+	static final int CONTEXT_DEPTH = 2;
+	static final int CONTEXT_FIRST_ROW = 3;
+	static final int CONTEXT_ACTIVE_COUNT = 4;
+	static final int CONTEXT_CONFLICT_COUNT = 5;
+	static final int CONTEXT_FIELDS = 6;
+	static final int CONTEXT_SIZE = CONTEXT_FIELDS * 4;
+
+	/** The text of the cells of a corrupted row */
+	static final String CORRUPTED_TEXT = "<corrupted row>";
+
+	/** One context of the snapshot, its values are read from the file on each call */
+	public final class Context {
+		private final int index;
+
+		private Context(int index) {
+			this.index = index;
+		}
+
+		private int getField(int field) {
+			return buffer.getInt(contextTable + index * CONTEXT_SIZE + field * 4);
+		}
+
+		public BindingSnapshot getSnapshot() {
+			return BindingSnapshot.this;
+		}
+
+		public String getName() {
+			return getString(getField(CONTEXT_NAME));
+		}
+
+		public int getDepth() {
+			return getField(CONTEXT_DEPTH);
+		}
+
+		/** @return the parent context, or null for a root context */
+		public Context getParent() {
+			int parent = getField(CONTEXT_PARENT);
+			return (parent < 0) ? null : new Context(parent);
+		}
+
+		/** @return the direct children, found after this context in the table */
+		public List<Context> getChildren() {
+			List<Context> children = new ArrayList<>();
+			int depth = getDepth();
+			for (int i = index + 1; i < contextCount; i++) {
+				int childDepth = new Context(i).getDepth();
+				if (childDepth <= depth)
+					break;
+				if (childDepth == depth + 1)
+					children.add(new Context(i));
+			}
+			return children;
+		}
+
+		public boolean hasChildren() {
+			return (index + 1 < contextCount) && (new Context(index + 1).getDepth() > getDepth());
+		}
+
+		public int getActiveCount() {
+			return getField(CONTEXT_ACTIVE_COUNT);
+		}
+
+		public int getConflictCount() {
+			return getField(CONTEXT_CONFLICT_COUNT);
+		}
+
+		/**
+		 * @param rowIndex
+		 *            the index of the row in this context (active rows first,
+		 *            then conflicts)
+		 */
+		public Row getRow(int rowIndex) {
+			if ((rowIndex < 0) || (rowIndex >= getActiveCount() + getConflictCount()))
+				throw new IndexOutOfBoundsException("Row " + rowIndex + " of " + getName());
+			return new Row(this, rowIndex, getField(CONTEXT_FIRST_ROW) + rowIndex);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Context) && (((Context) obj).getSnapshot() == BindingSnapshot.this)
+					&& (((Context) obj).index == index);
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+
+	/** One row of a context, its texts are decoded on first use */
+	public final class Row {
+		private final Context context;
+		private final int index;
+		private final int offset;
+
+		/** The text of each column, indexed by Column ordinal, decoded on first use */
+		private String[] texts;
+
+		/** The string ids checked : 0 not yet, 1 valid, -1 corrupted */
+		private int checked;
+
+		private Row(Context context, int index, int row) {
+			this.context = context;
+			this.index = index;
+			this.offset = HEADER_SIZE + row * ROW_SIZE;
+		}
+
+		private int getField(int field) {
+			return buffer.getInt(offset + field * 4);
+		}
+
+		private String getValue(int field) {
+			return getString(getField(field));
+		}
+
+		public Context getContext() {
+			return context;
+		}
+
+		/** @return the index of this row in its context (active rows first, then conflicts) */
+		public int getIndex() {
+			return index;
+		}
+
+		public boolean isConflict() {
+			return index >= context.getActiveCount();
+		}
+
+		/** @return true if a string id of this row is out of the string table */
+		public boolean isCorrupted() {
+			if (checked == 0) {
+				checked = 1;
+				for (int field = 0; field < ROW_FLAGS; field++) {
+					if (!isStringId(getField(field)))
+						checked = -1;
+				}
+			}
+			return checked < 0;
+		}
+
+		/** @return the plain text displayed for this column (never null) */
+		public String getText(Column column) {
+			if (isCorrupted())
+				return CORRUPTED_TEXT;
+			if (texts == null)
+				texts = new String[Column.values().length];
+			String text = texts[column.ordinal()];
+			if (text == null) {
+				text = computeText(column);
+				texts[column.ordinal()] = (text == null) ? "" : text;
+			}
+			return texts[column.ordinal()];
+		}
+
+		private String computeText(Column column) {
+			switch (column) {
+			case TRIGGER_SEQUENCE:
+				return getValue(ROW_TRIGGER);
+			case COMMAND_DESCRIPTION:
+				return BindingRow.getCommandText(getValue(ROW_COMMAND_ID), getValue(ROW_COMMAND_NAME),
+						getValue(ROW_COMMAND_DESCRIPTION), getValue(ROW_COMMAND_ERROR));
+			case COMMAND_HANDLER:
+				return BindingRow.getHandlerText(getValue(ROW_CONTEXT_HANDLER), getValue(ROW_HANDLER));
+			case STATE:
+				return ((getField(ROW_FLAGS) & FLAG_ENABLED) != 0) ? "enabled" : "disabled";
+			case CATEGORY:
+				return getValue(ROW_CATEGORY);
+			case BINDING_CONTEXT_ID:
+				return getValue(ROW_BINDING_CONTEXT_ID);
+			case TYPE:
+				return ((getField(ROW_FLAGS) & FLAG_USER) != 0) ? "1" : "0";
+			default:
+				return null; // No key dispatch is measured offline
+			}
+		}
+
+		/**
+		 * @return true if the value of this column could not be resolved when
+		 *         it was written, or if the row is corrupted
+		 */
+		public boolean isError(Column column) {
+			if (isCorrupted())
+				return true;
+			switch (column) {
+			case COMMAND_DESCRIPTION:
+				return getField(ROW_COMMAND_ERROR) >= 0;
+			case CATEGORY:
+				return (getField(ROW_FLAGS) & FLAG_CATEGORY_ERROR) != 0;
+			default:
+				return false;
+			}
+		}
+
+		/** @return the command id, or null if the row is corrupted */
+		public String getCommandId() {
+			return isCorrupted() ? null : getValue(ROW_COMMAND_ID);
+		}
+
+		public String getSchemeId() {
+			return isCorrupted() ? null : getValue(ROW_SCHEME_ID);
+		}
+
+		public String getPlatform() {
+			return isCorrupted() ? null : getValue(ROW_PLATFORM);
+		}
+
+		public String getLocale() {
+			return isCorrupted() ? null : getValue(ROW_LOCALE);
+		}
+
+		@Override
+		public String toString() {
+			return getText(Column.TRIGGER_SEQUENCE);
+		}
+	}
+
+	private final File file;
+
+	/** The mapped file, only read with absolute gets so that it can be shared */
+	private final ByteBuffer buffer;
+
+	private final int contextCount;
+	private final int rowCount;
+	private final int stringCount;
+	private final int contextTable;
+	private final int stringTable;
+	private final int stringData;
+
+	private BindingSnapshot(File file, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		if ((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION))
+			throw new IOException("Not a binding snapshot : " + file);
+		contextCount = buffer.getInt(8);
+		rowCount = buffer.getInt(12);
+		stringCount = buffer.getInt(16);
+		long contextOffset = buffer.getLong(24);
+		long stringOffset = buffer.getLong(32);
+
+		// Check the tables and the contexts once : the lazy reads of a context
+		// and of a string stay in the file, a row checks its own string ids
+		long rowsEnd = HEADER_SIZE + (long) rowCount * ROW_SIZE;
+		long contextEnd = contextOffset + (long) contextCount * CONTEXT_SIZE;
+		long stringEnd = stringOffset + (stringCount + 1L) * 4;
+		if ((contextCount < 0) || (rowCount < 0) || (stringCount < 0) || (contextOffset < rowsEnd)
+				|| (stringOffset < contextEnd) || (stringEnd > buffer.capacity()))
+			throw new IOException("Corrupted binding snapshot : " + file);
+		contextTable = (int) contextOffset;
+		stringTable = (int) stringOffset;
+		stringData = (int) stringEnd;
+		if (!checkStrings() || !checkContexts())
+			throw new IOException("Corrupted binding snapshot : " + file);
+	}
+
+	/** @return true if the string offsets are increasing and inside the file */
+	private boolean checkStrings() {
+		int previous = 0;
+		for (int i = 0; i <= stringCount; i++) {
+			int offset = buffer.getInt(stringTable + i * 4);
+			if (offset < previous)
+				return false;
+			previous = offset;
+		}
+		return stringData + (long) previous <= buffer.capacity();
+	}
+
+	/** @return true if the contexts have valid names, parents and rows */
+	private boolean checkContexts() {
+		for (int i = 0; i < contextCount; i++) {
+			int offset = contextTable + i * CONTEXT_SIZE;
+			int name = buffer.getInt(offset + CONTEXT_NAME * 4);
+			int parent = buffer.getInt(offset + CONTEXT_PARENT * 4);
+			int firstRow = buffer.getInt(offset + CONTEXT_FIRST_ROW * 4);
+			int activeCount = buffer.getInt(offset + CONTEXT_ACTIVE_COUNT * 4);
+			int conflictCount = buffer.getInt(offset + CONTEXT_CONFLICT_COUNT * 4);
+			if (!isStringId(name) || (parent < -1) || (parent >= i) || (buffer.getInt(offset + CONTEXT_DEPTH * 4) < 0)
+					|| (firstRow < 0) || (activeCount < 0) || (conflictCount < 0)
+					|| ((long) firstRow + activeCount + conflictCount > rowCount))
+				return false;
+		}
+		return true;
+	}
+
+	/** @return true if this id is -1 or the id of a string of the table */
+	boolean isStringId(int id) {
+		return (id >= -1) && (id < stringCount);
+	}
+
+	/** Map a snapshot file, without reading more than its header */
+	public static BindingSnapshot open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE)
+				throw new IOException("Not a binding snapshot : " + file);
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("The binding snapshot is too large : " + file);
+			// The mapping remains valid once the channel is closed
+			return new BindingSnapshot(file, channel.map(MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/** @return the string of this id, or null for -1 */
+	String getString(int id) {
+		if (id < 0)
+			return null;
+		if (id >= stringCount)
+			throw new IndexOutOfBoundsException("String " + id + " of " + file);
+		int start = buffer.getInt(stringTable + id * 4);
+		int end = buffer.getInt(stringTable + id * 4 + 4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer data = buffer.duplicate();
+		data.position(stringData + start);
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getContextCount() {
+		return contextCount;
+	}
+
+	/** @return the number of rows of all the contexts */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public Context getContext(int index) {
+		if ((index < 0) || (index >= contextCount))
+			throw new IndexOutOfBoundsException("Context " + index + " of " + file);
+		return new Context(index);
+	}
+
+	/** @return the contexts which have no parent */
+	public List<Context> getRootContexts() {
+		List<Context> roots = new ArrayList<>();
+		for (int i = 0; i < contextCount; i++) {
+			Context context = new Context(i);
+			if (context.getDepth() == 0)
+				roots.add(context);
+		}
+		return roots;
+	}
+
+	@Override
+	public String toString() {
+		return file.getName();
+	}
+
+}
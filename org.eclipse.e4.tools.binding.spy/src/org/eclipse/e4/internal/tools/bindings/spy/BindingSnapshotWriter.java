@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.bindings.Binding;
+
+/**
+ * Write a BindingSnapshot file. The rows of each context are written as soon
+ * as the context is added, only the distinct strings and the context table are
+ * kept until the file is closed.
+ *
+ * @see BindingSnapshot
+ */
+public class BindingSnapshotWriter implements Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+	private final Map<String, Integer> stringIds = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+
+	/** The records of the added contexts, CONTEXT_FIELDS ints each */
+	private int[] contexts = new int[64 * BindingSnapshot.CONTEXT_FIELDS];
+	private int contextCount;
+
+	/** The index of the last context added at each depth */
+	private int[] parents = new int[16];
+	private int lastDepth = -1;
+
+	private int rowCount;
+
+	public BindingSnapshotWriter(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		// The header is written on close, once the table offsets are known
+		channel.position(BindingSnapshot.HEADER_SIZE);
+	}
+
+	/**
+	 * Write the snapshot of models already extracted (see BindingExtractor),
+	 * for instance in the UI thread. The file is deleted if it could not be
+	 * written completely : the writer has been closed, do not leave a valid
+	 * header on partial rows.
+	 *
+	 * @param depths
+	 *            the depth of each model
+	 */
+	public static void write(List<BindingRowModel> models, List<Integer> depths, File file) throws IOException {
+		boolean written = false;
+		try (BindingSnapshotWriter writer = new BindingSnapshotWriter(file)) {
+			for (int i = 0; i < models.size(); i++) {
+				writer.addContext(models.get(i), depths.get(i).intValue());
+			}
+			written = true;
+		} finally {
+			if (!written)
+				file.delete();
+		}
+	}
+
+	/**
+	 * Add a context and write its rows. Contexts must be added parents before
+	 * children, as a BindingExtractor visits them.
+	 *
+	 * @param depth
+	 *            the depth of the context, 0 for the root contexts
+	 */
+	public void addContext(BindingRowModel model, int depth) throws IOException {
+		if ((depth < 0) || (depth > lastDepth + 1))
+			throw new IllegalArgumentException("No parent context for depth " + depth);
+		if (contexts.length < (contextCount + 1) * BindingSnapshot.CONTEXT_FIELDS)
+			contexts = Arrays.copyOf(contexts, contexts.length * 2);
+		if (parents.length <= depth)
+			parents = Arrays.copyOf(parents, Math.max(parents.length * 2, depth + 1));
+
+		int record = contextCount * BindingSnapshot.CONTEXT_FIELDS;
+		contexts[record + BindingSnapshot.CONTEXT_NAME] = intern(String.valueOf(model.getContext()));
+		contexts[record + BindingSnapshot.CONTEXT_PARENT] = (depth == 0) ? -1 : parents[depth - 1];
+		contexts[record + BindingSnapshot.CONTEXT_DEPTH] = depth;
+		contexts[record + BindingSnapshot.CONTEXT_FIRST_ROW] = rowCount;
+		contexts[record + BindingSnapshot.CONTEXT_ACTIVE_COUNT] = model.getActiveRows().size();
+		contexts[record + BindingSnapshot.CONTEXT_CONFLICT_COUNT] = model.getConflictRows().size();
+		parents[depth] = contextCount++;
+		lastDepth = depth;
+
+		for (BindingRow row : model.getActiveRows())
+			writeRow(row);
+		for (BindingRow row : model.getConflictRows())
+			writeRow(row);
+	}
+
+	private void writeRow(BindingRow row) throws IOException {
+		if (rowCount == (Integer.MAX_VALUE - BindingSnapshot.HEADER_SIZE) / BindingSnapshot.ROW_SIZE)
+			throw new IOException("Too many bindings for a snapshot");
+		if (buffer.remaining() < BindingSnapshot.ROW_SIZE)
+			flush();
+		Binding binding = row.getBinding();
+		int flags = (row.isEnabled() ? BindingSnapshot.FLAG_ENABLED : 0)
+				| (row.isError(BindingDataProvider.Column.CATEGORY) ? BindingSnapshot.FLAG_CATEGORY_ERROR : 0)
+				| ((binding.getType() == Binding.USER) ? BindingSnapshot.FLAG_USER : 0);
+
+		// Written in the order of the ROW_ fields
+		buffer.putInt(intern(row.getText(BindingDataProvider.Column.TRIGGER_SEQUENCE)));
+		buffer.putInt(intern(row.getCommandId()));
+		buffer.putInt(intern(row.getCommandName()));
+		buffer.putInt(intern(row.getCommandDescription()));
+		buffer.putInt(intern(row.getCommandError()));
+		buffer.putInt(intern(row.getHandler()));
+		buffer.putInt(intern(row.getContextHandler()));
+		buffer.putInt(intern(row.getCategory()));
+		buffer.putInt(intern(binding.getContextId()));
+		buffer.putInt(intern(binding.getSchemeId()));
+		buffer.putInt(intern(binding.getPlatform()));
+		buffer.putInt(intern(binding.getLocale()));
+		buffer.putInt(flags);
+		rowCount++;
+	}
+
+	/** @return the id of this string in the string table, -1 for null */
+	private int intern(String value) {
+		if (value == null)
+			return -1;
+		Integer id = stringIds.get(value);
+		if (id == null) {
+			id = strings.size();
+			stringIds.put(value, id);
+			strings.add(value);
+		}
+		return id;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/** Write the context and string tables, then the header */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			long contextOffset = channel.position();
+			for (int i = 0; i < contextCount * BindingSnapshot.CONTEXT_FIELDS; i++) {
+				if (buffer.remaining() < 4)
+					flush();
+				buffer.putInt(contexts[i]);
+			}
+			flush();
+
+			long stringOffset = channel.position();
+			byte[][] encoded = new byte[strings.size()][];
+			int offset = 0;
+			for (int i = 0; i < encoded.length; i++) {
+				encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+				if (buffer.remaining() < 4)
+					flush();
+				buffer.putInt(offset);
+				offset += encoded[i].length;
+			}
+			if (buffer.remaining() < 4)
+				flush();
+			buffer.putInt(offset);
+			for (byte[] bytes : encoded) {
+				for (int start = 0; start < bytes.length;) {
+					if (!buffer.hasRemaining())
+						flush();
+					int length = Math.min(bytes.length - start, buffer.remaining());
+					buffer.put(bytes, start, length);
+					start += length;
+				}
+			}
+			flush();
+
+			buffer.putInt(BindingSnapshot.MAGIC).putInt(BindingSnapshot.VERSION).putInt(contextCount)
+					.putInt(rowCount).putInt(strings.size()).putInt(0).putLong(contextOffset).putLong(stringOffset);
+			buffer.flip();
+			for (long position = 0; buffer.hasRemaining();)
+				position += channel.write(buffer, position);
+			buffer.clear();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
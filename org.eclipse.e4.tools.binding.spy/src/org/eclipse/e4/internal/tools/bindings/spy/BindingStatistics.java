@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.bindings.Binding;
+
+/**
+ * The aggregate numbers of the bindings of a model : bindings per binding
+ * context id, scheme, type, platform and locale, and the commands without
+ * handler or with an undefined category. They are counted in one pass over the
+ * rows, then kept up to date with the deltas of the model : only the added and
+ * removed rows are counted again.
+ *
+ * @see BindingStatisticsPart
+ */
+public final class BindingStatistics {
+
+	/** The groups of counters */
+	public static enum Group {
+		BINDING_CONTEXT_ID("Binding context id"), SCHEME("Scheme"), TYPE("Type"), PLATFORM("Platform"),
+		LOCALE("Locale"), COMMANDS("Commands");
+
+		private final String label;
+
+		private Group(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/** The number of bindings for one value of a group */
+	public static final class Counter {
+		private final Group group;
+		private final String key;
+		private int count;
+
+		Counter(Group group, String key) {
+			this.group = group;
+			this.key = key;
+		}
+
+		public Group getGroup() {
+			return group;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return key + " : " + count;
+		}
+	}
+
+	static final String NO_VALUE = "(all)";
+	static final String WITHOUT_HANDLER = "Commands without handler";
+	static final String UNDEFINED_CATEGORY = "Commands with an undefined category";
+
+	private static final Group[] GROUPS = Group.values();
+
+	private static final Comparator<Counter> BY_COUNT = new Comparator<Counter>() {
+		@Override
+		public int compare(Counter c1, Counter c2) {
+			int diff = Integer.compare(c2.count, c1.count);
+			return (diff != 0) ? diff : c1.key.compareTo(c2.key);
+		}
+	};
+
+	private BindingRowModel model;
+
+	private int rowCount;
+
+	/** The counters of each group by value, indexed by Group ordinal */
+	private final List<Map<String, Counter>> counters = new ArrayList<>(GROUPS.length);
+
+	/* The number of rows of each command without handler or with an undefined category */
+	private final Map<String, int[]> unhandledCommands = new HashMap<>();
+	private final Map<String, int[]> uncategorizedCommands = new HashMap<>();
+
+	private BindingStatistics(BindingRowModel model) {
+		this.model = model;
+		for (int i = 0; i < GROUPS.length; i++) {
+			counters.add(new HashMap<String, Counter>());
+		}
+	}
+
+	/** Count the rows of a model in one pass */
+	public static BindingStatistics compute(BindingRowModel model) {
+		BindingStatistics statistics = new BindingStatistics(model);
+		for (int i = 0; i < model.size(); i++) {
+			statistics.count(model.getRow(i), 1);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Count the rows added and removed by this delta
+	 *
+	 * @return false if the delta does not apply to the counted model, which
+	 *         must then be computed again
+	 */
+	public boolean apply(BindingModelDelta delta) {
+		if (delta.getOldModel() != model)
+			return false;
+		BindingRowModel oldModel = delta.getOldModel();
+		BindingRowModel newModel = delta.getNewModel();
+		// The indexes are only scanned on the sides which changed
+		for (int i = 0; (delta.getRemovedCount() > 0) && (i < oldModel.size()); i++) {
+			if (delta.getNewIndex(i) < 0)
+				count(oldModel.getRow(i), -1);
+		}
+		for (int i = 0; (delta.getAddedCount() > 0) && (i < newModel.size()); i++) {
+			if (delta.getOldIndex(i) < 0)
+				count(newModel.getRow(i), 1);
+		}
+		model = newModel;
+		return true;
+	}
+
+	/** Add (increment 1) or remove (increment -1) a row from all the counters */
+	private void count(BindingRow row, int increment) {
+		Binding binding = row.getBinding();
+		rowCount += increment;
+		count(Group.BINDING_CONTEXT_ID, binding.getContextId(), increment);
+		count(Group.SCHEME, binding.getSchemeId(), increment);
+		count(Group.TYPE, (binding.getType() == Binding.SYSTEM) ? "SYSTEM" : "USER", increment);
+		count(Group.PLATFORM, binding.getPlatform(), increment);
+		count(Group.LOCALE, binding.getLocale(), increment);
+		if (!row.hasHandler())
+			count(unhandledCommands, row.getCommandId(), increment);
+		if (row.isError(BindingDataProvider.Column.CATEGORY))
+			count(uncategorizedCommands, row.getCommandId(), increment);
+	}
+
+	private void count(Group group, String key, int increment) {
+		Map<String, Counter> groupCounters = counters.get(group.ordinal());
+		if (key == null)
+			key = NO_VALUE;
+		Counter counter = groupCounters.get(key);
+		if (counter == null) {
+			counter = new Counter(group, key);
+			groupCounters.put(key, counter);
+		}
+		counter.count += increment;
+		if (counter.count == 0)
+			groupCounters.remove(key);
+	}
+
+	/** Count the rows of each command, a command is counted while it has rows */
+	private static void count(Map<String, int[]> commands, String commandId, int increment) {
+		int[] rows = commands.get(commandId);
+		if (rows == null) {
+			rows = new int[1];
+			commands.put(commandId, rows);
+		}
+		rows[0] += increment;
+		if (rows[0] == 0)
+			commands.remove(commandId);
+	}
+
+	/** @return the counted model, the new model of the last delta applied */
+	public BindingRowModel getModel() {
+		return model;
+	}
+
+	/** @return the number of bindings counted */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/** @return the counters of a group, the highest count first */
+	public List<Counter> getCounters(Group group) {
+		if (group == Group.COMMANDS) {
+			Counter unhandled = new Counter(group, WITHOUT_HANDLER);
+			unhandled.count = unhandledCommands.size();
+			Counter uncategorized = new Counter(group, UNDEFINED_CATEGORY);
+			uncategorized.count = uncategorizedCommands.size();
+			List<Counter> result = new ArrayList<>(2);
+			result.add(unhandled);
+			result.add(uncategorized);
+			return result;
+		}
+		List<Counter> result = new ArrayList<>(counters.get(group.ordinal()).values());
+		Collections.sort(result, BY_COUNT);
+		return result;
+	}
+
+	/** @return the number of counters of a group */
+	public int getCounterCount(Group group) {
+		return (group == Group.COMMANDS) ? 2 : counters.get(group.ordinal()).size();
+	}
+
+}
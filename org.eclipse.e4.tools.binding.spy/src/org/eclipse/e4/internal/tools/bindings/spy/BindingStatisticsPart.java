@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import javax.annotation.PostConstruct;
+
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.TreeViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Tree;
+
+/**
+ * Display the BindingStatistics of the model displayed by the BindingDataPart :
+ * one node per group, one plain row per counter. The statistics are updated
+ * with the deltas of the model, the viewer is refreshed only when it is
+ * visible.
+ */
+public class BindingStatisticsPart {
+
+	private TreeViewer statisticsViewer;
+	private Label summary;
+
+	private BindingStatistics statistics;
+
+	/** True when the statistics changed while the viewer was hidden */
+	private boolean stale;
+
+	private final ITreeContentProvider contentProvider = new ITreeContentProvider() {
+		@Override
+		public Object[] getElements(Object inputElement) {
+			return (statistics == null) ? new Object[0] : BindingStatistics.Group.values();
+		}
+
+		@Override
+		public Object[] getChildren(Object parentElement) {
+			if ((statistics != null) && (parentElement instanceof BindingStatistics.Group))
+				return statistics.getCounters((BindingStatistics.Group) parentElement).toArray();
+			return new Object[0];
+		}
+
+		@Override
+		public Object getParent(Object element) {
+			return (element instanceof BindingStatistics.Counter) ? ((BindingStatistics.Counter) element).getGroup()
+					: null;
+		}
+
+		@Override
+		public boolean hasChildren(Object element) {
+			return (statistics != null) && (element instanceof BindingStatistics.Group)
+					&& (statistics.getCounterCount((BindingStatistics.Group) element) > 0);
+		}
+
+		@Override
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+
+		@Override
+		public void dispose() {
+		}
+	};
+
+	@PostConstruct
+	public void createControls(Composite parent) {
+		parent.setLayout(new GridLayout(1, false));
+
+		summary = new Label(parent, SWT.NONE);
+		summary.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		statisticsViewer = new TreeViewer(parent, SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER);
+		statisticsViewer.setContentProvider(contentProvider);
+		Tree tree = statisticsViewer.getTree();
+		tree.setHeaderVisible(true);
+		tree.setLinesVisible(true);
+		tree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+		TreeViewerColumn nameColumn = new TreeViewerColumn(statisticsViewer, SWT.NONE);
+		nameColumn.getColumn().setText("Statistic");
+		nameColumn.getColumn().setWidth(350);
+		nameColumn.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				if (element instanceof BindingStatistics.Group)
+					return ((BindingStatistics.Group) element).getLabel();
+				return ((BindingStatistics.Counter) element).getKey();
+			}
+		});
+
+		TreeViewerColumn countColumn = new TreeViewerColumn(statisticsViewer, SWT.RIGHT);
+		countColumn.getColumn().setText("Count");
+		countColumn.getColumn().setWidth(100);
+		countColumn.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				if (element instanceof BindingStatistics.Group) {
+					BindingStatistics.Group group = (BindingStatistics.Group) element;
+					return (group == BindingStatistics.Group.COMMANDS) ? ""
+							: statistics.getCounterCount(group) + " values";
+				}
+				return String.valueOf(((BindingStatistics.Counter) element).getCount());
+			}
+		});
+
+		statisticsViewer.setInput(this);
+	}
+
+	/** Count the rows of this model (null for none), unless it is the counted one */
+	public void setModel(BindingRowModel model) {
+		if ((statistics != null) && (statistics.getModel() == model))
+			return;
+		statistics = (model == null) ? null : BindingStatistics.compute(model);
+		refresh();
+	}
+
+	/** Count the rows changed by a delta of the displayed model */
+	public void applyDelta(BindingModelDelta delta) {
+		if ((statistics == null) || !statistics.apply(delta))
+			statistics = BindingStatistics.compute(delta.getNewModel());
+		refresh();
+	}
+
+	/** Refresh the viewer if it is visible, or else when it is shown */
+	public void refresh() {
+		if (statisticsViewer.getControl().isDisposed())
+			return;
+		if (!statisticsViewer.getControl().isVisible()) {
+			stale = true;
+			return;
+		}
+		stale = false;
+		summary.setText((statistics == null) ? "Select a context"
+				: statistics.getRowCount() + " bindings in " + statistics.getModel().getContext());
+		statisticsViewer.refresh();
+		statisticsViewer.expandAll();
+	}
+
+	/** Called when the viewer is shown : refresh it if it missed some changes */
+	public void shown() {
+		if (stale)
+			refresh();
+	}
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * The search of a pattern in the whole context tree, with one fork/join task
+ * per subtree : the contexts are matched in parallel on all the cores, and the
+ * match counts are summed up the tree as the tasks of the children are joined.
+ *
+ * The tree is captured as Nodes in the UI thread, where the models are built
+ * (see BindingSearchJob). The scan itself only reads the immutable rows.
+ *
+ * @see BindingSearchJob
+ */
+public final class BindingTreeScan {
+
+	/** Shared by all the scans, one worker per core */
+	private static ForkJoinPool pool;
+
+	/** The matches of a context and of its subtree (the context and all its descendants) */
+	public static final class Counts {
+		private final int rows;
+		private final int subtreeRows;
+		private final int subtreeContexts;
+
+		Counts(int rows, int subtreeRows, int subtreeContexts) {
+			this.rows = rows;
+			this.subtreeRows = subtreeRows;
+			this.subtreeContexts = subtreeContexts;
+		}
+
+		/** @return the number of matching rows of this context */
+		public int getRows() {
+			return rows;
+		}
+
+		/** @return the number of matching rows of this context and its descendants */
+		public int getSubtreeRows() {
+			return subtreeRows;
+		}
+
+		/** @return the number of contexts with a matching row, this one included */
+		public int getSubtreeContexts() {
+			return subtreeContexts;
+		}
+	}
+
+	/** A context of the tree to scan : its model and its children */
+	public static final class Node {
+		/* Set before the scan, once the model is built */
+		private BindingRowModel model;
+		private final List<Node> children = new ArrayList<>();
+
+		/* Written by the task of this node, read once the scan is joined */
+		private BitSet rows;
+		private Counts counts;
+
+		public Node(BindingRowModel model) {
+			this.model = model;
+		}
+
+		public void setModel(BindingRowModel model) {
+			this.model = model;
+		}
+
+		public void addChild(Node child) {
+			children.add(child);
+		}
+	}
+
+	/** Match a node, while the subtrees of its children are matched by other workers */
+	private static final class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		private final BindingQuery query;
+		private final IProgressMonitor monitor;
+
+		ScanTask(Node node, BindingQuery query, IProgressMonitor monitor) {
+			this.node = node;
+			this.query = query;
+			this.monitor = monitor;
+		}
+
+		@Override
+		protected void compute() {
+			if (monitor.isCanceled())
+				return;
+			List<ScanTask> subtasks = new ArrayList<>(node.children.size());
+			for (Node child : node.children) {
+				ScanTask subtask = new ScanTask(child, query, monitor);
+				subtask.fork();
+				subtasks.add(subtask);
+			}
+
+			node.rows = (node.model == null) ? new BitSet() : query.find(node.model);
+			int rows = node.rows.cardinality();
+			int subtreeRows = rows;
+			int subtreeContexts = (rows > 0) ? 1 : 0;
+			// Joined in reverse order, the last forked task is the most likely to be still local
+			for (int i = subtasks.size() - 1; i >= 0; i--) {
+				subtasks.get(i).join();
+				Counts childCounts = subtasks.get(i).node.counts;
+				if (childCounts == null)
+					return; // Canceled
+				subtreeRows += childCounts.subtreeRows;
+				subtreeContexts += childCounts.subtreeContexts;
+			}
+			node.counts = new Counts(rows, subtreeRows, subtreeContexts);
+		}
+	}
+
+	private BindingTreeScan() {
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/** Stop the workers when the bundle stops, a next scan would start new ones */
+	public static synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Search a pattern in the contexts of a tree. This method only reads the
+	 * immutable rows and can be called from any thread.
+	 *
+	 * @param roots
+	 *            the root contexts, with their children
+	 * @return the search result, or null if the monitor has been canceled
+	 */
+	public static BindingDataFilter.SearchResult scan(String pattern, List<Node> roots, IProgressMonitor monitor) {
+		BindingDataFilter.SearchResult result = new BindingDataFilter.SearchResult(pattern);
+		if (result.getQuery() == null)
+			return result;
+
+		// A node without model holds the roots, so that one task is submitted
+		Node top = new Node(null);
+		top.children.addAll(roots);
+		getPool().invoke(new ScanTask(top, result.getQuery(), monitor));
+		if (monitor.isCanceled() || (top.counts == null))
+			return null;
+
+		Deque<Node> toVisit = new ArrayDeque<>(roots);
+		while (!toVisit.isEmpty()) {
+			Node node = toVisit.poll();
+			result.add(node.model, node.rows, node.counts);
+			toVisit.addAll(node.children);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.jface.bindings.Trigger;
+import org.eclipse.jface.bindings.TriggerSequence;
+
+/**
+ * A prefix tree of the bindings of several contexts, keyed on their triggers
+ * (the key strokes of a key sequence). A node holds the bindings ending with
+ * its sequence, grouped by context, and the contexts having a longer active
+ * binding starting with it. The conflict, prefix and "what fires" questions
+ * are then answered by walking one path, in O(sequence length).
+ *
+ * The trie is immutable once built, it can be read from any thread.
+ *
+ * @see BindingAnalysis
+ */
+public final class BindingTrie {
+
+	/** A binding of a context */
+	public static final class Entry {
+		private final IEclipseContext context;
+		private final BindingRow row;
+		private final boolean active;
+
+		Entry(IEclipseContext context, BindingRow row, boolean active) {
+			this.context = context;
+			this.row = row;
+			this.active = active;
+		}
+
+		public IEclipseContext getContext() {
+			return context;
+		}
+
+		public BindingRow getRow() {
+			return row;
+		}
+
+		/** @return true for an active binding, false for a conflict */
+		public boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public String toString() {
+			return row.getText(BindingDataProvider.Column.TRIGGER_SEQUENCE) + " -> " + row.getCommandId() + " in "
+					+ context;
+		}
+	}
+
+	private static final class Node {
+		/** The next triggers, null for a leaf */
+		Map<Trigger, Node> children;
+
+		/** The bindings ending here, by context, null if none */
+		Map<IEclipseContext, List<Entry>> entries;
+
+		/** The contexts with an active binding longer than this node, null if none */
+		Set<IEclipseContext> prefixOf;
+
+		Node getChild(Trigger trigger) {
+			return (children == null) ? null : children.get(trigger);
+		}
+	}
+
+	private final Node root = new Node();
+
+	private int bindingCount;
+	private int nodeCount = 1;
+
+	private BindingTrie() {
+	}
+
+	/** Build the trie of the active and conflicting bindings of these models */
+	public static BindingTrie build(Collection<BindingRowModel> models) {
+		BindingTrie trie = new BindingTrie();
+		for (BindingRowModel model : models) {
+			IEclipseContext ctx = model.getContext();
+			for (BindingRow row : model.getActiveRows()) {
+				trie.add(ctx, row, true);
+			}
+			for (BindingRow row : model.getConflictRows()) {
+				trie.add(ctx, row, false);
+			}
+		}
+		return trie;
+	}
+
+	private void add(IEclipseContext ctx, BindingRow row, boolean active) {
+		Trigger[] triggers = row.getBinding().getTriggerSequence().getTriggers();
+		if (triggers.length == 0)
+			return;
+		Node node = root;
+		for (int i = 0; i < triggers.length; i++) {
+			if ((i > 0) && active) {
+				if (node.prefixOf == null)
+					node.prefixOf = Collections.newSetFromMap(new IdentityHashMap<IEclipseContext, Boolean>());
+				node.prefixOf.add(ctx);
+			}
+			if (node.children == null)
+				node.children = new HashMap<>(4);
+			Node child = node.children.get(triggers[i]);
+			if (child == null) {
+				child = new Node();
+				node.children.put(triggers[i], child);
+				nodeCount++;
+			}
+			node = child;
+		}
+		if (node.entries == null)
+			node.entries = new IdentityHashMap<>(4);
+		List<Entry> ctxEntries = node.entries.get(ctx);
+		if (ctxEntries == null) {
+			ctxEntries = new ArrayList<>(1);
+			node.entries.put(ctx, ctxEntries);
+		}
+		ctxEntries.add(new Entry(ctx, row, active));
+		bindingCount++;
+	}
+
+	/** @return the node of this sequence, or null if no binding starts with it */
+	private Node find(TriggerSequence sequence) {
+		Node node = root;
+		for (Trigger trigger : sequence.getTriggers()) {
+			node = node.getChild(trigger);
+			if (node == null)
+				return null;
+		}
+		return (node == root) ? null : node;
+	}
+
+	/** @return the bindings of all the contexts on exactly this sequence */
+	public List<Entry> getBindings(TriggerSequence sequence) {
+		Node node = find(sequence);
+		if ((node == null) || (node.entries == null))
+			return Collections.emptyList();
+		List<Entry> result = new ArrayList<>();
+		for (List<Entry> ctxEntries : node.entries.values()) {
+			result.addAll(ctxEntries);
+		}
+		return result;
+	}
+
+	/** @return the bindings of this context on exactly this sequence (active first) */
+	public List<Entry> getBindings(IEclipseContext context, TriggerSequence sequence) {
+		Node node = find(sequence);
+		if ((node == null) || (node.entries == null))
+			return Collections.emptyList();
+		List<Entry> ctxEntries = node.entries.get(context);
+		return (ctxEntries == null) ? Collections.<Entry> emptyList() : Collections.unmodifiableList(ctxEntries);
+	}
+
+	/**
+	 * @return true if an active binding of this context is longer than this
+	 *         sequence and starts with it : the key binding dispatcher then
+	 *         waits for the next key, a binding on this exact sequence never
+	 *         fires
+	 */
+	public boolean isPrefix(IEclipseContext context, TriggerSequence sequence) {
+		Node node = find(sequence);
+		return (node != null) && (node.prefixOf != null) && node.prefixOf.contains(context);
+	}
+
+	/**
+	 * @return the binding executed by the key binding dispatcher of this
+	 *         context for this sequence, or null if nothing fires (no
+	 *         binding, the sequence is a prefix of a longer one, or several
+	 *         active bindings)
+	 */
+	public Entry getFired(IEclipseContext context, TriggerSequence sequence) {
+		Node node = find(sequence);
+		if ((node == null) || (node.entries == null))
+			return null;
+		if ((node.prefixOf != null) && node.prefixOf.contains(context))
+			return null;
+		List<Entry> ctxEntries = node.entries.get(context);
+		if (ctxEntries == null)
+			return null;
+		Entry fired = null;
+		for (Entry entry : ctxEntries) {
+			if (entry.active) {
+				if (fired != null)
+					return null;
+				fired = entry;
+			}
+		}
+		return fired;
+	}
+
+	/**
+	 * @return one active binding of this context longer than this sequence and
+	 *         starting with it, or null if there is none
+	 */
+	public Entry getLongerBinding(IEclipseContext context, TriggerSequence sequence) {
+		Node node = find(sequence);
+		if ((node == null) || (node.prefixOf == null) || !node.prefixOf.contains(context))
+			return null;
+		// Only go down the branches where this context has a longer binding
+		while (node.children != null) {
+			Node next = null;
+			for (Node child : node.children.values()) {
+				Entry entry = getActiveEntry(child, context);
+				if (entry != null)
+					return entry;
+				if ((next == null) && (child.prefixOf != null) && child.prefixOf.contains(context))
+					next = child;
+			}
+			if (next == null)
+				return null;
+			node = next;
+		}
+		return null;
+	}
+
+	private static Entry getActiveEntry(Node node, IEclipseContext context) {
+		if (node.entries == null)
+			return null;
+		List<Entry> ctxEntries = node.entries.get(context);
+		if (ctxEntries != null) {
+			for (Entry entry : ctxEntries) {
+				if (entry.active)
+					return entry;
+			}
+		}
+		return null;
+	}
+
+	/** @return the number of bindings of all the contexts */
+	public int getBindingCount() {
+		return bindingCount;
+	}
+
+	/** @return the number of distinct trigger prefixes (plus the root) */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public String toString() {
+		return "BindingTrie : " + bindingCount + " bindings, " + nodeCount + " nodes";
+	}
+
+}
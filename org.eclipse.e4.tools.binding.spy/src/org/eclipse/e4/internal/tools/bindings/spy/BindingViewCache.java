@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+
+/**
+ * The prepared views of the contexts recently displayed by a BindingDataPart :
+ * the filtered and sorted rows of each node and the column widths. Going back
+ * to one of these contexts reuses them, instead of sorting its rows and
+ * measuring all the cells again.
+ *
+ * The cache keeps the MAX_ENTRIES contexts displayed last, which are weakly
+ * referenced. An entry is only valid for the model and the view generation it
+ * was prepared with, and it is dropped as soon as the bindings of its context
+ * change.
+ */
+public class BindingViewCache implements BindingModelRegistry.IModelListener {
+
+	static final int MAX_ENTRIES = 16;
+
+	/** The prepared view of a context */
+	public static final class Entry {
+		private final WeakReference<BindingRowModel> model;
+		private final int generation;
+		private final Map<Object, int[]> views;
+		private final int[] columnWidths;
+
+		Entry(BindingRowModel model, int generation, Map<Object, int[]> views, int[] columnWidths) {
+			this.model = new WeakReference<>(model);
+			this.generation = generation;
+			this.views = views;
+			this.columnWidths = columnWidths;
+		}
+
+		/** @return the filtered and sorted row positions of each node */
+		public Map<Object, int[]> getViews() {
+			return views;
+		}
+
+		public int[] getColumnWidths() {
+			return columnWidths;
+		}
+	}
+
+	/** A context weakly referenced, compared by identity */
+	private static final class Key extends WeakReference<IEclipseContext> {
+		private final int hash;
+
+		Key(IEclipseContext context, ReferenceQueue<IEclipseContext> queue) {
+			super(context, queue);
+			hash = System.identityHashCode(context);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			IEclipseContext context = get();
+			return (context != null) && (context == ((Key) obj).get());
+		}
+	}
+
+	private final ReferenceQueue<IEclipseContext> queue = new ReferenceQueue<>();
+
+	/**
+	 * The entries, the least recently used first. Guarded by this. In the
+	 * anonymous map, Entry is the inherited Map.Entry : qualify ours.
+	 */
+	private final Map<Key, Entry> entries = new LinkedHashMap<Key, BindingViewCache.Entry>(MAX_ENTRIES, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, BindingViewCache.Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/** Keep the prepared view of a context, as the most recently used */
+	public synchronized void put(IEclipseContext context, BindingRowModel model, int generation,
+			Map<Object, int[]> views, int[] columnWidths) {
+		expungeStaleKeys();
+		entries.put(new Key(context, queue), new Entry(model, generation, views, columnWidths));
+	}
+
+	/**
+	 * @return the prepared view of a context if it was prepared for this model
+	 *         and generation, or null
+	 */
+	public synchronized Entry get(IEclipseContext context, BindingRowModel model, int generation) {
+		expungeStaleKeys();
+		Key key = new Key(context, null);
+		Entry entry = entries.get(key);
+		if ((entry != null) && ((entry.model.get() != model) || (entry.generation != generation))) {
+			entries.remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	/** @return the number of contexts kept */
+	public synchronized int size() {
+		expungeStaleKeys();
+		return entries.size();
+	}
+
+	/** The bindings of a context (or of all if null) have changed : forget their views */
+	@Override
+	public synchronized void modelInvalidated(IEclipseContext context) {
+		if (context == null)
+			entries.clear();
+		else
+			entries.remove(new Key(context, null));
+	}
+
+	private void expungeStaleKeys() {
+		Reference<? extends IEclipseContext> ref;
+		while ((ref = queue.poll()) != null) {
+			// A cleared key keeps its hash and is only equal to itself
+			entries.remove(ref);
+		}
+	}
+
+}
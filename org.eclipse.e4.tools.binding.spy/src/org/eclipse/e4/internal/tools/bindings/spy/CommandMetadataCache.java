@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.CategoryEvent;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandEvent;
+import org.eclipse.core.commands.ICategoryListener;
+import org.eclipse.core.commands.ICommandListener;
+import org.eclipse.core.commands.common.NotDefinedException;
+
+/**
+ * The name, description and category of the commands, resolved once per
+ * command id and shared by the rows of all the contexts. An undefined command
+ * or category is detected with isDefined, and this outcome is cached too : no
+ * NotDefinedException is created while rows are built.
+ *
+ * An entry is forgotten when its command or its category sends a definition
+ * change (defined, name, description or category). The listeners added to the
+ * commands and categories are removed by clear, when the bundle stops.
+ */
+public final class CommandMetadataCache {
+
+	/* The messages of the NotDefinedException that the getters would throw, see undefinedError */
+	private static final String UNDEFINED_NAME = "Cannot get the name from an undefined object. ";
+	private static final String UNDEFINED_CATEGORY = "Cannot get the category from an undefined command. ";
+
+	/** The resolved metadata of one command */
+	public static final class Metadata {
+		private final Command command;
+		private final String name;
+		private final String description;
+		private final String error;
+		private final String categoryId;
+		private final String category;
+		private final boolean categoryError;
+
+		Metadata(Command command, String name, String description, String error, String categoryId,
+				String category, boolean categoryError) {
+			this.command = command;
+			this.name = name;
+			this.description = description;
+			this.error = error;
+			this.categoryId = categoryId;
+			this.category = category;
+			this.categoryError = categoryError;
+		}
+
+		/** @return the name, or null if the command is not defined */
+		public String getName() {
+			return name;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		/** @return the message displayed when the command is not defined, or null */
+		public String getError() {
+			return error;
+		}
+
+		/** @return the name of the category, or the message displayed if it is not defined */
+		public String getCategory() {
+			return category;
+		}
+
+		public boolean isCategoryError() {
+			return categoryError;
+		}
+	}
+
+	private static final ConcurrentMap<String, Metadata> entries = new ConcurrentHashMap<>();
+
+	/* The commands and categories we listen to, to remove the listeners in clear */
+	private static final Set<Command> listenedCommands = ConcurrentHashMap.newKeySet();
+	private static final Set<Category> listenedCategories = ConcurrentHashMap.newKeySet();
+
+	private static final ICommandListener commandListener = new ICommandListener() {
+		@Override
+		public void commandChanged(CommandEvent event) {
+			if (event.isDefinedChanged() || event.isNameChanged() || event.isDescriptionChanged()
+					|| event.isCategoryChanged())
+				entries.remove(event.getCommand().getId());
+		}
+	};
+
+	private static final ICategoryListener categoryListener = new ICategoryListener() {
+		@Override
+		public void categoryChanged(CategoryEvent event) {
+			if (!event.isDefinedChanged() && !event.isNameChanged())
+				return;
+			String categoryId = event.getCategory().getId();
+			for (Iterator<Metadata> it = entries.values().iterator(); it.hasNext();) {
+				if (categoryId.equals(it.next().categoryId))
+					it.remove();
+			}
+		}
+	};
+
+	private CommandMetadataCache() {
+	}
+
+	/** @return the metadata of this command, resolved on first call */
+	public static Metadata get(Command command) {
+		Metadata metadata = entries.get(command.getId());
+		// Commands of another command manager can have the same id
+		if ((metadata != null) && (metadata.command == command))
+			return metadata;
+
+		// Listen before resolving, so that a change in between is not missed
+		if (listenedCommands.add(command))
+			command.addCommandListener(commandListener);
+		metadata = resolve(command);
+		entries.put(command.getId(), metadata);
+		return metadata;
+	}
+
+	/** Forget all the entries and stop listening to the commands and categories */
+	public static void clear() {
+		for (Iterator<Command> it = listenedCommands.iterator(); it.hasNext();) {
+			it.next().removeCommandListener(commandListener);
+			it.remove();
+		}
+		for (Iterator<Category> it = listenedCategories.iterator(); it.hasNext();) {
+			it.next().removeCategoryListener(categoryListener);
+			it.remove();
+		}
+		entries.clear();
+	}
+
+	/**
+	 * The text displayed for an undefined command or category : the message of
+	 * the NotDefinedException its getter would throw (UNDEFINED_NAME or
+	 * UNDEFINED_CATEGORY followed by the id), without creating the exception.
+	 */
+	private static String undefinedError(String message, String id) {
+		return BindingRow.EXCEPTION + message + id;
+	}
+
+	private static Metadata resolve(Command command) {
+		if (!command.isDefined())
+			return new Metadata(command, null, null, undefinedError(UNDEFINED_NAME, command.getId()), null,
+					undefinedError(UNDEFINED_CATEGORY, command.getId()), true);
+
+		try {
+			String name = command.getName();
+			String description = command.getDescription();
+			Category category = command.getCategory();
+			if (category == null)
+				return new Metadata(command, name, description, null, null, null, false);
+
+			if (listenedCategories.add(category))
+				category.addCategoryListener(categoryListener);
+			if (!category.isDefined())
+				return new Metadata(command, name, description, null, category.getId(),
+						undefinedError(UNDEFINED_NAME, category.getId()), true);
+			return new Metadata(command, name, description, null, category.getId(), category.getName(), false);
+		} catch (NotDefinedException e) {
+			// Undefined by another thread in between : resolve it again on next call
+			return new Metadata(null, null, null, BindingRow.EXCEPTION + e.getMessage(), null,
+					BindingRow.EXCEPTION + e.getMessage(), true);
+		}
+	}
+
+}
@@ -10,7 +10,10 @@
  *******************************************************************************/
 package org.eclipse.e4.internal.tools.bindings.spy;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -29,34 +32,51 @@ import org.osgi.framework.BundleContext;
  */
 public class ContextSpyHelper {
 
-	/**
-	 * Get all the contexts created by EclipseContextFactory. It get values from
-	 * field introspection. Should be rewritten if internal structure changes
-	 *
-	 * @return a collection of contexts created by EclipseContextFactory
-	 */
-	public static Collection<IEclipseContext> getAllBundleContexts() {
-		Collection<IEclipseContext> result = Collections.emptyList();
+	/** The getter of the EclipseContextFactory.serviceContexts field, resolved once */
+	private static final MethodHandle SERVICE_CONTEXTS_GETTER = findServiceContextsGetter();
+
+	private static MethodHandle findServiceContextsGetter() {
 		try {
 			// Must use introspection to get the weak hash map (no getter).
 			Field f = EclipseContextFactory.class.getDeclaredField("serviceContexts");
 			f.setAccessible(true);
-			@SuppressWarnings("unchecked")
-			Map<BundleContext, IEclipseContext> ctxs = (Map<BundleContext, IEclipseContext>) f.get(null);
-			result = ctxs.values();
-
+			return MethodHandles.lookup().unreflectGetter(f);
 		} catch (SecurityException e) {
 			e.printStackTrace();
 		} catch (NoSuchFieldException e) {
 			e.printStackTrace();
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
 		} catch (IllegalAccessException e) {
 			e.printStackTrace();
 		}
+		return null;
+	}
 
-		return result;
+	/**
+	 * Get all the contexts created by EclipseContextFactory. It get values from
+	 * field introspection. Should be rewritten if internal structure changes
+	 *
+	 * @return a snapshot of the contexts created by EclipseContextFactory
+	 */
+	public static Collection<IEclipseContext> getAllBundleContexts() {
+		if (SERVICE_CONTEXTS_GETTER == null)
+			return Collections.emptyList();
 
+		Map<BundleContext, IEclipseContext> ctxs;
+		try {
+			@SuppressWarnings("unchecked")
+			Map<BundleContext, IEclipseContext> map = (Map<BundleContext, IEclipseContext>) SERVICE_CONTEXTS_GETTER
+					.invoke();
+			ctxs = map;
+		} catch (Throwable e) {
+			e.printStackTrace();
+			return Collections.emptyList();
+		}
+
+		// The weak hash map is modified by other threads, EclipseContextFactory
+		// synchronizes on it : copy it with the same lock
+		synchronized (ctxs) {
+			return new ArrayList<>(ctxs.values());
+		}
 	}
 
 }
@@ -16,9 +16,11 @@ import javax.inject.Inject;
 
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.jface.viewers.DelegatingStyledCellLabelProvider.IStyledLabelProvider;
 import org.eclipse.jface.viewers.IColorProvider;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StyledString;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
@@ -33,10 +35,14 @@ import org.eclipse.swt.widgets.Display;
  * @author olivier
  *
  */
-public class ContextSpyLabelProvider extends LabelProvider implements ITreeContentProvider, IColorProvider {
+public class ContextSpyLabelProvider extends LabelProvider
+		implements ITreeContentProvider, IColorProvider, IStyledLabelProvider {
 
 	@Inject
 	private BindingDataFilter bindingFilter;
+
+	@Inject
+	private ContextTreeRegistry contextRegistry;
 	
 	private TreeViewer bindingDataViewer;
 
@@ -58,14 +64,22 @@ public class ContextSpyLabelProvider extends LabelProvider implements ITreeConte
 		if (inputElement instanceof Collection<?>) {
 			return ((Collection<?>) inputElement).toArray();
 		}
+		// An opened snapshot displays its contexts instead of the live ones
+		if (inputElement instanceof BindingSnapshot) {
+			return ((BindingSnapshot) inputElement).getRootContexts().toArray();
+		}
 
 		return new Object[0];
 	}
 
 	@Override
 	public Object[] getChildren(Object parentElement) {
+		// The registry keeps the children, they are not copied from the context on each call
 		if (parentElement instanceof EclipseContext) {
-			return ((EclipseContext) parentElement).getChildren().toArray();
+			return contextRegistry.getChildren((EclipseContext) parentElement).toArray();
+		}
+		if (parentElement instanceof BindingSnapshot.Context) {
+			return ((BindingSnapshot.Context) parentElement).getChildren().toArray();
 		}
 		return null;
 	}
@@ -73,14 +87,20 @@ public class ContextSpyLabelProvider extends LabelProvider implements ITreeConte
 	@Override
 	public Object getParent(Object element) {
 		if (element instanceof EclipseContext) {
-			return ((EclipseContext) element).getParent();
+			return contextRegistry.getParent((EclipseContext) element);
+		}
+		if (element instanceof BindingSnapshot.Context) {
+			return ((BindingSnapshot.Context) element).getParent();
 		}
 		return null;
 	}
 
 	@Override
 	public boolean hasChildren(Object element) {
-		return ((element instanceof EclipseContext) && !(((EclipseContext) element).getChildren().isEmpty()));
+		if (element instanceof BindingSnapshot.Context) {
+			return ((BindingSnapshot.Context) element).hasChildren();
+		}
+		return ((element instanceof EclipseContext) && contextRegistry.hasChildren((EclipseContext) element));
 	}
 
 	@Override
@@ -88,6 +108,26 @@ public class ContextSpyLabelProvider extends LabelProvider implements ITreeConte
 		return super.getText(element);
 	}
 
+	/** The text decorated with the match counts of the last search in this context and below */
+	@Override
+	public StyledString getStyledText(Object element) {
+		StyledString text = new StyledString(getText(element));
+		BindingTreeScan.Counts counts = (element instanceof IEclipseContext)
+				? bindingFilter.getCounts((IEclipseContext) element) : null;
+		if ((counts == null) || (counts.getSubtreeRows() == 0))
+			return text;
+
+		if (counts.getRows() > 0)
+			text.append(" (" + counts.getRows() + ")", StyledString.COUNTER_STYLER);
+		int belowRows = counts.getSubtreeRows() - counts.getRows();
+		if (belowRows > 0) {
+			int belowContexts = counts.getSubtreeContexts() - ((counts.getRows() > 0) ? 1 : 0);
+			text.append("  " + belowRows + " below in " + belowContexts
+					+ ((belowContexts == 1) ? " context" : " contexts"), StyledString.DECORATIONS_STYLER);
+		}
+		return text;
+	}
+
 	@Override
 	public Color getForeground(Object element) {
 		// Return a color if a text contained in this node contains the text.
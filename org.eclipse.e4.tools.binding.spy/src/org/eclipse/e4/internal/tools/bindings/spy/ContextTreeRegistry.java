@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+import org.eclipse.e4.core.internal.contexts.IContextDisposalListener;
+import org.eclipse.e4.ui.di.UIEventTopic;
+import org.eclipse.e4.ui.workbench.UIEvents;
+
+/**
+ * Keeps a snapshot of the context tree : the root contexts of
+ * EclipseContextFactory and the children of each context already visited. The
+ * contexts are weakly referenced. A disposed context is removed as soon as it
+ * is disposed, and the new contexts are found by a rescan of the visited
+ * contexts when the application model sets a context. The listeners receive
+ * these changes as deltas.
+ *
+ * All the methods can be called from any thread, they return copies.
+ */
+@Creatable
+@Singleton
+@SuppressWarnings("restriction")
+public class ContextTreeRegistry {
+
+	/** Notified when a context appears in or disappears from the tree */
+	public interface IContextTreeListener {
+		/**
+		 * @param parent
+		 *            the parent of the context, or null for a root context
+		 */
+		void contextAdded(IEclipseContext parent, IEclipseContext context);
+
+		/**
+		 * @param parent
+		 *            the parent of the context, or null for a root context
+		 */
+		void contextRemoved(IEclipseContext parent, IEclipseContext context);
+	}
+
+	/** What is known of a context */
+	private static final class Node {
+		/** The parent when the context was found, null for a root */
+		final WeakReference<IEclipseContext> parent;
+
+		/** The children found on last scan, or null if never scanned */
+		List<WeakReference<IEclipseContext>> children;
+
+		Node(IEclipseContext parent) {
+			this.parent = (parent == null) ? null : new WeakReference<>(parent);
+		}
+	}
+
+	/** All the known contexts, guarded by this */
+	private final Map<IEclipseContext, Node> nodes = new WeakHashMap<>();
+
+	/** The root contexts found on last scan, guarded by this */
+	private List<WeakReference<IEclipseContext>> roots;
+
+	private final CopyOnWriteArrayList<IContextTreeListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final IContextDisposalListener disposalListener = new IContextDisposalListener() {
+		@Override
+		public void disposed(IEclipseContext context) {
+			contextDisposed(context);
+		}
+	};
+
+	/** @return the contexts created by EclipseContextFactory */
+	public List<IEclipseContext> getRootContexts() {
+		synchronized (this) {
+			if (roots == null)
+				roots = register(null, ContextSpyHelper.getAllBundleContexts());
+			return toList(roots);
+		}
+	}
+
+	/** @return the children of this context, scanned once */
+	public List<IEclipseContext> getChildren(IEclipseContext context) {
+		synchronized (this) {
+			Node node = getNode(context);
+			if (node.children == null)
+				node.children = register(context, scanChildren(context));
+			return toList(node.children);
+		}
+	}
+
+	public boolean hasChildren(IEclipseContext context) {
+		synchronized (this) {
+			Node node = getNode(context);
+			if (node.children == null)
+				node.children = register(context, scanChildren(context));
+			for (WeakReference<IEclipseContext> child : node.children) {
+				if (child.get() != null)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/** @return the parent of this context when it was found, or null */
+	public IEclipseContext getParent(IEclipseContext context) {
+		synchronized (this) {
+			Node node = nodes.get(context);
+			if ((node == null) || (node.parent == null))
+				return null;
+			return node.parent.get();
+		}
+	}
+
+	/** @return all the contexts of the tree, parents first */
+	public List<IEclipseContext> getAllContexts() {
+		List<IEclipseContext> result = new ArrayList<>();
+		Deque<IEclipseContext> toVisit = new ArrayDeque<>(getRootContexts());
+		while (!toVisit.isEmpty()) {
+			IEclipseContext ctx = toVisit.poll();
+			result.add(ctx);
+			toVisit.addAll(getChildren(ctx));
+		}
+		return result;
+	}
+
+	/**
+	 * Compare the roots and the children of the contexts already scanned with
+	 * their current value, and notify the contexts added or removed.
+	 */
+	public void rescan() {
+		List<IEclipseContext[]> added = new ArrayList<>();
+		List<IEclipseContext[]> removed = new ArrayList<>();
+		synchronized (this) {
+			if (roots != null)
+				roots = rescan(null, roots, ContextSpyHelper.getAllBundleContexts(), added, removed);
+			for (Map.Entry<IEclipseContext, Node> entry : new ArrayList<>(nodes.entrySet())) {
+				Node node = entry.getValue();
+				if (node.children != null) {
+					IEclipseContext ctx = entry.getKey();
+					node.children = rescan(ctx, node.children, scanChildren(ctx), added, removed);
+				}
+			}
+		}
+		for (IEclipseContext[] delta : removed) {
+			fireRemoved(delta[0], delta[1]);
+		}
+		for (IEclipseContext[] delta : added) {
+			fireAdded(delta[0], delta[1]);
+		}
+	}
+
+	private List<WeakReference<IEclipseContext>> rescan(IEclipseContext parent,
+			List<WeakReference<IEclipseContext>> previous, Collection<? extends IEclipseContext> current,
+			List<IEclipseContext[]> added, List<IEclipseContext[]> removed) {
+		Set<IEclipseContext> previousSet = Collections.newSetFromMap(new IdentityHashMap<IEclipseContext, Boolean>());
+		for (IEclipseContext ctx : toList(previous)) {
+			previousSet.add(ctx);
+		}
+		for (IEclipseContext ctx : current) {
+			if (!previousSet.remove(ctx))
+				added.add(new IEclipseContext[] { parent, ctx });
+		}
+		for (IEclipseContext ctx : previousSet) {
+			removed.add(new IEclipseContext[] { parent, ctx });
+			nodes.remove(ctx);
+		}
+		return register(parent, current);
+	}
+
+	/** The application model sets a context on a part, a window... */
+	@Inject
+	@Optional
+	void modelContextChanged(@UIEventTopic(UIEvents.Context.TOPIC_CONTEXT) Object data) {
+		rescan();
+	}
+
+	public void addContextTreeListener(IContextTreeListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeContextTreeListener(IContextTreeListener listener) {
+		listeners.remove(listener);
+	}
+
+	private Node getNode(IEclipseContext context) {
+		Node node = nodes.get(context);
+		if (node == null) {
+			node = new Node(context.getParent());
+			nodes.put(context, node);
+			watch(context);
+		}
+		return node;
+	}
+
+	/** Remember these contexts and their parent, and listen to their disposal */
+	private List<WeakReference<IEclipseContext>> register(IEclipseContext parent,
+			Collection<? extends IEclipseContext> contexts) {
+		List<WeakReference<IEclipseContext>> refs = new ArrayList<>(contexts.size());
+		for (IEclipseContext ctx : contexts) {
+			refs.add(new WeakReference<>(ctx));
+			if (!nodes.containsKey(ctx)) {
+				nodes.put(ctx, new Node(parent));
+				watch(ctx);
+			}
+		}
+		return refs;
+	}
+
+	private void watch(IEclipseContext context) {
+		if (context instanceof EclipseContext)
+			((EclipseContext) context).notifyOnDisposal(disposalListener);
+	}
+
+	private static Collection<? extends IEclipseContext> scanChildren(IEclipseContext context) {
+		if (context instanceof EclipseContext)
+			return ((EclipseContext) context).getChildren();
+		return Collections.emptyList();
+	}
+
+	private static List<IEclipseContext> toList(List<WeakReference<IEclipseContext>> refs) {
+		List<IEclipseContext> result = new ArrayList<>(refs.size());
+		for (WeakReference<IEclipseContext> ref : refs) {
+			IEclipseContext ctx = ref.get();
+			if (ctx != null)
+				result.add(ctx);
+		}
+		return result;
+	}
+
+	private void contextDisposed(IEclipseContext context) {
+		IEclipseContext parent;
+		synchronized (this) {
+			Node node = nodes.remove(context);
+			if (node == null)
+				return;
+			parent = (node.parent == null) ? null : node.parent.get();
+			List<WeakReference<IEclipseContext>> siblings = null;
+			if (node.parent == null) {
+				siblings = roots;
+			} else if (parent != null) {
+				Node parentNode = nodes.get(parent);
+				if (parentNode != null)
+					siblings = parentNode.children;
+			}
+			if (siblings != null) {
+				for (int i = 0; i < siblings.size(); i++) {
+					if (siblings.get(i).get() == context) {
+						siblings.remove(i);
+						break;
+					}
+				}
+			}
+		}
+		fireRemoved(parent, context);
+	}
+
+	private void fireAdded(IEclipseContext parent, IEclipseContext context) {
+		for (IContextTreeListener listener : listeners) {
+			listener.contextAdded(parent, context);
+		}
+	}
+
+	private void fireRemoved(IEclipseContext parent, IEclipseContext context) {
+		for (IContextTreeListener listener : listeners) {
+			listener.contextRemoved(parent, context);
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.e4.core.commands.internal.HandlerServiceImpl;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.contexts.RunAndTrack;
+import org.eclipse.e4.core.internal.contexts.EclipseContext;
+
+/**
+ * The handlers of the commands resolved in one context, with the cost of each
+ * resolution : the number of parent contexts walked up before the handler was
+ * found, and the duration of the lookup.
+ *
+ * The handlers are resolved in a RunAndTrack of the context, so the context
+ * notifies the cache when a handler changes : the resolution of this command
+ * is then replaced, and the cached handlers are always the current ones. The
+ * caches are kept with weak keys, they go away with their context.
+ *
+ * The replaced resolutions are notified to the IHandlerChangeListener, so the
+ * other caches of the spy can follow the handlers without tracking the
+ * contexts again.
+ */
+@SuppressWarnings("restriction")
+public final class HandlerResolutionCache {
+
+	/** The resolution of the handler of one command */
+	public static final class Resolution {
+		private final String commandId;
+		private final Object handler;
+		private final int hops;
+		private final long nanos;
+
+		Resolution(String commandId, Object handler, int hops, long nanos) {
+			this.commandId = commandId;
+			this.handler = handler;
+			this.hops = hops;
+			this.nanos = nanos;
+		}
+
+		public String getCommandId() {
+			return commandId;
+		}
+
+		/** @return the handler found in the context, or null */
+		public Object getHandler() {
+			return handler;
+		}
+
+		/** @return the number of parent contexts walked up, or -1 if no context has a handler */
+		public int getHops() {
+			return hops;
+		}
+
+		/** @return the duration of the lookup in the context */
+		public long getNanos() {
+			return nanos;
+		}
+
+		@Override
+		public String toString() {
+			return commandId + " : " + ((hops < 0) ? "no handler" : hops + " parent hops") + " in "
+					+ KeyDispatchTimings.format(nanos);
+		}
+	}
+
+	/** Notified, in the thread changing the context, when a cached handler has changed */
+	public interface IHandlerChangeListener {
+		void handlerChanged(IEclipseContext context, String commandId);
+	}
+
+	private static final Map<IEclipseContext, HandlerResolutionCache> caches = new WeakHashMap<>();
+
+	private static final CopyOnWriteArrayList<IHandlerChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+	/** The value of a weak map must not keep its key */
+	private final WeakReference<IEclipseContext> context;
+
+	/** The resolutions by command id, guarded by this */
+	private final Map<String, Resolution> resolutions = new HashMap<>();
+
+	private HandlerResolutionCache(IEclipseContext context) {
+		this.context = new WeakReference<>(context);
+	}
+
+	/** @return the cache of this context, created on first use */
+	public static HandlerResolutionCache get(IEclipseContext context) {
+		synchronized (caches) {
+			HandlerResolutionCache cache = caches.get(context);
+			if (cache == null) {
+				cache = new HandlerResolutionCache(context);
+				caches.put(context, cache);
+			}
+			return cache;
+		}
+	}
+
+	public static void addHandlerChangeListener(IHandlerChangeListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public static void removeHandlerChangeListener(IHandlerChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/** @return the handler of this command in the context, or null */
+	public Object getHandler(String commandId) {
+		return resolve(commandId).getHandler();
+	}
+
+	/** @return the resolution of the handler of this command, resolved once */
+	public Resolution resolve(String commandId) {
+		synchronized (this) {
+			Resolution resolution = resolutions.get(commandId);
+			if (resolution != null)
+				return resolution;
+		}
+		resolve(Collections.singleton(commandId));
+		synchronized (this) {
+			Resolution resolution = resolutions.get(commandId);
+			return (resolution != null) ? resolution : new Resolution(commandId, null, -1, 0);
+		}
+	}
+
+	/**
+	 * Resolve the handlers of these commands which are not in the cache yet,
+	 * in one RunAndTrack : resolving all the commands of a model at once
+	 * registers one tracker in the context instead of one per command.
+	 */
+	public void resolve(Collection<String> commandIds) {
+		final IEclipseContext ctx = context.get();
+		if (ctx == null)
+			return;
+		Set<String> missing = new LinkedHashSet<>();
+		synchronized (this) {
+			for (String commandId : commandIds) {
+				if (!resolutions.containsKey(commandId))
+					missing.add(commandId);
+			}
+		}
+		if (missing.isEmpty())
+			return;
+
+		final String[] ids = missing.toArray(new String[missing.size()]);
+		final String[] keys = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			keys[i] = HandlerServiceImpl.H_ID + ids[i];
+		}
+		ctx.runAndTrack(new RunAndTrack() {
+			private Object[] handlers;
+
+			@Override
+			public boolean changed(IEclipseContext c) {
+				if (context.get() == null)
+					return false;
+				Object[] current = new Object[keys.length];
+				for (int i = 0; i < keys.length; i++) {
+					long start = System.nanoTime();
+					current[i] = c.get(keys[i]);
+					long nanos = System.nanoTime() - start;
+					if ((handlers == null) || (current[i] != handlers[i]))
+						put(new Resolution(ids[i], current[i], countHops(c, keys[i]), nanos));
+				}
+				Object[] previous = handlers;
+				handlers = current;
+				if (previous != null) {
+					for (int i = 0; i < keys.length; i++) {
+						if (current[i] != previous[i])
+							fireHandlerChanged(c, ids[i]);
+					}
+				}
+				return true;
+			}
+		});
+	}
+
+	private static void fireHandlerChanged(IEclipseContext context, String commandId) {
+		for (IHandlerChangeListener listener : listeners) {
+			listener.handlerChanged(context, commandId);
+		}
+	}
+
+	private synchronized void put(Resolution resolution) {
+		resolutions.put(resolution.getCommandId(), resolution);
+	}
+
+	/** @return the number of parent contexts above the one where this key is set, or -1 */
+	private static int countHops(IEclipseContext context, String key) {
+		int hops = 0;
+		for (IEclipseContext c = context; c != null; c = c.getParent(), hops++) {
+			boolean local = (c instanceof EclipseContext) ? ((EclipseContext) c).containsKey(key, true)
+					: (c.getLocal(key) != null);
+			if (local)
+				return hops;
+		}
+		return -1;
+	}
+
+	/** @return the number of commands resolved in this context */
+	public synchronized int size() {
+		return resolutions.size();
+	}
+
+	/** @return the most expensive resolutions of this context, the slowest first */
+	public List<Resolution> getSlowest(int count) {
+		List<Resolution> all;
+		synchronized (this) {
+			all = new ArrayList<>(resolutions.values());
+		}
+		Collections.sort(all, new Comparator<Resolution>() {
+			@Override
+			public int compare(Resolution r1, Resolution r2) {
+				int rc = Long.compare(r2.getNanos(), r1.getNanos());
+				return (rc != 0) ? rc : Integer.compare(r2.getHops(), r1.getHops());
+			}
+		});
+		return (all.size() > count) ? all.subList(0, count) : all;
+	}
+
+}
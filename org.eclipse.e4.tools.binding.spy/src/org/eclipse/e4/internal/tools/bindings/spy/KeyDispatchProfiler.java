@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.commands.IExecutionListener;
+import org.eclipse.core.commands.NotHandledException;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.core.di.annotations.Optional;
+import org.eclipse.e4.ui.bindings.keys.KeyBindingDispatcher;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+
+/**
+ * An opt-in profiler of the key binding dispatch : while it runs, each key
+ * event handled by the KeyBindingDispatcher is timed, and the durations of
+ * the dispatches that executed a command are recorded for this command in
+ * KeyDispatchTimings.
+ *
+ * The dispatch is timed by wrapping the key filter of the dispatcher, and the
+ * execution of the handler by an execution listener of the command manager.
+ * The lookup phase is the time between the key event and the execution. The
+ * dispatcher keeps its binding service in a field and resolves the handler
+ * with a static lookup, so neither can be timed alone : the match and the
+ * resolution are only measured together.
+ *
+ * The phases can also be driven by another dispatch path (dispatchStarted,
+ * executionStarted, executionFinished, dispatchFinished), for instance on a
+ * local context with stub handlers. Everything happens in the UI thread, and
+ * once a command has its timings, recording a dispatch allocates nothing.
+ */
+@Creatable
+@Singleton
+public class KeyDispatchProfiler {
+
+	/** Delay between a recorded dispatch and the notification of the listeners */
+	private static final int NOTIFY_DELAY = 500;
+
+	/** Called in the UI thread some time after new dispatches have been recorded */
+	public interface IProfilerListener {
+		void dispatchRecorded();
+	}
+
+	@Inject
+	@Optional
+	private KeyBindingDispatcher dispatcher;
+
+	@Inject
+	@Optional
+	private CommandManager commandManager;
+
+	private Display display;
+
+	private boolean running;
+
+	/** The key filter of the dispatcher, replaced by keyFilter while running */
+	private Listener dispatcherFilter;
+
+	private final Map<String, KeyDispatchTimings> timings = new HashMap<>();
+
+	private final CopyOnWriteArrayList<IProfilerListener> listeners = new CopyOnWriteArrayList<>();
+
+	/* The dispatch in progress */
+	private int depth;
+	private long dispatchStart;
+	private long executeStart;
+	private long executeEnd;
+	private String executedCommandId;
+
+	private boolean notifyScheduled;
+
+	private final Listener keyFilter = new Listener() {
+		@Override
+		public void handleEvent(Event event) {
+			dispatchStarted();
+			try {
+				dispatcherFilter.handleEvent(event);
+			} finally {
+				dispatchFinished();
+			}
+		}
+	};
+
+	private final IExecutionListener executionListener = new IExecutionListener() {
+		@Override
+		public void preExecute(String commandId, ExecutionEvent event) {
+			executionStarted(commandId);
+		}
+
+		@Override
+		public void postExecuteSuccess(String commandId, Object returnValue) {
+			executionFinished(commandId);
+		}
+
+		@Override
+		public void postExecuteFailure(String commandId, ExecutionException exception) {
+			executionFinished(commandId);
+		}
+
+		@Override
+		public void notHandled(String commandId, NotHandledException exception) {
+			executionFinished(commandId);
+		}
+	};
+
+	private final Runnable notifyRunnable = new Runnable() {
+		@Override
+		public void run() {
+			notifyScheduled = false;
+			for (IProfilerListener listener : listeners) {
+				listener.dispatchRecorded();
+			}
+		}
+	};
+
+	/**
+	 * Start profiling the key dispatch of the workbench
+	 *
+	 * @param display
+	 *            the display whose key filters are wrapped and where the
+	 *            listeners are notified, or null to only listen to the
+	 *            command executions (the dispatch must then be driven)
+	 * @return false if the key filter of the dispatcher could not be wrapped
+	 */
+	public boolean start(Display display) {
+		if (running)
+			return dispatcherFilter != null;
+		running = true;
+		this.display = display;
+		if (commandManager != null)
+			commandManager.addExecutionListener(executionListener);
+		if ((display == null) || (dispatcher == null))
+			return false;
+
+		// Our filter takes the place of the dispatcher one and calls it
+		dispatcherFilter = dispatcher.getKeyDownFilter();
+		display.removeFilter(SWT.KeyDown, dispatcherFilter);
+		display.removeFilter(SWT.Traverse, dispatcherFilter);
+		display.addFilter(SWT.KeyDown, keyFilter);
+		display.addFilter(SWT.Traverse, keyFilter);
+		return true;
+	}
+
+	/** Stop profiling, the timings already recorded are kept */
+	public void stop() {
+		if (!running)
+			return;
+		running = false;
+		if (commandManager != null)
+			commandManager.removeExecutionListener(executionListener);
+		if ((dispatcherFilter != null) && !display.isDisposed()) {
+			display.removeFilter(SWT.KeyDown, keyFilter);
+			display.removeFilter(SWT.Traverse, keyFilter);
+			display.addFilter(SWT.KeyDown, dispatcherFilter);
+			display.addFilter(SWT.Traverse, dispatcherFilter);
+		}
+		dispatcherFilter = null;
+		depth = 0;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/** Forget all the timings */
+	public void reset() {
+		timings.clear();
+	}
+
+	/** @return the timings of this command, or null if no dispatch has executed it */
+	public KeyDispatchTimings getTimings(String commandId) {
+		return timings.get(commandId);
+	}
+
+	public void addProfilerListener(IProfilerListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeProfilerListener(IProfilerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/** A key event is given to the dispatcher */
+	public void dispatchStarted() {
+		if (depth++ > 0)
+			return; // A handler running a nested event loop
+		executedCommandId = null;
+		executeEnd = 0;
+		dispatchStart = System.nanoTime();
+	}
+
+	/** The handler of a command starts its execution */
+	public void executionStarted(String commandId) {
+		if ((depth == 0) || (executedCommandId != null))
+			return; // Not executed by a key, or by a nested dispatch
+		executeStart = System.nanoTime();
+		executedCommandId = commandId;
+	}
+
+	/** The handler of a command has finished its execution */
+	public void executionFinished(String commandId) {
+		if ((executeEnd == 0) && (executedCommandId != null) && executedCommandId.equals(commandId))
+			executeEnd = System.nanoTime();
+	}
+
+	/** The dispatcher has handled the key event : record the phases if a command has been executed */
+	public void dispatchFinished() {
+		if ((depth == 0) || (--depth > 0))
+			return;
+		long end = System.nanoTime();
+		if (executedCommandId == null)
+			return; // No binding, or the first key of a sequence
+
+		KeyDispatchTimings commandTimings = timings.get(executedCommandId);
+		if (commandTimings == null) {
+			commandTimings = new KeyDispatchTimings(executedCommandId);
+			timings.put(executedCommandId, commandTimings);
+		}
+		long execute = ((executeEnd != 0) ? executeEnd : end) - executeStart;
+		commandTimings.record(executeStart - dispatchStart, execute, end - dispatchStart);
+		executedCommandId = null;
+
+		if (!notifyScheduled && (display != null) && !display.isDisposed()) {
+			notifyScheduled = true;
+			display.timerExec(NOTIFY_DELAY, notifyRunnable);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+/**
+ * The durations of the key dispatches that executed one command, split in
+ * phases : looking the command up (matching the key sequence with a binding
+ * and resolving its handler), and executing it.
+ *
+ * The dispatcher does not expose its match and resolve steps apart (see
+ * KeyDispatchProfiler) : they are measured together as the lookup phase.
+ *
+ * @see KeyDispatchProfiler
+ */
+public final class KeyDispatchTimings {
+
+	public static enum Phase {
+		/** From the key event to the start of the handler : binding match and handler resolution */
+		LOOKUP("match and resolve"),
+		/** The execution of the handler */
+		EXECUTE("execute"),
+		/** The whole dispatch of the key event */
+		TOTAL("total");
+
+		private final String label;
+
+		private Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final String commandId;
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+	KeyDispatchTimings(String commandId) {
+		this.commandId = commandId;
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	void record(long lookup, long execute, long total) {
+		histograms[Phase.LOOKUP.ordinal()].record(lookup);
+		histograms[Phase.EXECUTE.ordinal()].record(execute);
+		histograms[Phase.TOTAL.ordinal()].record(total);
+	}
+
+	public String getCommandId() {
+		return commandId;
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/** @return the number of dispatches recorded */
+	public long getCount() {
+		return histograms[Phase.TOTAL.ordinal()].getCount();
+	}
+
+	/** @return a duration in milliseconds, as displayed in the binding viewer */
+	public static String format(long nanos) {
+		return String.format("%.2f ms", Double.valueOf(nanos / 1000000.0));
+	}
+
+	/** @return the percentiles of each phase, one line per phase */
+	public String describe() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getCount()).append(" dispatches of ").append(commandId);
+		for (Phase phase : PHASES) {
+			LatencyHistogram h = histograms[phase.ordinal()];
+			sb.append('\n').append(phase.getLabel()).append(" : p50 ").append(format(h.getPercentile(50)))
+					.append(", p99 ").append(format(h.getPercentile(99))).append(", max ")
+					.append(format(h.getMax()));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return describe();
+	}
+
+}
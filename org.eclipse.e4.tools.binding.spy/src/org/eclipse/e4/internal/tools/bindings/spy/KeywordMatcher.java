@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton : it tells if a text contains one of several
+ * keywords in a single pass on the text, whatever the number of keywords.
+ * It is immutable once built and can be shared between threads.
+ */
+public final class KeywordMatcher {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final int[] NO_TARGETS = new int[0];
+
+	/** The sorted characters leaving each node, and the node they lead to */
+	private final char[][] keys;
+	private final int[][] targets;
+
+	/** The node to continue from when a character does not leave a node */
+	private final int[] fail;
+
+	/** True if a keyword ends on this node or on one of its fail nodes */
+	private final boolean[] output;
+
+	/**
+	 * @param keywords
+	 *            the keywords searched, they are matched as given (lower them
+	 *            to ignore the case)
+	 */
+	public KeywordMatcher(List<String> keywords) {
+		int capacity = 1;
+		for (String keyword : keywords) {
+			capacity += keyword.length();
+		}
+		char[][] nodeKeys = new char[capacity][];
+		int[][] nodeTargets = new int[capacity][];
+		boolean[] nodeOutput = new boolean[capacity];
+		nodeKeys[0] = NO_KEYS;
+		nodeTargets[0] = NO_TARGETS;
+		int count = 1;
+
+		// The trie of the keywords
+		for (String keyword : keywords) {
+			int node = 0;
+			for (int i = 0; i < keyword.length(); i++) {
+				char c = keyword.charAt(i);
+				int next = find(nodeKeys[node], nodeTargets[node], c);
+				if (next < 0) {
+					next = count++;
+					nodeKeys[next] = NO_KEYS;
+					nodeTargets[next] = NO_TARGETS;
+					int pos = -Arrays.binarySearch(nodeKeys[node], c) - 1;
+					nodeKeys[node] = insert(nodeKeys[node], pos, c);
+					nodeTargets[node] = insert(nodeTargets[node], pos, next);
+				}
+				node = next;
+			}
+			nodeOutput[node] = true;
+		}
+
+		// The fail links, breadth first so that the fail node of a parent is known
+		int[] nodeFail = new int[count];
+		List<Integer> queue = new ArrayList<>(count);
+		for (int child : nodeTargets[0]) {
+			queue.add(Integer.valueOf(child));
+		}
+		for (int q = 0; q < queue.size(); q++) {
+			int node = queue.get(q).intValue();
+			for (int k = 0; k < nodeKeys[node].length; k++) {
+				char c = nodeKeys[node][k];
+				int child = nodeTargets[node][k];
+				int f = nodeFail[node];
+				while ((f != 0) && (find(nodeKeys[f], nodeTargets[f], c) < 0)) {
+					f = nodeFail[f];
+				}
+				int target = find(nodeKeys[f], nodeTargets[f], c);
+				nodeFail[child] = ((target >= 0) && (target != child)) ? target : 0;
+				nodeOutput[child] |= nodeOutput[nodeFail[child]];
+				queue.add(Integer.valueOf(child));
+			}
+		}
+
+		keys = Arrays.copyOf(nodeKeys, count);
+		targets = Arrays.copyOf(nodeTargets, count);
+		fail = nodeFail;
+		output = Arrays.copyOf(nodeOutput, count);
+	}
+
+	private static int find(char[] nodeKeys, int[] nodeTargets, char c) {
+		int pos = Arrays.binarySearch(nodeKeys, c);
+		return (pos < 0) ? -1 : nodeTargets[pos];
+	}
+
+	private static char[] insert(char[] a, int pos, char c) {
+		char[] result = new char[a.length + 1];
+		System.arraycopy(a, 0, result, 0, pos);
+		result[pos] = c;
+		System.arraycopy(a, pos, result, pos + 1, a.length - pos);
+		return result;
+	}
+
+	private static int[] insert(int[] a, int pos, int value) {
+		int[] result = new int[a.length + 1];
+		System.arraycopy(a, 0, result, 0, pos);
+		result[pos] = value;
+		System.arraycopy(a, pos, result, pos + 1, a.length - pos);
+		return result;
+	}
+
+	/** @return true if the text contains at least one of the keywords */
+	public boolean matches(CharSequence text) {
+		if (output[0])
+			return true; // An empty keyword
+		int node = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			int next = find(keys[node], targets[node], c);
+			while ((next < 0) && (node != 0)) {
+				node = fail[node];
+				next = find(keys[node], targets[node], c);
+			}
+			node = (next < 0) ? 0 : next;
+			if (output[node])
+				return true;
+		}
+		return false;
+	}
+
+}
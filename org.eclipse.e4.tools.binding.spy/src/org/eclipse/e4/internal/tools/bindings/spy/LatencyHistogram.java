@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.internal.tools.bindings.spy;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in nanoseconds with logarithmic buckets : each
+ * power of two is split in SUB_BUCKETS linear buckets, so a percentile is
+ * known within 1/SUB_BUCKETS of its value whatever the range. Recording a
+ * value only increments a counter of a fixed array, it never allocates.
+ *
+ * It is not thread safe : the key dispatch profiler records and reads it in
+ * the UI thread.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** Enough buckets for any positive long */
+	private static final int BUCKET_COUNT = (64 - SUB_BITS + 1) << SUB_BITS;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+
+	private long count;
+	private long max;
+	private long sum;
+
+	/** Record a duration, a negative one is recorded as 0 */
+	public void record(long nanos) {
+		long value = (nanos < 0) ? 0 : nanos;
+		counts[bucketIndex(value)]++;
+		count++;
+		sum += value;
+		if (value > max)
+			max = value;
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/** @return the highest value recorded in this bucket */
+	static long bucketMaxValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index >>> SUB_BITS) - 1;
+		long lowest = ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * @param percent
+	 *            the percentile, between 0 and 100
+	 * @return the value below which this percent of the durations are, within
+	 *         the precision of a bucket, or 0 if nothing is recorded
+	 */
+	public long getPercentile(double percent) {
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * percent / 100);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(bucketMaxValue(i), max);
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	/** @return the mean duration, or 0 if nothing is recorded */
+	public long getMean() {
+		return (count == 0) ? 0 : sum / count;
+	}
+
+	/** @return a copy of this histogram, which can be read while this one records */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+		copy.count = count;
+		copy.max = max;
+		copy.sum = sum;
+		return copy;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+		sum = 0;
+	}
+
+}
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.bindings.spy;
 
+import org.eclipse.e4.internal.tools.bindings.spy.BindingTreeScan;
+import org.eclipse.e4.internal.tools.bindings.spy.CommandMetadataCache;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
@@ -34,6 +36,8 @@ public class BindingSpyActivator implements BundleActivator {
 	@Override
 	public void stop(BundleContext context) throws Exception {
 		bContext = null;
+		BindingTreeScan.shutdown();
+		CommandMetadataCache.clear();
 
 	}
 
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015 OPCoach.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     OPCoach - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.tools.bindings.spy;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingAnalysis;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataProvider;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingExtractor;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingQuery;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingRow;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingRowModel;
+import org.eclipse.e4.ui.bindings.EBindingService;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.TriggerSequence;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * The binding queries of the OSGi console (Gogo shell), to look at the
+ * bindings of an application without opening the spy window :
+ *
+ * <pre>
+ * bindings:contexts                       the context tree with the binding counts
+ * bindings:list [context [pattern]]       the active and conflicting bindings
+ * bindings:conflicts [context]            the conflicting bindings
+ * bindings:resolve sequence [context]     the bindings of a key sequence (ex : "M1+M2+R")
+ * </pre>
+ *
+ * A context is selected by a part of its name ("*" for all of them), the
+ * pattern is the search text of the spy (see BindingQuery). The contexts are
+ * extracted one by one and their rows are printed before the next context is
+ * read : the whole result is never built. The rows of one context are still
+ * all built (see BindingRowModel) before its first line is printed.
+ * Interrupting the command stops the extraction.
+ *
+ * The contexts are not thread safe : each one is read in the UI thread of the
+ * application (with one syncExec per context, so that the output goes on
+ * streaming), and the commands only print an error if there is no display.
+ *
+ * Registered as a service by the declarative services component
+ * OSGI-INF/bindingSpyCommands.xml, so that the commands are available before
+ * the bundle is activated by the spy window.
+ */
+public class BindingSpyCommands {
+
+	static final String ALL_CONTEXTS = "*";
+
+	/** Print the tree of the contexts with their number of active and conflicting bindings */
+	public void contexts() {
+		final PrintStream out = System.out;
+		BindingExtractor extractor = createExtractor(out);
+		if (extractor == null)
+			return;
+		extractor.extract(new BindingExtractor.IContextVisitor() {
+			@Override
+			public boolean visit(BindingRowModel model, int depth) {
+				StringBuilder line = new StringBuilder();
+				for (int i = 0; i < depth; i++) {
+					line.append("  ");
+				}
+				line.append(model.getContext()).append(" : ").append(model.getActiveRows().size())
+						.append(" active, ").append(model.getConflictRows().size()).append(" conflicts");
+				out.println(line);
+				return !Thread.currentThread().isInterrupted();
+			}
+		});
+		out.flush();
+	}
+
+	/** Print the bindings of all the contexts */
+	public void list() {
+		list(ALL_CONTEXTS, null);
+	}
+
+	/** Print the bindings of the contexts whose name contains this text */
+	public void list(String context) {
+		list(context, null);
+	}
+
+	/** Print the bindings of the contexts whose name contains this text, matching this pattern */
+	public void list(String context, String pattern) {
+		print(context, BindingQuery.compile(pattern), true);
+	}
+
+	/** Print the conflicting bindings of all the contexts */
+	public void conflicts() {
+		conflicts(ALL_CONTEXTS);
+	}
+
+	/** Print the conflicting bindings of the contexts whose name contains this text */
+	public void conflicts(String context) {
+		print(context, null, false);
+	}
+
+	/** Print the bindings of a key sequence in all the contexts */
+	public void resolve(String sequence) {
+		resolve(sequence, ALL_CONTEXTS);
+	}
+
+	/**
+	 * Print the bindings of a key sequence in the contexts whose name contains
+	 * this text : the binding fired by the binding service, the other bindings
+	 * of the sequence, and the number of longer sequences it starts.
+	 */
+	public void resolve(String sequence, String context) {
+		final PrintStream out = System.out;
+		final TriggerSequence trigger = BindingAnalysis.parseSequence(sequence);
+		if (trigger == null) {
+			out.println("Not a key sequence : " + sequence);
+			return;
+		}
+		final Display display = findDisplay();
+		BindingExtractor extractor = createExtractor(display, out);
+		if (extractor == null)
+			return;
+		extractor.extract(new BindingExtractor.IContextVisitor() {
+			@Override
+			public boolean visit(BindingRowModel model, int depth) {
+				final IEclipseContext ctx = model.getContext();
+				final Binding[] fired = new Binding[1];
+				try {
+					display.syncExec(new Runnable() {
+						@Override
+						public void run() {
+							EBindingService bindingService = ctx.get(EBindingService.class);
+							if (bindingService != null)
+								fired[0] = bindingService.getPerfectMatch(trigger);
+						}
+					});
+				} catch (RuntimeException e) {
+					return false; // The display is disposed
+				}
+				boolean header = false;
+				int longer = 0;
+				for (int i = 0; i < model.size(); i++) {
+					BindingRow row = model.getRow(i);
+					TriggerSequence rowTrigger = row.getBinding().getTriggerSequence();
+					if (rowTrigger.equals(trigger)) {
+						if (!header) {
+							out.println(ctx);
+							header = true;
+						}
+						// The active rows are indexed first
+						String kind = (row.getBinding() == fired[0]) ? "fired"
+								: (i < model.getActiveRows().size()) ? "active" : "conflict";
+						printRow(out, row, kind);
+					} else if (rowTrigger.startsWith(trigger, false)) {
+						longer++;
+					}
+				}
+				if (longer > 0) {
+					if (!header)
+						out.println(ctx);
+					out.println("  prefix of " + longer + " longer sequences");
+				}
+				out.flush();
+				return !Thread.currentThread().isInterrupted();
+			}
+		}, createFilter(context));
+	}
+
+	/** Print the rows of the selected contexts, matching the query if any */
+	private void print(String context, final BindingQuery query, final boolean active) {
+		final PrintStream out = System.out;
+		BindingExtractor extractor = createExtractor(out);
+		if (extractor == null)
+			return;
+		extractor.extract(new BindingExtractor.IContextVisitor() {
+			@Override
+			public boolean visit(BindingRowModel model, int depth) {
+				boolean header = false;
+				if (active)
+					header = printRows(out, model, model.getActiveRows(), "active", query, header);
+				printRows(out, model, model.getConflictRows(), "conflict", query, header);
+				out.flush();
+				return !Thread.currentThread().isInterrupted();
+			}
+		}, createFilter(context));
+	}
+
+	/** @return true if the context header has been printed */
+	private static boolean printRows(PrintStream out, BindingRowModel model, List<BindingRow> rows, String kind,
+			BindingQuery query, boolean header) {
+		for (BindingRow row : rows) {
+			if ((query != null) && !query.matches(row))
+				continue;
+			if (!header) {
+				out.println(model.getContext());
+				header = true;
+			}
+			printRow(out, row, kind);
+		}
+		return header;
+	}
+
+	private static void printRow(PrintStream out, BindingRow row, String kind) {
+		StringBuilder line = new StringBuilder("  ");
+		line.append(row.getText(BindingDataProvider.Column.TRIGGER_SEQUENCE)).append('\t')
+				.append(row.getCommandId());
+		if (row.getCommandName() != null)
+			line.append(" (").append(row.getCommandName()).append(')');
+		line.append('\t').append(row.getText(BindingDataProvider.Column.COMMAND_HANDLER)).append('\t')
+				.append(row.getBinding().getContextId()).append('\t').append(kind);
+		out.println(line);
+	}
+
+	/** @return an extractor reading the contexts in the UI thread, or null if there is no display */
+	private static BindingExtractor createExtractor(PrintStream out) {
+		return createExtractor(findDisplay(), out);
+	}
+
+	private static BindingExtractor createExtractor(final Display display, PrintStream out) {
+		if (display == null) {
+			out.println("No display : the bindings are only read in the UI thread of the application");
+			return null;
+		}
+		return new BindingExtractor(null, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				display.syncExec(command);
+			}
+		});
+	}
+
+	/**
+	 * @return the display of the application, or null if none. It is searched
+	 *         by thread, as asking the contexts for it is not thread safe and
+	 *         Display.getDefault would create one in the console thread.
+	 */
+	static Display findDisplay() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			Display display = Display.findDisplay(thread);
+			if ((display != null) && !display.isDisposed())
+				return display;
+		}
+		return null;
+	}
+
+	/** @return the filter of the contexts whose name contains this text, or null for all */
+	private static BindingExtractor.IContextFilter createFilter(final String context) {
+		if ((context == null) || ALL_CONTEXTS.equals(context))
+			return null;
+		// The models of the other contexts are not built
+		return new BindingExtractor.IContextFilter() {
+			@Override
+			public boolean accept(IEclipseContext ctx) {
+				return String.valueOf(ctx).contains(context);
+			}
+		};
+	}
+
+}
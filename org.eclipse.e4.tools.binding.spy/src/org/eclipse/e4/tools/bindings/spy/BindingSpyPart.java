@@ -11,28 +11,58 @@
  *******************************************************************************/
 package org.eclipse.e4.tools.bindings.spy;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingChangeTracker;
 import org.eclipse.e4.internal.tools.bindings.spy.BindingDataFilter;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingDataFilter.SearchResult;
 import org.eclipse.e4.internal.tools.bindings.spy.BindingDataPart;
-import org.eclipse.e4.internal.tools.bindings.spy.ContextSpyHelper;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingExtractor;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingHistory;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingModelDelta;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingModelRegistry;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingRowModel;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingSearchJob;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingServiceProfiler;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingServiceProfilerPart;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingSnapshot;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingSnapshotWriter;
+import org.eclipse.e4.internal.tools.bindings.spy.BindingStatisticsPart;
 import org.eclipse.e4.internal.tools.bindings.spy.ContextSpyLabelProvider;
+import org.eclipse.e4.internal.tools.bindings.spy.ContextTreeRegistry;
+import org.eclipse.e4.internal.tools.bindings.spy.KeyDispatchProfiler;
 import org.eclipse.e4.ui.di.Focus;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.workbench.modeling.ESelectionService;
 import org.eclipse.jface.layout.GridDataFactory;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.jface.viewers.DelegatingStyledCellLabelProvider;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.events.KeyAdapter;
 import org.eclipse.swt.events.KeyEvent;
@@ -42,6 +72,10 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Scale;
 import org.eclipse.swt.widgets.Text;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
@@ -56,6 +90,8 @@ public class BindingSpyPart {
 	private static final String ICON_EXPANDALL = "icons/expandall.png";
 	private static final String ICON_REFRESH = "icons/refresh.png";
 
+	private static final String[] SNAPSHOT_EXTENSIONS = { "*.bspy", "*.*" };
+
 	// The ID for this part descriptor
 	static final String CONTEXT_SPY_VIEW_DESC = "org.eclipse.e4.tools.context.spy.view";
 
@@ -71,9 +107,76 @@ public class BindingSpyPart {
 	@Inject
 	private BindingDataFilter contextFilter;
 
+	@Inject
+	private BindingModelRegistry modelRegistry;
+
+	@Inject
+	private ContextTreeRegistry contextRegistry;
+
+	@Inject
+	private KeyDispatchProfiler profiler;
+
+	@Inject
+	private BindingServiceProfiler serviceProfiler;
+
+	@Inject
+	private BindingHistory history;
+
+	private Scale historyScale;
+	private Label historyStatus;
+
+	/** The position of the history displayed in the HISTORY node, or -1 for the current bindings */
+	private long historyPosition = -1;
+
+	private final DateFormat historyTimeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+
+	/** Display the new key dispatch timings */
+	private final KeyDispatchProfiler.IProfilerListener profilerListener = new KeyDispatchProfiler.IProfilerListener() {
+		@Override
+		public void dispatchRecorded() {
+			if (!contextTreeViewer.getControl().isDisposed())
+				bindingDataPart.refreshLabels();
+		}
+	};
+
+	private Display display;
+
+	/** Add and remove the contexts in the tree, the events come from any thread */
+	private final ContextTreeRegistry.IContextTreeListener contextTreeListener = new ContextTreeRegistry.IContextTreeListener() {
+		@Override
+		public void contextAdded(final IEclipseContext parentContext, final IEclipseContext context) {
+			asyncTreeUpdate(new Runnable() {
+				@Override
+				public void run() {
+					if (contextTreeViewer.getInput() instanceof BindingSnapshot)
+						return; // The live contexts are displayed again on refresh
+					contextTreeViewer.add((parentContext == null) ? contextTreeViewer.getInput() : parentContext,
+							context);
+				}
+			});
+		}
+
+		@Override
+		public void contextRemoved(IEclipseContext parentContext, final IEclipseContext context) {
+			asyncTreeUpdate(new Runnable() {
+				@Override
+				public void run() {
+					contextTreeViewer.remove(context);
+				}
+			});
+		}
+	};
+
 	private BindingDataPart bindingDataPart;
+	private BindingStatisticsPart statisticsPart;
+	private BindingServiceProfilerPart serviceProfilerPart;
 	private Button showOnlyFilteredElements;
 	private Text filterText;
+	private Label searchStatus;
+
+	private BindingSearchJob searchJob;
+
+	private BindingChangeTracker changeTracker;
 
 	/** Store the values to set it when it is reopened */
 	private static String lastFilterText = null;
@@ -96,16 +199,25 @@ public class BindingSpyPart {
 		parent.setLayout(new GridLayout(1, false));
 
 		final Composite comp = new Composite(parent, SWT.NONE);
-		comp.setLayout(new GridLayout(7, false));
+		comp.setLayout(new GridLayout(10, false));
 
 		Button refreshButton = new Button(comp, SWT.FLAT);
 		refreshButton.setImage(imgReg.get(ICON_REFRESH));
-		refreshButton.setToolTipText("Refresh the bindings");
+		refreshButton.setToolTipText("Rebuild all the bindings (they are updated on each change), or go back to them from a snapshot");
 		refreshButton.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
+				modelRegistry.invalidateAll();
+				contextRegistry.rescan();
+				if (contextTreeViewer.getInput() instanceof BindingSnapshot) {
+					contextTreeViewer.setInput(contextRegistry.getRootContexts());
+					contextTreeViewer.expandAll();
+					searchStatus.setText("");
+				}
 				contextTreeViewer.refresh(true);
-				bindingDataPart.refresh(true);
+				bindingDataPart.reload();
+				changeTracker.track(bindingDataPart.getRowModel(), bindingDataPart.getComparedContext());
+				statisticsPart.setModel(bindingDataPart.getRowModel());
 			}
 		});
 
@@ -129,11 +241,46 @@ public class BindingSpyPart {
 
 		});
 
+		Button saveSnapshot = new Button(comp, SWT.PUSH);
+		saveSnapshot.setText("Save Snapshot...");
+		saveSnapshot.setToolTipText("Write the bindings of all the contexts in a file, to inspect them offline");
+		saveSnapshot.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog dialog = new FileDialog(comp.getShell(), SWT.SAVE);
+				dialog.setFilterExtensions(SNAPSHOT_EXTENSIONS);
+				dialog.setFileName("bindings.bspy");
+				dialog.setOverwrite(true);
+				String path = dialog.open();
+				if (path != null)
+					saveSnapshot(new File(path));
+			}
+		});
+
+		Button openSnapshot = new Button(comp, SWT.PUSH);
+		openSnapshot.setText("Open Snapshot...");
+		openSnapshot.setToolTipText("Display the contexts of a saved snapshot (refresh to go back to the current bindings)");
+		openSnapshot.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog dialog = new FileDialog(comp.getShell(), SWT.OPEN);
+				dialog.setFilterExtensions(SNAPSHOT_EXTENSIONS);
+				String path = dialog.open();
+				if (path != null)
+					openSnapshot(new File(path));
+			}
+		});
+
 		filterText = new Text(comp, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
 		GridDataFactory.swtDefaults().hint(200, SWT.DEFAULT).applyTo(filterText);
 		filterText.setMessage("Search data");
-		filterText.setToolTipText("Highlight the bindings where the contained objects contains this string pattern.\n"
-				+ "Case is ignored.");
+		filterText.setToolTipText("Highlight the bindings matching all these terms (case is ignored) :\n"
+				+ "  refactor : a column contains it\n"
+				+ "  key:ctrl+shift, cmd:, handler:, state:, category:, context: : this column contains it\n"
+				+ "  -state:disabled : the binding does not match the term\n"
+				+ "  /ctrl\\+[a-c]$/ : regular expression, rename|format|debug : one of these words\n"
+				+ "  \"ctrl+x ctrl+s\" : a text with spaces\n"
+				+ "A key sequence (like Ctrl+X Ctrl+S or key:Ctrl+X) also shows what it fires in the Analysis node.");
 		if (lastFilterText != null)
 			filterText.setText(lastFilterText);
 		contextFilter.setPattern(lastFilterText);
@@ -146,11 +293,8 @@ public class BindingSpyPart {
 				// Enable/disable button for filtering
 				showOnlyFilteredElements.setEnabled(enableButton);
 
-				// Then update filters and viewers
-				contextFilter.setPattern(textToSearch);
-				setFilter();
-				contextTreeViewer.refresh(true);
-				bindingDataPart.refresh(true);
+				// Then search in background, viewers are updated with the result
+				searchJob.search(textToSearch);
 			}
 
 		});
@@ -168,6 +312,75 @@ public class BindingSpyPart {
 			}
 		});
 
+		final Button profileButton = new Button(comp, SWT.CHECK);
+		profileButton.setText("Profile Keys");
+		profileButton.setToolTipText("Measure the key dispatch time of each command executed with a key binding");
+		profileButton.setSelection(profiler.isRunning());
+		profileButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (profileButton.getSelection()) {
+					if (!profiler.start(display)) {
+						profiler.stop();
+						profileButton.setSelection(false);
+						searchStatus.setText("No key binding dispatcher to profile");
+					}
+				} else {
+					profiler.stop();
+				}
+			}
+		});
+		profiler.addProfilerListener(profilerListener);
+
+		searchStatus = new Label(comp, SWT.NONE);
+		GridDataFactory.swtDefaults().hint(350, SWT.DEFAULT).applyTo(searchStatus);
+
+		// The history of the bindings : the right end of the scale is the current state
+		final Composite historyBar = new Composite(parent, SWT.NONE);
+		historyBar.setLayout(new GridLayout(3, false));
+		historyBar.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		final Button recordButton = new Button(historyBar, SWT.CHECK);
+		recordButton.setText("Record History");
+		recordButton.setToolTipText("Record the changes of the bindings, and display the bindings of a past time with the slider");
+		recordButton.setSelection(history.isRecording());
+		recordButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (recordButton.getSelection())
+					history.start(modelRegistry);
+				else
+					history.stop();
+				historyPosition = -1;
+				updateHistoryScale();
+				showHistory();
+			}
+		});
+
+		historyScale = new Scale(historyBar, SWT.HORIZONTAL);
+		historyScale.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		historyScale.setToolTipText("Display the bindings of the selected context at a past time");
+		historyScale.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				int selection = historyScale.getSelection();
+				historyPosition = (selection == historyScale.getMaximum()) ? -1
+						: history.getOldestPosition() + selection;
+				showHistory();
+			}
+		});
+
+		historyStatus = new Label(historyBar, SWT.NONE);
+		GridDataFactory.swtDefaults().hint(300, SWT.DEFAULT).applyTo(historyStatus);
+		display = parent.getDisplay();
+		searchJob = new BindingSearchJob(display, contextRegistry, modelRegistry,
+				new BindingSearchJob.ISearchResultHandler() {
+					@Override
+					public void searchDone(SearchResult result, long latencyMillis) {
+						applySearchResult(result, latencyMillis);
+					}
+				});
+
 		SashForm sashForm = new SashForm(parent, SWT.VERTICAL | SWT.V_SCROLL | SWT.H_SCROLL);
 		sashForm.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 
@@ -175,26 +388,74 @@ public class BindingSpyPart {
 		contextTreeViewer = new TreeViewer(sashForm);
 		treeContentProvider = ContextInjectionFactory.make(ContextSpyLabelProvider.class, ctx);
 		contextTreeViewer.setContentProvider(treeContentProvider);
-		contextTreeViewer.setLabelProvider(treeContentProvider);
+		contextTreeViewer.setLabelProvider(new DelegatingStyledCellLabelProvider(treeContentProvider));
 		contextTreeViewer.setComparator(new ViewerComparator());
 
 		// tv.setInput(a);
-		contextTreeViewer.setInput(ContextSpyHelper.getAllBundleContexts());
+		contextTreeViewer.setInput(contextRegistry.getRootContexts());
+		contextRegistry.addContextTreeListener(contextTreeListener);
 
 		contextTreeViewer.addSelectionChangedListener(new ISelectionChangedListener() {
 			@Override
 			public void selectionChanged(SelectionChangedEvent event) {
 				IStructuredSelection ss = (IStructuredSelection) event.getSelection();
 				selService.setSelection((ss.size() == 1) ? ss.getFirstElement() : ss.toArray());
+				changeTracker.track(bindingDataPart.getRowModel(), bindingDataPart.getComparedContext());
+				statisticsPart.setModel(bindingDataPart.getRowModel());
+				if (historyPosition >= 0)
+					showHistory();
 			}
 		});
 
+		// The bindings, their statistics and the binding service calls in tabs at the bottom
+		final CTabFolder tabFolder = new CTabFolder(sashForm, SWT.BOTTOM | SWT.BORDER);
+		CTabItem bindingsTab = new CTabItem(tabFolder, SWT.NONE);
+		bindingsTab.setText("Bindings");
+		Composite bindingsComp = new Composite(tabFolder, SWT.NONE);
+		bindingsTab.setControl(bindingsComp);
 		IEclipseContext subCtx = ctx.createChild("Context for BindingDataPart");
-		subCtx.set(Composite.class, sashForm);
+		subCtx.set(Composite.class, bindingsComp);
 		bindingDataPart = ContextInjectionFactory.make(BindingDataPart.class, subCtx);
+
+		CTabItem statisticsTab = new CTabItem(tabFolder, SWT.NONE);
+		statisticsTab.setText("Statistics");
+		Composite statisticsComp = new Composite(tabFolder, SWT.NONE);
+		statisticsTab.setControl(statisticsComp);
+		IEclipseContext statisticsCtx = ctx.createChild("Context for BindingStatisticsPart");
+		statisticsCtx.set(Composite.class, statisticsComp);
+		statisticsPart = ContextInjectionFactory.make(BindingStatisticsPart.class, statisticsCtx);
+
+		final CTabItem serviceCallsTab = new CTabItem(tabFolder, SWT.NONE);
+		serviceCallsTab.setText("Service Calls");
+		Composite serviceCallsComp = new Composite(tabFolder, SWT.NONE);
+		serviceCallsTab.setControl(serviceCallsComp);
+		IEclipseContext serviceCallsCtx = ctx.createChild("Context for BindingServiceProfilerPart");
+		serviceCallsCtx.set(Composite.class, serviceCallsComp);
+		serviceProfilerPart = ContextInjectionFactory.make(BindingServiceProfilerPart.class, serviceCallsCtx);
+		tabFolder.setSelection(bindingsTab);
+		tabFolder.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (e.item == serviceCallsTab)
+					serviceProfilerPart.shown();
+				else
+					statisticsPart.shown();
+			}
+		});
 		treeContentProvider.setBindingTreeViewer(bindingDataPart.bindingDataViewer);
+
+		// Update the displayed rows when bindings, commands or handlers change
+		changeTracker = ContextInjectionFactory.make(BindingChangeTracker.class, ctx);
+		changeTracker.setChangeListener(new BindingChangeTracker.IBindingChangeListener() {
+			@Override
+			public void bindingsChanged(Map<IEclipseContext, BindingModelDelta> deltas) {
+				applyBindingChanges(deltas);
+			}
+		});
 		
 		setFilter();
+		updateHistoryScale();
+		showHistory();
 
 		// Set the correct weight for SashForm
 		sashForm.setWeights(new int[] { 35, 65 });
@@ -204,6 +465,168 @@ public class BindingSpyPart {
 
 	}
 
+	/** Update both viewers in one batch with the result of the last search */
+	private void applySearchResult(SearchResult result, long latencyMillis) {
+		if (contextTreeViewer.getControl().isDisposed())
+			return;
+
+		contextFilter.applyResult(result);
+		bindingDataPart.setAnalysisQuery((result.getQuery() == null) ? null : result.getQuery().getSequenceText());
+		contextTreeViewer.getControl().setRedraw(false);
+		bindingDataPart.bindingDataViewer.getControl().setRedraw(false);
+		try {
+			setFilter();
+			contextTreeViewer.refresh(true);
+			bindingDataPart.refresh(true);
+		} finally {
+			contextTreeViewer.getControl().setRedraw(true);
+			bindingDataPart.bindingDataViewer.getControl().setRedraw(true);
+		}
+
+		if (result.getPattern() == null)
+			searchStatus.setText("");
+		else
+			searchStatus.setText(filterText.getText().trim() + " matches " + result.getMatchingRowCount()
+					+ " bindings in " + result.getMatchingContextCount() + " of " + result.getContextCount()
+					+ " contexts (" + latencyMillis + " ms)");
+	}
+
+	/** Write the snapshot in a job, only the models are read in the UI thread */
+	private void saveSnapshot(final File file) {
+		searchStatus.setText("Saving " + file.getName() + "...");
+		Job job = new Job("Save the binding snapshot") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				if (display.isDisposed())
+					return Status.CANCEL_STATUS;
+
+				// The models are built from the contexts in the UI thread, most of them
+				// are already in the registry
+				final List<BindingRowModel> models = new ArrayList<>();
+				final List<Integer> depths = new ArrayList<>();
+				display.syncExec(new Runnable() {
+					@Override
+					public void run() {
+						new BindingExtractor(modelRegistry).extract(new BindingExtractor.IContextVisitor() {
+							@Override
+							public boolean visit(BindingRowModel model, int depth) {
+								models.add(model);
+								depths.add(Integer.valueOf(depth));
+								return true;
+							}
+						});
+					}
+				});
+
+				String message;
+				try {
+					BindingSnapshotWriter.write(models, depths, file);
+					message = "Snapshot saved in " + file.getName() + " (" + (file.length() / 1024) + " KB)";
+				} catch (IOException e) {
+					message = "Snapshot not saved : " + e.getMessage();
+				}
+				showStatus(message);
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/** Display the contexts of a snapshot : only its header is read here */
+	private void openSnapshot(File file) {
+		BindingSnapshot snapshot;
+		try {
+			snapshot = BindingSnapshot.open(file);
+		} catch (IOException e) {
+			searchStatus.setText("Snapshot not opened : " + e.getMessage());
+			return;
+		}
+		contextTreeViewer.setInput(snapshot);
+		searchStatus.setText(snapshot.getRowCount() + " bindings in " + snapshot.getContextCount() + " contexts of "
+				+ file.getName());
+	}
+
+	private void showStatus(final String message) {
+		asyncTreeUpdate(new Runnable() {
+			@Override
+			public void run() {
+				searchStatus.setText(message);
+			}
+		});
+	}
+
+	private void asyncTreeUpdate(final Runnable update) {
+		if (display.isDisposed())
+			return;
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				if (!contextTreeViewer.getControl().isDisposed())
+					update.run();
+			}
+		});
+	}
+
+	/** Update the displayed rows and the search result with the updated models */
+	private void applyBindingChanges(Map<IEclipseContext, BindingModelDelta> deltas) {
+		if (contextTreeViewer.getControl().isDisposed())
+			return;
+
+		if (history.record(deltas))
+			updateHistoryScale();
+
+		BindingRowModel displayed = bindingDataPart.getRowModel();
+		if (displayed != null) {
+			BindingModelDelta delta = deltas.get(displayed.getContext());
+			if ((delta != null) && bindingDataPart.applyDelta(delta)) {
+				changeTracker.track(bindingDataPart.getRowModel(), bindingDataPart.getComparedContext());
+				statisticsPart.applyDelta(delta);
+			}
+		}
+
+		// The differences with the other selected context
+		IEclipseContext compared = bindingDataPart.getComparedContext();
+		if ((compared != null) && deltas.containsKey(compared))
+			bindingDataPart.refreshDifferences();
+
+		// The matching contexts and rows may have changed
+		if (contextFilter.getPattern() != null)
+			searchJob.search(filterText.getText());
+
+		// The displayed past state is compared with the new one
+		showHistory();
+	}
+
+	/** Set the range of the scale to the recorded positions, the displayed position is kept */
+	private void updateHistoryScale() {
+		long oldest = history.getOldestPosition();
+		int frameCount = (int) (history.getNewestPosition() - oldest);
+		if ((historyPosition >= 0) && (historyPosition < oldest))
+			historyPosition = oldest; // Dropped from the history, show the oldest state kept
+		historyScale.setEnabled(frameCount > 0);
+		historyScale.setMaximum(Math.max(frameCount, 1));
+		historyScale.setPageIncrement(Math.max(frameCount / 10, 1));
+		historyScale.setSelection((historyPosition < 0) ? historyScale.getMaximum() : (int) (historyPosition - oldest));
+	}
+
+	/** Display the bindings of the selected context at the position of the scale */
+	private void showHistory() {
+		BindingRowModel displayed = bindingDataPart.getRowModel();
+		BindingHistory.Snapshot snapshot = null;
+		if ((historyPosition >= 0) && (displayed != null))
+			snapshot = history.getSnapshot(displayed.getContext(), historyPosition);
+		bindingDataPart.showHistory(snapshot);
+
+		if (historyPosition < 0)
+			historyStatus.setText(history.isRecording() ? history.getFrameCount() + " changes recorded" : "");
+		else if (snapshot == null)
+			historyStatus.setText("No recorded bindings for this context");
+		else
+			historyStatus.setText(historyTimeFormat.format(new Date(snapshot.getTime())) + " : "
+					+ snapshot.getChangedCount() + " bindings changed since");
+	}
+
 	/** Set the filter on context data part */
 	public void setFilter() {
 		if (showOnlyFilteredElements.isEnabled() && showOnlyFilteredElements.getSelection())
@@ -214,6 +637,17 @@ public class BindingSpyPart {
 
 	@PreDestroy
 	public void dispose() {
+		if (searchJob != null)
+			searchJob.cancel();
+		if (changeTracker != null)
+			changeTracker.dispose();
+		contextRegistry.removeContextTreeListener(contextTreeListener);
+		// The profiler hooks the dispatch of the whole workbench, not only this part
+		profiler.removeProfilerListener(profilerListener);
+		profiler.stop();
+		serviceProfiler.stop();
+		// The changes are recorded by this part, the history is kept for the next one
+		history.stop();
 	}
 
 	@Focus